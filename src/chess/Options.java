@@ -58,6 +58,21 @@ final public class Options {
         }
         return list;
     }
+    /** As getIntList without boxing each value */
+    public int[] getIntArray(String key) {
+        String s = getString(key);
+        if(s==null) return new int[0];
+
+        s = s.replace('[', ' ').replace(']',' ').trim();
+        if(s.length()==0) return new int[0];
+
+        var tokens = s.split(",");
+        var array  = new int[tokens.length];
+        for(int i = 0; i < tokens.length; i++) {
+            array[i] = Integer.parseInt(tokens[i].trim());
+        }
+        return array;
+    }
     public void set(String key, String value) {
         props.put(key, value);
     }
@@ -0,0 +1,67 @@
+package chess.engine;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The board implementations the engine can run on.
+ *
+ * The game itself is always kept as a byteboard Position (FEN, PGN and the UI use it).
+ * The search works on a copy made with copyOf() so the backend only matters inside the engine.
+ * Select one at startup before any ComputerPlayer is created.
+ */
+public enum Backend {
+    BYTEBOARD(p -> {
+                  var pos = new chess.engine.byteboard.Position();
+                  p.copyTo(pos);
+                  return pos;
+              },
+              chess.engine.byteboard.MoveGenerator::new),
+    BITBOARD(chess.engine.bitboard.PositionBuilder::from, chess.engine.bitboard.MoveGenerator::new),
+    MAILBOX(chess.engine.mailbox.PositionBuilder::from, chess.engine.mailbox.MoveGenerator::new);
+
+    private static volatile Backend current = BYTEBOARD;
+
+    private final Function<chess.engine.byteboard.Position, Board> copier;
+    private final Supplier<Generator<?>> generators;
+
+    Backend(Function<chess.engine.byteboard.Position, Board> copier, Supplier<Generator<?>> generators) {
+        this.copier     = copier;
+        this.generators = generators;
+    }
+    public static Backend current() {
+        return current;
+    }
+    public static void select(Backend backend) {
+        current = backend;
+    }
+    /** @param name Case insensitive backend name. null selects the default */
+    public static Backend get(String name) {
+        return name == null ? BYTEBOARD : valueOf(name.trim().toUpperCase());
+    }
+    /**
+     * Copy a position into this backend. Move history is not copied but the keys since
+     * the last capture or pawn move are so repetitions are still seen
+     */
+    public Board copyOf(chess.engine.byteboard.Position pos) {
+        var board = copier.apply(pos);
+        board.keyHistory().copyFrom(pos.keyHistory(), pos.halfMoveClock());
+        return board;
+    }
+    /** Parse a FEN position into this backend. Parsing is shared with the byteboard engine */
+    public Board fromFEN(String fen) {
+        var pos = chess.engine.byteboard.PositionBuilder.fromFEN(fen);
+        return this == BYTEBOARD ? pos : copier.apply(pos);
+    }
+    /** Unpack a position into this backend. The full move number is not packed */
+    public Board unpack(PackedPosition packed) {
+        var pos = chess.engine.byteboard.PositionBuilder.from(packed);
+        return this == BYTEBOARD ? pos : copier.apply(pos);
+    }
+    /** @return A generator for Boards created by this backend */
+    @SuppressWarnings("unchecked")
+    public Generator<Board> newGenerator() {
+        // Safe as long as the generator is only given boards from this backend
+        return (Generator<Board>)generators.get();
+    }
+}
@@ -0,0 +1,239 @@
+package chess.engine;
+
+import chess.engine.byteboard.Perft;
+import chess.engine.computer.eval.Evaluator;
+import chess.engine.byteboard.PositionBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Differential fuzzer for the Board backends.
+ *
+ * Plays random legal games on every backend side by side, starting from the standard
+ * position or one of the perft suite positions. At each ply the backends must agree with
+ * the first (byteboard) backend on:
+ *  - the sorted legal move list, and the same list from generateCaptures + generateQuiets
+ *  - countLegalMoves
+ *  - the zobrist key, which must also match a key calculated from scratch
+ *  - whether the side to move is in check and whether the position is a repetition
+ *  - the PackedPosition, which must also unpack to the same zobrist key
+ *  - getPiecePositions for every piece and side, square by square
+ *  - the enprise board and the Evaluator score, so the search plays the same moves
+ *  - the legality of the move about to be played
+ * The game is then unwound and the keys checked again after each undo.
+ *
+ * Usage:
+ *      BackendFuzzer [games [seed [threads]]]
+ */
+final public class BackendFuzzer {
+    private static final int MAX_PLIES = 400;
+    private static final int MAX_MOVES = 256;
+    private static final String STANDARD = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private final Backend[] backends = Backend.values();
+    private final String[] fens;
+    private final long seed;
+    private final AtomicLong plies = new AtomicLong();
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    //===============================================================================
+    /** Per thread generators and buffers */
+    private final class Worker {
+        final Board[] boards          = new Board[backends.length];
+        final Generator<Board>[] gens;
+        final int[][] moves           = new int[backends.length][MAX_MOVES];   // sorted legal moves per backend
+        final int[] split             = new int[MAX_MOVES];
+        final int[] history           = new int[MAX_PLIES];
+        final long[] keys             = new long[MAX_PLIES];
+        final PackedPosition packed   = new PackedPosition();
+        final PackedPosition reference = new PackedPosition();
+        final int[][] squares         = new int[backends.length][64];
+        final int[][] enprise         = new int[backends.length][64];
+        final Evaluator evaluator     = new Evaluator();
+
+        @SuppressWarnings("unchecked")
+        Worker() {
+            gens = (Generator<Board>[])new Generator<?>[backends.length];
+            for(int i = 0; i < gens.length; i++) {
+                gens[i] = backends[i].newGenerator();
+            }
+        }
+    }
+    //===============================================================================
+    public static void main(String[] args) throws InterruptedException {
+        var games   = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        var seed    = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        var threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        var fuzzer = new BackendFuzzer(seed);
+        System.out.println(String.format("Fuzzing %s with %d games, seed %d, %d threads",
+            Arrays.toString(fuzzer.backends), games, seed, threads));
+
+        var pool  = new ForkJoinPool(threads);
+        var start = System.nanoTime();
+        try {
+            pool.submit(() -> IntStream.range(0, games).parallel().forEach(fuzzer::play)).get();
+        } catch(ExecutionException e) {
+            System.out.println("FAIL " + e.getCause().getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+        var time = System.nanoTime() - start;
+
+        System.out.println(String.format("Passed %d games, %d plies in %.3f s (%d plies/s)",
+            games, fuzzer.plies.get(), time / 1e9, (long)(fuzzer.plies.get() * 1e9 / Math.max(1, time))));
+    }
+    public BackendFuzzer(long seed) {
+        this.seed = seed;
+        this.fens = new String[Perft.SUITE.length + 1];
+        fens[0] = STANDARD;
+        for(int i = 0; i < Perft.SUITE.length; i++) {
+            fens[i + 1] = Perft.SUITE[i].split(";")[0].trim();
+        }
+    }
+    /**
+     * Play one random game on every backend.
+     * @throws IllegalStateException describing the first disagreement
+     */
+    public void play(int game) {
+        var w      = workers.get();
+        var random = new Random(seed + game);
+        var fen    = random.nextInt(4) == 0 ? fens[random.nextInt(fens.length)] : STANDARD;
+        var start  = PositionBuilder.fromFEN(fen);
+
+        for(int i = 0; i < backends.length; i++) {
+            w.boards[i] = backends[i].copyOf(start);
+        }
+
+        int ply = 0;
+        while(ply < MAX_PLIES) {
+            var numMoves = compare(w, game, fen, ply);
+            if(numMoves == 0) break;
+
+            var move = w.moves[0][random.nextInt(numMoves)];
+            for(int i = 0; i < backends.length; i++) {
+                if(!w.boards[i].isLegal(move)) fail(game, fen, w, ply, backends[i] + " isLegal false for " + Move.toCoordinateString(move));
+            }
+
+            w.keys[ply]    = w.boards[0].zobrist();
+            w.history[ply] = move;
+            for(var b : w.boards) b.applyMove(move);
+            ply++;
+        }
+        plies.addAndGet(ply);
+
+        // Unwind the game
+        while(ply > 0) {
+            ply--;
+            for(int i = 0; i < backends.length; i++) {
+                w.boards[i].undoMove();
+                if(w.boards[i].zobrist() != w.keys[ply]) fail(game, fen, w, ply, backends[i] + " zobrist differs after undo");
+            }
+        }
+    }
+    //===============================================================================
+    /** @return The number of legal moves. w.moves[0] holds them sorted */
+    private int compare(Worker w, int game, String fen, int ply) {
+        var reference = w.boards[0];
+        int refCount  = 0;
+        float refEval = 0;
+
+        w.reference.pack(reference);
+        if(backends[0].unpack(w.reference).zobrist() != reference.zobrist()) {
+            fail(game, fen, w, ply, "unpacked zobrist differs");
+        }
+
+        for(int i = 0; i < backends.length; i++) {
+            var b   = w.boards[i];
+            var gen = w.gens[i];
+            var bad = backends[i] + " ";
+
+            gen.generateForPosition(b, false);
+            var count = gen.numMoves();
+            System.arraycopy(gen.moves(), 0, w.moves[i], 0, count);
+            Arrays.sort(w.moves[i], 0, count);
+            if(i == 0) refCount = count;
+            if(!Arrays.equals(w.moves[i], 0, count, w.moves[0], 0, refCount)) {
+                fail(game, fen, w, ply, bad + "moves differ\n" + listMoves(w.moves[0], refCount) + "\n" + listMoves(w.moves[i], count));
+            }
+
+            if(gen.countLegalMoves(b) != count) fail(game, fen, w, ply, bad + "countLegalMoves " + gen.countLegalMoves(b) + " != " + count);
+
+            gen.generateCaptures(b);
+            var n = gen.numMoves();
+            System.arraycopy(gen.moves(), 0, w.split, 0, n);
+            gen.generateQuiets(b);
+            System.arraycopy(gen.moves(), 0, w.split, n, gen.numMoves());
+            n += gen.numMoves();
+            Arrays.sort(w.split, 0, n);
+            if(!Arrays.equals(w.split, 0, n, w.moves[i], 0, count)) {
+                fail(game, fen, w, ply, bad + "captures + quiets differ from all moves\n" + listMoves(w.moves[i], count) + "\n" + listMoves(w.split, n));
+            }
+
+            if(b.zobrist() != reference.zobrist()) fail(game, fen, w, ply, bad + "zobrist differs");
+            if(b.zobrist() != Zobrist.hash(b)) fail(game, fen, w, ply, bad + "incremental zobrist differs from Zobrist.hash");
+            if(b.isCheck() != reference.isCheck()) fail(game, fen, w, ply, bad + "isCheck differs");
+            if(b.getAttacks(Board.WHITE) != reference.getAttacks(Board.WHITE) ||
+               b.getAttacks(Board.BLACK) != reference.getAttacks(Board.BLACK))
+            {
+                fail(game, fen, w, ply, bad + "attack maps differ");
+            }
+            var side = b.sideToMoveCode();
+            if(b.isCheck() != ((b.getAttacks(side ^ 1) & (1L << (b.getKingSquare(side) ^ 7))) != 0)) {
+                fail(game, fen, w, ply, bad + "isCheck disagrees with the attack map");
+            }
+            if(b.isRepetition(2) != reference.isRepetition(2)) fail(game, fen, w, ply, bad + "isRepetition differs");
+            if(!w.packed.pack(b).equals(w.reference)) fail(game, fen, w, ply, bad + "packed position differs");
+
+            // The evaluators sum over these so the order matters as well as the squares
+            for(int s = Board.WHITE; s <= Board.BLACK; s++) {
+                for(int piece = 0; piece <= Board.KING; piece++) {
+                    var num = piece == 0 ? b.getPiecePositions(s, w.squares[i]) : b.getPiecePositions(piece, s, w.squares[i]);
+                    var ref = piece == 0 ? reference.getPiecePositions(s, w.squares[0]) : reference.getPiecePositions(piece, s, w.squares[0]);
+                    if(!Arrays.equals(w.squares[i], 0, num, w.squares[0], 0, ref)) {
+                        fail(game, fen, w, ply, bad + "getPiecePositions differs for piece " + piece + " side " + s + "\n     " +
+                             Arrays.toString(Arrays.copyOf(w.squares[0], ref)) + "\n     " + Arrays.toString(Arrays.copyOf(w.squares[i], num)));
+                    }
+                    for(int j = 1; j < num; j++) {
+                        if(w.squares[i][j] <= w.squares[i][j-1]) fail(game, fen, w, ply, bad + "getPiecePositions not ascending");
+                    }
+                }
+            }
+
+            b.getEnpriseBoard(w.enprise[i]);
+            for(int sq = 0; sq < 64; sq++) {
+                if(w.enprise[i][sq] != w.enprise[0][sq]) {
+                    fail(game, fen, w, ply, bad + "enprise differs on square " + sq + " " +
+                         Integer.toHexString(w.enprise[0][sq]) + " != " + Integer.toHexString(w.enprise[i][sq]));
+                }
+            }
+            var eval = w.evaluator.evaluate(b);
+            if(i == 0) refEval = eval;
+            if(Float.compare(eval, refEval) != 0) fail(game, fen, w, ply, bad + "evaluation " + eval + " != " + refEval);
+        }
+        return refCount;
+    }
+    private void fail(int game, String fen, Worker w, int ply, String message) {
+        var buf = new StringBuilder();
+        buf.append(String.format("game %d (seed %d) ply %d: %s", game, seed + game, ply, message));
+        buf.append("\n     fen   ").append(fen);
+        buf.append("\n     moves");
+        for(int i = 0; i < ply; i++) {
+            buf.append(" ").append(Move.toCoordinateString(w.history[i]));
+        }
+        throw new IllegalStateException(buf.toString());
+    }
+    private static String listMoves(int[] moves, int count) {
+        var buf = new StringBuilder("    ");
+        for(int i = 0; i < count; i++) {
+            buf.append(" ").append(Move.toCoordinateString(moves[i]));
+        }
+        return buf.toString();
+    }
+}
@@ -1,5 +1,102 @@
 package chess.engine;
 
-final public class Board {
-    // is this required?
+/**
+ * The position as seen by the search and evaluators. Each board backend
+ * (byteboard, bitboard, mailbox) implements this so the engine can be
+ * switched between them at startup. See Backend.
+ *
+ * Squares are 0 = a1 .. 63 = h8 and moves use the Move encoding.
+ */
+public interface Board {
+    // Piece and side codes for the int API. Piece codes are the Piece ordinals
+    int PAWN   = 1;
+    int BISHOP = 2;
+    int KNIGHT = 3;
+    int ROOK   = 4;
+    int QUEEN  = 5;
+    int KING   = 6;
+    int WHITE  = 0;
+    int BLACK  = 1;
+
+    void applyMove(int move);
+    int undoMove();
+
+    /** @return 64 bit key of the position excluding the move counters. See Zobrist */
+    long zobrist();
+    /** @return The keys of the positions before each move played */
+    KeyHistory keyHistory();
+
+    int sideToMoveCode();
+    int availableEnPassantSquare();
+    int halfMoveClock();
+
+    boolean isOccupied(int sq);
+    /** @return All occupied squares in BitBoard layout */
+    long getOccupied();
+    /** @return The piece code at sq or 0 if empty */
+    int pieceCodeAt(int sq);
+    /** @return The side code of the piece at sq. WHITE if empty */
+    int sideCodeAt(int sq);
+    boolean squareContains(int sq, int piece, int side);
+    int getKingSquare(int side);
+    int getMaterialValue(int side);
+    boolean canCastleKingSide(int side);
+    boolean canCastleQueenSide(int side);
+    default boolean canCastle(int side) {
+        return canCastleKingSide(side) || canCastleQueenSide(side);
+    }
+    boolean isSquareAttacked(int sq, int by);
+    /** @return Squares attacked by side in BitBoard layout, including squares of its own pieces */
+    long getAttacks(int side);
+    boolean isCheck();
+    /** @return true if move can be played in this position. The move may come from a different position */
+    boolean isLegal(int move);
+    /** @return Squares of piece in ascending order */
+    int getPiecePositions(int piece, int side, int[] array);
+    /** @return Squares of all of side's pieces in ascending order */
+    int getPiecePositions(int side, int[] array);
+    boolean isEndGame();
+
+    /**
+     * @param times Number of occurrences including this one, at least 2
+     * @return true if this position has occurred times since the last capture or pawn move
+     */
+    default boolean isRepetition(int times) {
+        return keyHistory().isRepetition(zobrist(), halfMoveClock(), times);
+    }
+    /**
+     * @return true if either side can claim a draw by the fifty move rule or threefold repetition.
+     *         Checkmate on the last move of the fifty takes precedence so check that first
+     */
+    default boolean isDraw() {
+        return halfMoveClock() >= 100 || isRepetition(3);
+    }
+
+    /**
+     * Static exchange evaluation of a move.
+     * @return The expected material gain for the side making the move
+     */
+    int see(int move);
+    /**
+     * Each value is (sum of attacks << 16) | (material sum of attacks), positive if white
+     * would be ahead. The side to move captures on each square first, then the sides take
+     * turns, each with its least valuable attacker (pawn, knight, bishop, rook, queen, king)
+     * and the lowest square among equals. Sliders behind a capturing piece join in. An attacker
+     * that would expose its own king to an enemy slider is skipped, and a side stops after
+     * capturing with its king. Every backend must give the same board. See BackendFuzzer
+     */
+    void getEnpriseBoard(int[] board);
+
+    /**
+     * Write the board as 4 longs of nibbles, 16 squares each (piece code | side code << 3).
+     * See PackedPosition
+     */
+    default void packBoard(long[] packed) {
+        packed[0] = packed[1] = packed[2] = packed[3] = 0;
+        // getOccupied() is in BitBoard layout, bit = sq ^ 7
+        for(long occ = getOccupied(); occ != 0; occ &= occ - 1) {
+            var sq = Long.numberOfTrailingZeros(occ) ^ 7;
+            packed[sq >>> 4] |= (long)(pieceCodeAt(sq) | (sideCodeAt(sq) << 3)) << ((sq & 15) << 2);
+        }
+    }
 }
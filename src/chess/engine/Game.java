@@ -17,6 +17,9 @@ final public class Game {
     private ComputerPlayer computerPlayer;
     private volatile int computersMove = 0;
     private boolean gameOver = false;
+    private long clockMs = -1, incrementMs;     // computer's time control. Fixed move time if clockMs < 0
+    private long computerClockMs;               // computer's time left this game
+    private long computerMoveStart;
     //==============================================================================
     public interface Listener {
         default void onNewGame(Position pos) {}
@@ -32,6 +35,11 @@ final public class Game {
     public void addListener(Listener l) { pendingListeners.add(l); }
     public int getComputersMove() { return computersMove; }
     public ComputerPlayer getComputerPlayer() { return computerPlayer; }
+    /** Give the computer remainingMs for the game plus incrementMs per move from the next new game */
+    public void setComputerClock(long remainingMs, long incrementMs) {
+        this.clockMs     = remainingMs;
+        this.incrementMs = incrementMs;
+    }
 
     /**
      * This is called by the ComputerPlayer on a separate thread.
@@ -49,15 +57,16 @@ final public class Game {
         this.computerPlayer   = new ComputerPlayer(this);
         this.computersMove    = 0;
         this.gameOver         = false;
+        this.computerClockMs  = clockMs;
 
         informListeners(it -> it.onNewGame(position));
 
-        if(checkForMate()) {
+        if(checkForMate() || checkForDraw()) {
             return;
         }
 
         if(isComputersMove() && !gameOver) {
-            computerPlayer.yourMove();
+            startComputersMove();
         }
 
         System.out.println("Position:\n" + position.toString());
@@ -65,6 +74,9 @@ final public class Game {
     }
     public void makeMove(int move) {
         //System.out.println("makeMove "+Move.toString(move));
+        if(isComputersMove() && clockMs >= 0) {
+            computerClockMs += incrementMs - (System.nanoTime() - computerMoveStart) / 1_000_000;
+        }
         position.applyMove(move);
 
         informListeners(it->it.onGameMove(position, move));
@@ -72,13 +84,13 @@ final public class Game {
         //System.out.println("Enprise:\n"+ Enprise.toString(position, false));
         System.out.println(PositionWriter.toFEN(position));
 
-        if(checkForMate()) {
+        if(checkForMate() || checkForDraw()) {
             return;
         }
 
         // Computer's turn
         if(isComputersMove() && !gameOver) {
-            computerPlayer.yourMove();
+            startComputersMove();
         }
     }
     public void undoMove() {
@@ -93,10 +105,24 @@ final public class Game {
         // todo
     }
     //==============================================================================
+    private void startComputersMove() {
+        if(clockMs >= 0) {
+            computerPlayer.setClock(Math.max(0, computerClockMs), incrementMs, 0);
+        }
+        computerMoveStart = System.nanoTime();
+        computerPlayer.yourMove();
+    }
     private boolean checkForMate() {
-        var gen = new MoveGenerator();
-        gen.generateForPosition(position, false);
-        if(gen.numMoves==0) {
+        if(new MoveGenerator().countLegalMoves(position)==0) {
+            gameOver = true;
+            informListeners(it->it.onGameOver(position, false));
+            return true;
+        }
+        return false;
+    }
+    /** Fifty move rule or threefold repetition. Claimed automatically for both sides */
+    private boolean checkForDraw() {
+        if(position.isDraw()) {
             gameOver = true;
             informListeners(it->it.onGameOver(position, false));
             return true;
@@ -0,0 +1,34 @@
+package chess.engine;
+
+/**
+ * Legal move generation for one Board backend.
+ * Generated moves are left in moves()[0 .. numMoves()-1] until the next call.
+ */
+public interface Generator<B extends Board> {
+    int[] moves();
+    int numMoves();
+
+    /** Return the move if valid otherwise return -1. */
+    int getMove(B pos, int from, int to);
+    /**
+     * @param quiescence If true only captures, en passant and promotions are generated
+     */
+    void generateForPosition(B pos, boolean quiescence);
+    /** Generate captures, en passant and promotions only */
+    void generateCaptures(B pos);
+    /**
+     * Generate captures, en passant and promotions plus, if quietChecks is set,
+     * quiet moves that give check
+     */
+    void generateCaptures(B pos, boolean quietChecks);
+    /** Generate all moves that are not captures, en passant or promotions */
+    void generateQuiets(B pos);
+    /**
+     * @return The number of legal moves. Backends that can count without generating
+     *         override this. moves() may be overwritten
+     */
+    default int countLegalMoves(B pos) {
+        generateForPosition(pos, false);
+        return numMoves();
+    }
+}
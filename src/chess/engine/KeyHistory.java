@@ -0,0 +1,55 @@
+package chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Stack of the zobrist keys of the positions before each move played, oldest first.
+ * Each Board pushes its key in applyMove and pops it back in undoMove.
+ *
+ * Repetitions can only occur since the last capture or pawn move so the scan stops after
+ * halfMoveClock keys and only looks at every second one, the positions with the same side to move.
+ */
+final public class KeyHistory {
+    private long[] keys = new long[256];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+    public void clear() {
+        size = 0;
+    }
+    public void push(long key) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+    }
+    public long pop() {
+        return keys[--size];
+    }
+    /**
+     * Replace this history with the most recent count keys of from.
+     * Used when copying a position so the copy still sees earlier repetitions
+     */
+    public void copyFrom(KeyHistory from, int count) {
+        var n = Math.min(count, from.size);
+        if(keys.length < n) keys = new long[Math.max(n, keys.length * 2)];
+        System.arraycopy(from.keys, from.size - n, keys, 0, n);
+        size = n;
+    }
+    /**
+     * @param key           The current position's key
+     * @param halfMoveClock Plies since the last irreversible move
+     * @param times         Number of occurrences including the current position, at least 2
+     * @return true if key occurred at least times
+     */
+    public boolean isRepetition(long key, int halfMoveClock, int times) {
+        var end   = Math.max(0, size - halfMoveClock);
+        var count = 1;
+        for(int i = size - 2; i >= end; i -= 2) {
+            if(keys[i] == key && ++count >= times) return true;
+        }
+        return false;
+    }
+}
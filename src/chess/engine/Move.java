@@ -21,6 +21,16 @@ final public class Move {
     private static final int PIECE_MASK    = 7  << PIECE_SHIFT;
     private static final int CAPTURE_MASK  = 7  << CAPTURE_SHIFT;
     private static final int FLAGS_MASK    = 7  << FLAGS_SHIFT;
+
+    // Flag codes for the hot paths. These are the Flags values
+    public static final int FLAG_NONE           = 0;
+    public static final int FLAG_PROMOTE_BISHOP = 1;
+    public static final int FLAG_PROMOTE_KNIGHT = 2;
+    public static final int FLAG_PROMOTE_ROOK   = 3;
+    public static final int FLAG_PROMOTE_QUEEN  = 4;
+    public static final int FLAG_OOO            = 5;
+    public static final int FLAG_OO             = 6;
+    public static final int FLAG_ENPASSANT      = 7;
     //===============================================================================
 
     //===============================================================================
@@ -52,6 +62,9 @@ final public class Move {
         }
 
         Flags(int value) { this.value = value; }
+
+        // values() clones the array on every call
+        private static final Flags[] VALUES = values();
     }
     //===============================================================================
 
@@ -63,6 +76,15 @@ final public class Move {
             (capture.ordinal() << CAPTURE_SHIFT) |
             (flags.value       << FLAGS_SHIFT);
     }
+    /** @param piece, capture Piece ordinals. flags A FLAG_ code */
+    public static int makeMove(int piece, int from, int to, int capture, int flags) {
+        return
+            (from    << FROM_SHIFT)    |
+            (to      << TO_SHIFT)      |
+            (piece   << PIECE_SHIFT)   |
+            (capture << CAPTURE_SHIFT) |
+            (flags   << FLAGS_SHIFT);
+    }
     public static int from(int move) {
         return (move & FROM_MASK) >>> FROM_SHIFT;
     }
@@ -76,7 +98,36 @@ final public class Move {
         return Piece.get((move & CAPTURE_MASK) >>> CAPTURE_SHIFT);
     }
     public static Flags flags(int move) {
-        return Flags.values()[(move & FLAGS_MASK) >>> FLAGS_SHIFT];
+        return Flags.VALUES[(move & FLAGS_MASK) >>> FLAGS_SHIFT];
+    }
+    /** @return Piece ordinal of the moving piece */
+    public static int pieceCode(int move) {
+        return (move & PIECE_MASK) >>> PIECE_SHIFT;
+    }
+    /** @return Piece ordinal of the captured piece or 0 */
+    public static int captureCode(int move) {
+        return (move & CAPTURE_MASK) >>> CAPTURE_SHIFT;
+    }
+    /** @return One of the FLAG_ codes */
+    public static int flagCode(int move) {
+        return (move & FLAGS_MASK) >>> FLAGS_SHIFT;
+    }
+    public static boolean isPromotion(int move) {
+        var flags = flagCode(move);
+        return flags >= FLAG_PROMOTE_BISHOP && flags <= FLAG_PROMOTE_QUEEN;
+    }
+    /** @return Piece ordinal of the promoted piece. Only valid if isPromotion */
+    public static int promotionCode(int move) {
+        // PROMOTE_BISHOP..PROMOTE_QUEEN are in the same order as BISHOP..QUEEN
+        return flagCode(move) - FLAG_PROMOTE_BISHOP + Piece.BISHOP.ordinal();
+    }
+    public static boolean isCastle(int move) {
+        var flags = flagCode(move);
+        return flags == FLAG_OO || flags == FLAG_OOO;
+    }
+    /** @return true if not a capture, en passant or promotion */
+    public static boolean isQuiet(int move) {
+        return captureCode(move) == 0 && (flagCode(move) == FLAG_NONE || isCastle(move));
     }
     public static String toString(int m) {
         if(m==-1) return "Move invalid";
@@ -95,4 +146,12 @@ final public class Move {
         if(isCapture && pp.isEmpty()) pp = "" + FILES.charAt(from(m) & 7);
         return pp + c + f + r + ic;
     }
+    /** Long algebraic notation as used by UCI eg. "e2e4" or "e7e8q" */
+    public static String toCoordinateString(int m) {
+        final String FILES = "abcdefgh";
+        var s = "" + FILES.charAt(from(m) & 7) + ((from(m) >>> 3) + 1) +
+                     FILES.charAt(to(m) & 7) + ((to(m) >>> 3) + 1);
+        if(flags(m).isPromotion()) s += flags(m).getPromotionPiece().fen().toLowerCase();
+        return s;
+    }
 }
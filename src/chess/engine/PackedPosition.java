@@ -0,0 +1,98 @@
+package chess.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A position packed into 5 longs (40 bytes) for position caches, training data and handing
+ * positions between search threads, where copying, comparing and hashing a 256 byte board
+ * would dominate.
+ *
+ * board[i] holds squares 16i .. 16i+15, one nibble each (piece code | side code << 3, 0 if empty).
+ * meta holds the side to move, castling flags, en passant square and half move clock.
+ * The full move number is not kept.
+ *
+ * Unpack with Backend.unpack().
+ */
+final public class PackedPosition {
+    public static final int BYTES = 5 * Long.BYTES;
+
+    // meta layout
+    private static final int CASTLING_SHIFT  = 1;   // 4 bits, see Zobrist.castlingFlags
+    private static final int ENPASSANT_SHIFT = 5;   // 6 bits, 0 if none
+    private static final int HALF_MOVE_SHIFT = 11;
+
+    private final long[] board = new long[4];
+    private long meta;
+
+    //===============================================================================
+    public static PackedPosition of(Board pos) {
+        return new PackedPosition().pack(pos);
+    }
+    /** Overwrite this with pos */
+    public PackedPosition pack(Board pos) {
+        pos.packBoard(board);
+        meta = pos.sideToMoveCode() |
+               (Zobrist.castlingFlags(pos) << CASTLING_SHIFT) |
+               (pos.availableEnPassantSquare() << ENPASSANT_SHIFT) |
+               ((long)pos.halfMoveClock() << HALF_MOVE_SHIFT);
+        return this;
+    }
+    public PackedPosition copyTo(PackedPosition to) {
+        to.board[0] = board[0];
+        to.board[1] = board[1];
+        to.board[2] = board[2];
+        to.board[3] = board[3];
+        to.meta     = meta;
+        return to;
+    }
+    //===============================================================================
+    /** @return piece code | side code << 3 of the piece at sq, 0 if empty */
+    public int get(int sq) {
+        return (int)(board[sq >>> 4] >>> ((sq & 15) << 2)) & 0xf;
+    }
+    public int sideToMoveCode() {
+        return (int)meta & 1;
+    }
+    /** @return Castling flags as returned by Zobrist.castlingFlags */
+    public int castlingFlags() {
+        return (int)(meta >>> CASTLING_SHIFT) & 0xf;
+    }
+    public int availableEnPassantSquare() {
+        return (int)(meta >>> ENPASSANT_SHIFT) & 0x3f;
+    }
+    public int halfMoveClock() {
+        return (int)(meta >>> HALF_MOVE_SHIFT);
+    }
+    //===============================================================================
+    /** Write BYTES bytes at the buffer's position */
+    public void writeTo(ByteBuffer buf) {
+        buf.putLong(board[0]).putLong(board[1]).putLong(board[2]).putLong(board[3]).putLong(meta);
+    }
+    /** Overwrite this with BYTES bytes read from the buffer's position */
+    public PackedPosition readFrom(ByteBuffer buf) {
+        board[0] = buf.getLong();
+        board[1] = buf.getLong();
+        board[2] = buf.getLong();
+        board[3] = buf.getLong();
+        meta     = buf.getLong();
+        return this;
+    }
+    //===============================================================================
+    @Override public int hashCode() {
+        long h = meta;
+        h = (h ^ board[0]) * 0x9E3779B97F4A7C15L;
+        h = (h ^ board[1]) * 0x9E3779B97F4A7C15L;
+        h = (h ^ board[2]) * 0x9E3779B97F4A7C15L;
+        h = (h ^ board[3]) * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+    @Override public boolean equals(Object obj) {
+        if(!(obj instanceof PackedPosition)) return false;
+        var p = (PackedPosition)obj;
+        return meta == p.meta &&
+            board[0] == p.board[0] &&
+            board[1] == p.board[1] &&
+            board[2] == p.board[2] &&
+            board[3] == p.board[3];
+    }
+}
@@ -12,6 +12,10 @@ public enum Piece {
     private static final String[] ALGEBRAIC = {"?", "",  "B", "N", "R", "Q", "K"};
     private static final String[] FEN       = {"?", "P", "B", "N", "R", "Q", "K"};
 
+    // values() clones the array on every call
+    private static final Piece[] VALUES = values();
+    private static final int[] MATERIAL = {0, 1, 3, 3, 5, 9, 999};
+
     public int material;
 
     Piece(int material) {
@@ -24,6 +28,10 @@ public enum Piece {
     public String fen() { return FEN[ordinal()]; }
 
     public static Piece get(int type) {
-        return Piece.values()[type];
+        return VALUES[type];
+    }
+    /** @return The material of the piece with ordinal type */
+    public static int material(int type) {
+        return MATERIAL[type];
     }
 }
@@ -0,0 +1,122 @@
+package chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Per ply features of replayed games held as a struct of arrays, one row per position.
+ * Each game adds a row for its start position followed by one row per move.
+ * Rows are appended without allocating anything per move so large game collections can be
+ * turned into training or index data quickly.
+ * Games are replayed on any Backend.
+ *
+ * Usage:
+ *      var buf = new ReplayBuffer(1 << 20);
+ *      for(...) buf.replay(fen, moves, numMoves);
+ *      for(int row = 0; row < buf.size; row++) ... buf.keys[row] ...
+ */
+final public class ReplayBuffer {
+    public static final int BOARD_LONGS = 4;
+
+    // Row features
+    public long[] keys;             // zobrist key
+    public long[] boards;           // BOARD_LONGS per row, see PackedPosition
+    public int[] moves;             // the move that led to this row, 0 for a start position
+    public int[] whiteMaterial;
+    public int[] blackMaterial;
+    public byte[] sideToMove;       // Board.WHITE or Board.BLACK
+    public boolean[] check;         // side to move is in check
+    public int size;
+
+    // First row of each game
+    public int[] gameStart = new int[64];
+    public int numGames;
+
+    private final Backend backend;
+    private final long[] packed = new long[BOARD_LONGS];
+
+    /** Replays FEN games on the current backend */
+    public ReplayBuffer(int capacity) {
+        this(capacity, Backend.current());
+    }
+    public ReplayBuffer(int capacity, Backend backend) {
+        this.backend  = backend;
+        keys          = new long[capacity];
+        boards        = new long[capacity * BOARD_LONGS];
+        moves         = new int[capacity];
+        whiteMaterial = new int[capacity];
+        blackMaterial = new int[capacity];
+        sideToMove    = new byte[capacity];
+        check         = new boolean[capacity];
+    }
+    public void clear() {
+        size     = 0;
+        numGames = 0;
+    }
+    /** @return The number of rows of game */
+    public int gameSize(int game) {
+        return (game + 1 < numGames ? gameStart[game + 1] : size) - gameStart[game];
+    }
+    //===============================================================================
+    /**
+     * Replay numMoves moves from a FEN start position.
+     * @return The row of the start position
+     */
+    public int replay(String fen, int[] moves, int numMoves) {
+        return replay(backend.fromFEN(fen), moves, numMoves);
+    }
+    /**
+     * Replay numMoves moves on pos which is left at the final position with the moves in its history.
+     * @return The row of the start position
+     */
+    public int replay(Board pos, int[] moves, int numMoves) {
+        ensureCapacity(size + numMoves + 1);
+        if(numGames == gameStart.length) {
+            gameStart = Arrays.copyOf(gameStart, numGames * 2);
+        }
+        var start = size;
+        gameStart[numGames++] = start;
+
+        addRow(pos, 0);
+        for(int i = 0; i < numMoves; i++) {
+            pos.applyMove(moves[i]);
+            addRow(pos, moves[i]);
+        }
+        return start;
+    }
+    /**
+     * Replay a collection of games.
+     * @return The row of the first start position
+     */
+    public int replayAll(String[] fens, int[][] moves) {
+        var start = size;
+        for(int i = 0; i < fens.length; i++) {
+            replay(fens[i], moves[i], moves[i].length);
+        }
+        return start;
+    }
+    //===============================================================================
+    private void addRow(Board pos, int move) {
+        var row = size++;
+        keys[row]          = pos.zobrist();
+        moves[row]         = move;
+        whiteMaterial[row] = pos.getMaterialValue(Board.WHITE);
+        blackMaterial[row] = pos.getMaterialValue(Board.BLACK);
+        sideToMove[row]    = (byte)pos.sideToMoveCode();
+        check[row]         = pos.isCheck();
+
+        pos.packBoard(packed);
+        System.arraycopy(packed, 0, boards, row * BOARD_LONGS, BOARD_LONGS);
+    }
+    private void ensureCapacity(int rows) {
+        if(rows <= keys.length) return;
+
+        var n = Math.max(rows, keys.length * 2);
+        keys          = Arrays.copyOf(keys, n);
+        boards        = Arrays.copyOf(boards, n * BOARD_LONGS);
+        moves         = Arrays.copyOf(moves, n);
+        whiteMaterial = Arrays.copyOf(whiteMaterial, n);
+        blackMaterial = Arrays.copyOf(blackMaterial, n);
+        sideToMove    = Arrays.copyOf(sideToMove, n);
+        check         = Arrays.copyOf(check, n);
+    }
+}
@@ -0,0 +1,67 @@
+package chess.engine;
+
+/**
+ * 64 bit Zobrist keys.
+ * https://www.chessprogramming.org/Zobrist_Hashing
+ *
+ * The keys are generated from a fixed seed so hashes are the same on every run
+ * and on every Board backend.
+ */
+final public class Zobrist {
+    public static final long SEED = 0x2545_f491_4f6c_dd1dL;
+
+    public static final long[][] PIECES  = new long[16][64];   // piece | side<<3, square
+    public static final long[] CASTLING  = new long[16];       // castling flags. 1 = white OO, 2 = white OOO, 4 = black OO, 8 = black OOO
+    public static final long[] ENPASSANT = new long[8];        // file of the en passant square
+    public static final long   BLACK_TO_MOVE;
+
+    static {
+        long seed = SEED;
+        for(var keys : PIECES) {
+            for(int sq = 0; sq < 64; sq++) {
+                seed = next(seed);
+                keys[sq] = scramble(seed);
+            }
+        }
+        for(int i = 0; i < CASTLING.length; i++) {
+            seed = next(seed);
+            CASTLING[i] = scramble(seed);
+        }
+        for(int i = 0; i < ENPASSANT.length; i++) {
+            seed = next(seed);
+            ENPASSANT[i] = scramble(seed);
+        }
+        seed = next(seed);
+        BLACK_TO_MOVE = scramble(seed);
+    }
+
+    /** Calculate the key of a position from scratch. Position maintains this incrementally */
+    public static long hash(Board pos) {
+        long key = 0;
+        for(int sq = 0; sq < 64; sq++) {
+            if(pos.isOccupied(sq)) key ^= PIECES[pos.pieceCodeAt(sq) | (pos.sideCodeAt(sq) << 3)][sq];
+        }
+        key ^= CASTLING[castlingFlags(pos)];
+        if(pos.availableEnPassantSquare() != 0) key ^= ENPASSANT[pos.availableEnPassantSquare() & 7];
+        if(pos.sideToMoveCode() == Board.BLACK) key ^= BLACK_TO_MOVE;
+        return key;
+    }
+    /** @return The CASTLING index of pos */
+    public static int castlingFlags(Board pos) {
+        return (pos.canCastleKingSide(Board.WHITE) ? 1 : 0) |
+               (pos.canCastleQueenSide(Board.WHITE) ? 2 : 0) |
+               (pos.canCastleKingSide(Board.BLACK) ? 4 : 0) |
+               (pos.canCastleQueenSide(Board.BLACK) ? 8 : 0);
+    }
+    //===============================================================================
+    /** xorshift64* */
+    private static long next(long s) {
+        s ^= s >>> 12;
+        s ^= s << 25;
+        s ^= s >>> 27;
+        return s;
+    }
+    private static long scramble(long s) {
+        return s * 2685821657736338717L;
+    }
+}
@@ -28,12 +28,61 @@ import static juice.Util.exceptionContext;
  */
 final public class BitBoard {
 
+    public static long[] squares;
     public static long[] whitePawnMoves;
     public static long[] blackPawnMoves;
     public static long[] whitePawnAttacks;
     public static long[] blackPawnAttacks;
     public static long[] knightMoves;
-    public static int[] rankMoves;
+    public static long[] kingMoves;
+    public static long[] bishopMoves;   // empty board
+    public static long[] rookMoves;     // empty board
+
+    /** Squares strictly between two squares on the same rank, file or diagonal. */
+    public static final long[][] between = new long[64][64];
+
+    // Ray directions. Orthogonals first, then diagonals
+    private static final int[] DIR_FILE = { 0, 0, 1, -1, 1, -1,  1, -1};
+    private static final int[] DIR_RANK = { 1, -1, 0, 0, 1,  1, -1, -1};
+    private static final long[][] rays  = new long[8][64];
+    // Whether the bit index increases as the ray moves away from its square
+    private static final boolean[] RAY_INCREASING = new boolean[8];
+
+    // Magic bitboards for sliding attacks. Generated at startup from a fixed seed
+    private static long magicSeed = 0x5eed_c0ffeeL;
+    private static final long[] rookMasks    = new long[64];
+    private static final long[] rookMagics   = new long[64];
+    private static final int[]  rookShifts   = new int[64];
+    private static final int[]  rookOffsets  = new int[64];
+    private static final long[] bishopMasks   = new long[64];
+    private static final long[] bishopMagics  = new long[64];
+    private static final int[]  bishopShifts  = new int[64];
+    private static final int[]  bishopOffsets = new int[64];
+    private static long[] rookTable;
+    private static long[] bishopTable;
+
+    /** @return The square of the lowest set bit of bb */
+    public static int firstSquare(long bb) {
+        return Long.numberOfTrailingZeros(bb) ^ 7;
+    }
+    /**
+     * Files are mirrored so firstSquare walks each rank from h to a. This walks the squares
+     * in ascending order instead.
+     * @return The lowest square in bb
+     */
+    public static int lowestSquare(long bb) {
+        var rank = Long.numberOfTrailingZeros(bb) & ~7;
+        return (63 - Long.numberOfLeadingZeros(bb & (0xffL << rank))) ^ 7;
+    }
+    public static long rookAttacks(int sq, long occupied) {
+        return rookTable[rookOffsets[sq] + (int)(((occupied & rookMasks[sq]) * rookMagics[sq]) >>> rookShifts[sq])];
+    }
+    public static long bishopAttacks(int sq, long occupied) {
+        return bishopTable[bishopOffsets[sq] + (int)(((occupied & bishopMasks[sq]) * bishopMagics[sq]) >>> bishopShifts[sq])];
+    }
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
 
     public static String toString(long bb) {
         long temp = bb;
@@ -56,36 +105,154 @@ final public class BitBoard {
         }
         return rows.stream().collect(Collectors.joining("\n"));
     }
-    /**
-     *
-     * @param file 0..7
-     * @return 8-bit rank
-     */
-    static int rotateFileToRank(long bb, int file) {
-        bb <<= file;
-        bb &= 0x80808080_80808080L;
-        bb |= (bb>>63) | (bb>>54) | (bb>>45) | (bb>>36) | (bb>>27) | (bb>>18) | (bb>>9);
-        return (int)bb;
-    }
-    /**
-     *
-     * @param r
-     * @param file
-     * @return 64-bit bitboard
-     */
-    static long rotateRankToFile(int r, int file) {
-        long t  = r;
-        long bb = t | (t<<9) | (t<<18) | (t<<27) | (t<<36) | (t<<45) | (t<<54) | (t<<63);
-        return bb >> file;
-    }
     //=================================================================================
     static {
+        squares          = loadLongs("data/squares.dat", 64);
         whitePawnMoves   = loadLongs("data/pawn_up_moves.dat", 64);
         blackPawnMoves   = loadLongs("data/pawn_down_moves.dat", 64);
         whitePawnAttacks = loadLongs("data/pawn_up_attacks.dat", 64);
         blackPawnAttacks = loadLongs("data/pawn_down_attacks.dat", 64);
         knightMoves      = loadLongs("data/knight_moves.dat", 64);
-        rankMoves        = loadInts("data/rank_moves.dat", 256*8);
+        kingMoves        = loadLongs("data/king_moves.dat", 64);
+        bishopMoves      = loadLongs("data/bishop_moves.dat", 64);
+        rookMoves        = loadLongs("data/rook_moves.dat", 64);
+
+        completePawnAttacks();
+        calculateRays();
+        calculateMagics();
+    }
+    /**
+     * Pawns never stand on their own back rank so the data files leave those attacks empty.
+     * Attack detection looks up pawn attacks from the target square though so fill them in.
+     */
+    private static void completePawnAttacks() {
+        for(int file = 0; file < 8; file++) {
+            long up = 0, down = 0;
+            if(file > 0) {
+                up   |= squares[8 + file - 1];
+                down |= squares[48 + file - 1];
+            }
+            if(file < 7) {
+                up   |= squares[8 + file + 1];
+                down |= squares[48 + file + 1];
+            }
+            whitePawnAttacks[file]      = up;
+            blackPawnAttacks[56 + file] = down;
+        }
+    }
+    private static void calculateRays() {
+        for(int d = 0; d < 8; d++) {
+            var df = DIR_FILE[d];
+            var dr = DIR_RANK[d];
+            RAY_INCREASING[d] = dr > 0 || (dr == 0 && df < 0);
+
+            for(int sq = 0; sq < 64; sq++) {
+                long ray = 0;
+                for(int f = (sq & 7) + df, r = (sq >>> 3) + dr; f >= 0 && f <= 7 && r >= 0 && r <= 7; f += df, r += dr) {
+                    var to = f + (r << 3);
+                    between[sq][to] = ray;
+                    ray |= squares[to];
+                }
+                rays[d][sq] = ray;
+            }
+        }
+    }
+    private static void calculateMagics() {
+        rookTable   = findMagics(0, rookMasks, rookMagics, rookShifts, rookOffsets);
+        bishopTable = findMagics(4, bishopMasks, bishopMagics, bishopShifts, bishopOffsets);
+    }
+    /**
+     * Find a magic multiplier for each square that maps every relevant occupancy
+     * onto a unique (or constructively colliding) index of its attack table.
+     *
+     * @param firstDir 0 for rooks, 4 for bishops
+     * @return The attack tables of all squares joined together
+     */
+    private static long[] findMagics(int firstDir, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+        var tables      = new long[64][];
+        var occupancies = new long[4096];
+        var attacks     = new long[4096];
+        int size        = 0;
+
+        for(int sq = 0; sq < 64; sq++) {
+            // Relevant occupancy is every ray square apart from the last one
+            long mask = 0;
+            for(int d = firstDir; d < firstDir + 4; d++) {
+                var ray = rays[d][sq];
+                if(ray == 0) continue;
+                var last = RAY_INCREASING[d] ? 63 - Long.numberOfLeadingZeros(ray)
+                                             : Long.numberOfTrailingZeros(ray);
+                mask |= ray & ~(1L << last);
+            }
+            var bits  = Long.bitCount(mask);
+            var table = new long[1 << bits];
+            var tried = new int[1 << bits];   // attempt number that last wrote each entry
+            masks[sq]  = mask;
+            shifts[sq] = 64 - bits;
+
+            // Enumerate all subsets of the mask
+            int n = 0;
+            long occupied = 0;
+            do {
+                occupancies[n] = occupied;
+                attacks[n]     = slidingAttacks(firstDir, sq, occupied);
+                n++;
+                occupied = (occupied - mask) & mask;
+            } while(occupied != 0);
+
+            for(int attempt = 1; ; attempt++) {
+                var magic = nextRandom() & nextRandom() & nextRandom();
+                if(Long.bitCount((mask * magic) >>> 56) < 6) continue;
+
+                var ok = true;
+                for(int i = 0; i < n && ok; i++) {
+                    var index = (int)((occupancies[i] * magic) >>> shifts[sq]);
+                    if(tried[index] != attempt) {
+                        tried[index] = attempt;
+                        table[index] = attacks[i];
+                    } else {
+                        ok = table[index] == attacks[i];
+                    }
+                }
+                if(ok) {
+                    magics[sq] = magic;
+                    break;
+                }
+            }
+            tables[sq]  = table;
+            offsets[sq] = size;
+            size       += table.length;
+        }
+
+        var joined = new long[size];
+        for(int sq = 0; sq < 64; sq++) {
+            System.arraycopy(tables[sq], 0, joined, offsets[sq], tables[sq].length);
+        }
+        return joined;
+    }
+    /** xorshift64* */
+    private static long nextRandom() {
+        magicSeed ^= magicSeed >>> 12;
+        magicSeed ^= magicSeed << 25;
+        magicSeed ^= magicSeed >>> 27;
+        return magicSeed * 2685821657736338717L;
+    }
+    private static long slidingAttacks(int firstDir, int sq, long occupied) {
+        return rayAttacks(firstDir, sq, occupied) | rayAttacks(firstDir + 1, sq, occupied) |
+               rayAttacks(firstDir + 2, sq, occupied) | rayAttacks(firstDir + 3, sq, occupied);
+    }
+    /**
+     * Attacks along a single ray stopping at (and including) the first occupied square.
+     */
+    private static long rayAttacks(int dir, int sq, long occupied) {
+        long attacks  = rays[dir][sq];
+        long blockers = attacks & occupied;
+        if(blockers != 0) {
+            var bit = RAY_INCREASING[dir] ? Long.numberOfTrailingZeros(blockers)
+                                          : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= rays[dir][bit ^ 7];
+        }
+        return attacks;
     }
     private static long[] loadLongs(String filename, int count) {
         return exceptionContext(()->{
@@ -96,13 +263,4 @@ final public class BitBoard {
             }
         });
     }
-    private static int[] loadInts(String filename, int count) {
-        return exceptionContext(()->{
-            try(var dis = new DataInputStream(new FileInputStream(filename))) {
-                int[] array = new int[count];
-                for(int i=0; i<count;i++) array[i] = (dis.readInt());
-                return array;
-            }
-        });
-    }
 }
@@ -1,5 +1,184 @@
 package chess.engine.bitboard;
 
+import chess.engine.Move;
+import chess.engine.Piece;
+import chess.engine.Side;
+
+import static chess.engine.bitboard.BitBoard.*;
+
+/**
+ * Attack detection and static exchange evaluation.
+ */
 final public class Enprise {
+    private static final int PAWN   = Piece.PAWN.ordinal();
+    private static final int BISHOP = Piece.BISHOP.ordinal();
+    private static final int KNIGHT = Piece.KNIGHT.ordinal();
+    private static final int ROOK   = Piece.ROOK.ordinal();
+    private static final int QUEEN  = Piece.QUEEN.ordinal();
+    private static final int KING   = Piece.KING.ordinal();
+
+    // Least valuable first. Note: This ordering assumes bishops are worth more than knights
+    private static final int[] ATTACKER_ORDER = {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+
+    /**
+     * @return All pieces of either side attacking sq given the occupied squares.
+     *         Pieces not in occupied are ignored.
+     */
+    public static long attackersOf(Position pos, int sq, long occupied) {
+        var p = pos.pieces;
+        return ((blackPawnAttacks[sq] & p[PAWN] & pos.whitePositions) |
+                (whitePawnAttacks[sq] & p[PAWN] & pos.blackPositions) |
+                (knightMoves[sq] & p[KNIGHT]) |
+                (kingMoves[sq] & p[KING]) |
+                (bishopAttacks(sq, occupied) & (p[BISHOP] | p[QUEEN])) |
+                (rookAttacks(sq, occupied) & (p[ROOK] | p[QUEEN]))) & occupied;
+    }
+    public static boolean isSquareAttacked(Position pos, int sq, Side bySide) {
+        return (attackersOf(pos, sq, pos.getOccupied()) & pos.getPositions(bySide)) != 0;
+    }
+    /**
+     * Static exchange evaluation of a capture (or a quiet move to a possibly attacked square).
+     * Both sides recapture on the target square with their least valuable piece and
+     * may stop capturing at any point.
+     *
+     * @return The expected material gain for the side making the move
+     */
+    public static int see(Position pos, int move) {
+        var from     = Move.from(move);
+        var to       = Move.to(move);
+        var occupied = pos.getOccupied() ^ squares[from];
+        var side     = (pos.whitePositions & squares[from]) != 0 ? Position.WHITE : Position.BLACK;
+        var gain     = pos.seeGain;
+        int d        = 0;
+
+        gain[0] = Piece.material(pos.pieceTypeAt(to));
+        if(Move.flagCode(move) == Move.FLAG_ENPASSANT) {
+            gain[0]   = Piece.material(PAWN);
+            occupied ^= squares[side == Position.WHITE ? to - 8 : to + 8];
+        }
+        var attacker = pos.pieceTypeAt(from);
+
+        while(true) {
+            d++;
+            side ^= 1;
+            // Score if the piece on the target square is taken
+            gain[d] = Piece.material(attacker) - gain[d-1];
+
+            var attackers = attackersOf(pos, to, occupied) & pos.getPositions(side);
+            if(attackers == 0) break;
+
+            long bit = 0;
+            for(var p : ATTACKER_ORDER) {
+                var bb = attackers & pos.pieces[p];
+                if(bb != 0) {
+                    bit      = bb & -bb;
+                    attacker = p;
+                    break;
+                }
+            }
+            occupied ^= bit;
+        }
+        while(--d > 0) {
+            gain[d-1] = -Math.max(-gain[d-1], gain[d]);
+        }
+        return gain[0];
+    }
+    /**
+     * Each value is (sum of attacks << 16) | (material sum of attacks).
+     * See Board.getEnpriseBoard for the attacker rules
+     */
+    public static void getEnpriseBoard(Position pos, int[] board) {
+        // Squares neither side attacks score 0 so only the attacked ones need the exchange
+        var attacked = pos.getAttacks(Position.WHITE) | pos.getAttacks(Position.BLACK);
+        for(int sq=0; sq<64; sq++) {
+            board[sq] = (attacked & squares[sq]) == 0 ? 0 : enpriseForSquare(pos, sq);
+        }
+    }
+    /**
+     * Sums all square attackers for both sides on sq in piece order from pawn to king.
+     * If a new attacker becomes eligible once a previous attacker has been moved then that too is added.
+     * Attackers pinned to their own king are ignored.
+     *
+     * The sum score of all attacks is returned (positive if white would be ahead).
+     * Material score only really makes sense if sq holds an opponents piece.
+     *
+     * @return (sum of attacks << 16) | (material sum of attacks)
+     */
+    public static int enpriseForSquare(Position pos, final int sq) {
+        var side          = pos.sideToMoveCode() ^ 1;
+        var occupied      = pos.getOccupied();
+        var target        = squares[sq];
+        int attacksScore  = 0;
+        int materialScore = 0;
+        int numCaptures   = 0;
+        int finished      = 0;      // bit per side
+        var pieceAtSquare = pos.pieceTypeAt(sq);
+
+        while(finished != 3) {
+
+            // Flip sides
+            side ^= 1;
+
+            if((finished & (1 << side)) != 0) continue;
+
+            // Least valuable attacker first then the lowest square
+            var attackers = attackersOf(pos, sq, occupied) & pos.getPositions(side);
+            int attacker  = 0;
+            long bit      = 0;
+            for(var p : ATTACKER_ORDER) {
+                var bb = attackers & pos.pieces[p];
+                while(bb != 0) {
+                    var b = squares[lowestSquare(bb)];
+                    bb ^= b;
+                    if(p == KING || !exposesKing(pos, side, (occupied ^ b) | target, target)) {
+                        bit      = b;
+                        attacker = p;
+                        break;
+                    }
+                }
+                if(bit != 0) break;
+            }
+            if(bit == 0 || attacker == KING) {
+                // This side has no more attacking options
+                finished |= 1 << side;
+
+                if(bit == 0) continue;
+            }
+
+            var material = Piece.material(pieceAtSquare);
+            if(numCaptures > 0 && pieceAtSquare == KING) {
+                // Previous side used their king which we now know would be captured
+                // so that was an illegal move. Remove their score for that move.
+                if(side == Position.BLACK) {
+                    attacksScore  -= 1;
+                    materialScore -= material;
+                } else {
+                    attacksScore  += 1;
+                    materialScore += material;
+                }
+            }
+
+            // Add to the enprise score
+            attacksScore  += side == Position.WHITE ? 1 : -1;
+            materialScore += side == Position.WHITE ? material : -material;
 
+            // Move the attacking piece onto the square
+            occupied ^= bit;
+            pieceAtSquare = attacker;
+            numCaptures++;
+        }
+        return (attacksScore << 16) | (materialScore & 0xffff);
+    }
+    //===============================================================================
+    /**
+     * @param occupied The squares after side's piece has moved to target
+     * @return true if the king of side is attacked by an enemy slider other than one on target
+     */
+    private static boolean exposesKing(Position pos, int side, long occupied, long target) {
+        var king    = pos.getKingSquare(side);
+        var enemy   = pos.getPositions(side ^ 1) & occupied & ~target;
+        var p       = pos.pieces;
+        return (rookAttacks(king, occupied) & (p[ROOK] | p[QUEEN]) & enemy) != 0 ||
+               (bishopAttacks(king, occupied) & (p[BISHOP] | p[QUEEN]) & enemy) != 0;
+    }
 }
@@ -1,13 +1,355 @@
 package chess.engine.bitboard;
 
-final public class MoveGenerator {
+import chess.engine.Generator;
+import chess.engine.Move;
+import chess.engine.Piece;
 
-    void generate(Position pos) {
+import static chess.engine.bitboard.BitBoard.*;
 
+/**
+ * Legal move generator. Checking and pinned pieces are calculated once per position
+ * and used to restrict the target squares of each piece.
+ */
+final public class MoveGenerator implements Generator<Position> {
+    private static final int PAWN   = Piece.PAWN.ordinal();
+    private static final int BISHOP = Piece.BISHOP.ordinal();
+    private static final int KNIGHT = Piece.KNIGHT.ordinal();
+    private static final int ROOK   = Piece.ROOK.ordinal();
+    private static final int QUEEN  = Piece.QUEEN.ordinal();
+    private static final int KING   = Piece.KING.ordinal();
+
+    public int[] moves = new int[256];  // more than the maximum legal moves in a position (218)
+    public int numMoves;
+
+    // Legality info for the side to move
+    private int numCheckers;
+    private long checkMask;     // squares a non-king move must land on (-1 if not in check)
+    private long pinned;        // pieces pinned to their king
+    private long[] pinRays = new long[64];
+
+    // Which kinds of move to generate
+    private boolean tactical    = true;   // captures, en passant and promotions
+    private boolean quiet       = true;   // everything else
+    private boolean quietChecks = false;  // quiet moves that give check (when quiet is false)
+
+    // Quiet check info for the side to move
+    private long[] checkSquares = new long[7];  // squares each piece type would give check from
+    private long discoverers;                   // pieces blocking a check by one of our sliders
+    private long[] discoverRays = new long[64]; // squares a discoverer must leave to give check
+
+    public int[] moves() {
+        return moves;
+    }
+    public int numMoves() {
+        return numMoves;
     }
-    public void generateForSquare(chess.engine.byteboard.Position pos, int sq) {
+    /** Return the move if valid otherwise return -1. */
+    public int getMove(Position pos, int from, int to) {
+        generateFrom(pos, from);
 
+        for(int i=0; i<numMoves; i++) {
+            var move = moves[i];
+            if(Move.from(move)==from && Move.to(move)==to) return move;
+        }
+        return -1;
+    }
+    /** @return true if move is one of the legal moves of the piece on its from square */
+    boolean isLegal(Position pos, int move) {
+        generateFrom(pos, Move.from(move));
 
+        for(int i=0; i<numMoves; i++) {
+            if(moves[i] == move) return true;
+        }
+        return false;
+    }
+    /**
+     * @param quiescence If true only captures, en passant and promotions are generated.
+     *                   Note that this includes when in check so not all evasions are generated
+     */
+    public void generateForPosition(Position pos, boolean quiescence) {
+        generate(pos, true, !quiescence, false);
+    }
+    /** Generate captures, en passant and promotions only */
+    public void generateCaptures(Position pos) {
+        generate(pos, true, false, false);
+    }
+    /**
+     * Generate captures, en passant and promotions plus, if quietChecks is set,
+     * quiet moves that give check. Castling is never generated as a check
+     */
+    public void generateCaptures(Position pos, boolean quietChecks) {
+        generate(pos, true, false, quietChecks);
+    }
+    /** Generate all moves that are not captures, en passant or promotions */
+    public void generateQuiets(Position pos) {
+        generate(pos, false, true, false);
+    }
+    @Override public String toString() {
+        var buf = new StringBuilder();
+        for(int i=0; i<numMoves; i++) {
+            buf.append(String.format("[%d] %s", i, Move.toString(moves[i])));
+            buf.append("\n");
+        }
+        return buf.toString();
     }
     //============================================================================
+    private void generateFrom(Position pos, int from) {
+        numMoves    = 0;
+        tactical    = true;
+        quiet       = true;
+        quietChecks = false;
+        calculateLegality(pos);
+        generateForSquare(pos, from);
+    }
+    private void generate(Position pos, boolean tactical, boolean quiet, boolean quietChecks) {
+        numMoves         = 0;
+        this.tactical    = tactical;
+        this.quiet       = quiet;
+        this.quietChecks = quietChecks && !quiet;
+
+        calculateLegality(pos);
+        if(this.quietChecks) calculateChecks(pos);
+
+        var side = pos.sideToMoveCode();
+
+        if(numCheckers > 1) {
+            // Double check. Only the king can move
+            generateForSquare(pos, pos.getKingSquare(side));
+            return;
+        }
+
+        var own = pos.getPositions(side);
+        while(own != 0) {
+            generateForSquare(pos, firstSquare(own));
+            own &= own - 1;
+        }
+    }
+    private void generateForSquare(Position pos, int sq) {
+        var piece = pos.pieceTypeAt(sq);
+        if(piece == 0) return;
+
+        var side     = pos.sideCodeAt(sq);
+        var own      = pos.getPositions(side);
+        var occupied = pos.getOccupied();
+
+        long targets = checkMask;
+        if((pinned & squares[sq]) != 0) {
+            targets &= pinRays[sq];
+        }
+
+        if(piece == PAWN) {
+            generatePawnMoves(pos, sq, side, targets);
+        } else if(piece == KING) {
+            generateKingMoves(pos, sq, side);
+        } else {
+            long attacks;
+            if(piece == KNIGHT) {
+                attacks = knightMoves[sq];
+            } else if(piece == BISHOP) {
+                attacks = bishopAttacks(sq, occupied);
+            } else if(piece == ROOK) {
+                attacks = rookAttacks(sq, occupied);
+            } else {
+                attacks = queenAttacks(sq, occupied);
+            }
+            addMoves(pos, piece, sq, attacks & ~own & targets & wanted(pos, sq, piece));
+        }
+    }
+    /**
+     * Find the pieces checking the king of the side to move and the pieces
+     * pinned to it.
+     */
+    private void calculateLegality(Position pos) {
+        var side     = pos.sideToMoveCode();
+        var king     = pos.getKingSquare(side);
+        var own      = pos.getPositions(side);
+        var enemy    = pos.getPositions(side ^ 1);
+        var occupied = own | enemy;
+        var p        = pos.pieces;
+
+        var checkers = Enprise.attackersOf(pos, king, occupied) & enemy;
+        numCheckers  = Long.bitCount(checkers);
+
+        if(numCheckers == 0) {
+            checkMask = -1L;
+        } else if(numCheckers == 1) {
+            checkMask = checkers | between[king][firstSquare(checkers)];
+        } else {
+            checkMask = 0;
+        }
+
+        // Enemy sliders that would attack the king on an empty board
+        pinned = 0;
+        var snipers = ((rookMoves[king] & (p[ROOK] | p[QUEEN])) |
+                       (bishopMoves[king] & (p[BISHOP] | p[QUEEN]))) & enemy;
+        while(snipers != 0) {
+            var sniper = firstSquare(snipers);
+            var ray    = between[king][sniper];
+            var block  = ray & occupied;
+            if(block != 0 && (block & (block - 1)) == 0 && (block & own) != 0) {
+                pinned |= block;
+                pinRays[firstSquare(block)] = ray | squares[sniper];
+            }
+            snipers &= snipers - 1;
+        }
+    }
+    /**
+     * Find the squares from which each piece type would check the enemy king
+     * and our pieces that would give a discovered check by moving off the line.
+     */
+    private void calculateChecks(Position pos) {
+        var side     = pos.sideToMoveCode();
+        var own      = pos.getPositions(side);
+        var king     = pos.getKingSquare(side ^ 1);
+        var occupied = pos.getOccupied();
+        var p        = pos.pieces;
+
+        // Our pawns attack the king from the squares an enemy pawn on the king square would attack
+        checkSquares[PAWN]   = side==Position.WHITE ? blackPawnAttacks[king] : whitePawnAttacks[king];
+        checkSquares[KNIGHT] = knightMoves[king];
+        checkSquares[BISHOP] = bishopAttacks(king, occupied);
+        checkSquares[ROOK]   = rookAttacks(king, occupied);
+        checkSquares[QUEEN]  = checkSquares[BISHOP] | checkSquares[ROOK];
+
+        discoverers = 0;
+        var snipers = ((rookMoves[king] & (p[ROOK] | p[QUEEN])) |
+                       (bishopMoves[king] & (p[BISHOP] | p[QUEEN]))) & own;
+        while(snipers != 0) {
+            var ray   = between[king][firstSquare(snipers)];
+            var block = ray & occupied;
+            if(block != 0 && (block & (block - 1)) == 0 && (block & own) != 0) {
+                discoverers |= block;
+                discoverRays[firstSquare(block)] = ray;
+            }
+            snipers &= snipers - 1;
+        }
+    }
+    /** @return The target squares wanted for the current kinds of move */
+    private long wanted(Position pos, int sq, int piece) {
+        var occupied = pos.getOccupied();
+        long mask    = 0;
+
+        if(tactical) mask |= occupied;
+        if(quiet) {
+            mask |= ~occupied;
+        } else if(quietChecks) {
+            var checks = checkSquares[piece];
+            if((discoverers & squares[sq]) != 0) checks |= ~discoverRays[sq];
+            mask |= checks & ~occupied;
+        }
+        return mask;
+    }
+    private void generatePawnMoves(Position pos, int sq, int side, long targets) {
+        var occupied = pos.getOccupied();
+        var enemy    = pos.getPositions(side ^ 1);
+        var rank     = sq >>> 3;
+        var white    = side == Position.WHITE;
+        var forward  = white ? 8 : -8;
+        var promote  = white ? rank == 6 : rank == 1;
+        var start    = white ? rank == 1 : rank == 6;
+
+        // moves. Promotions are tactical
+        var pushes = promote ? (tactical ? targets : 0) : targets & wanted(pos, sq, PAWN);
+        var to     = sq + forward;
+        if((occupied & squares[to]) == 0) {
+            if((pushes & squares[to]) != 0) {
+                addPawnMove(pos, sq, to, promote);
+            }
+            if(start) {
+                var to2 = to + forward;
+                if((occupied & squares[to2]) == 0 && (pushes & squares[to2]) != 0) {
+                    addMove(pos, PAWN, sq, to2, Move.FLAG_NONE);
+                }
+            }
+        }
+        if(!tactical) return;
+
+        // attacks
+        var attacks  = white ? whitePawnAttacks[sq] : blackPawnAttacks[sq];
+        var captures = attacks & enemy & targets;
+        while(captures != 0) {
+            addPawnMove(pos, sq, firstSquare(captures), promote);
+            captures &= captures - 1;
+        }
+        // en passant
+        var ep = pos.availableEnPassantSquare();
+        if(ep != 0 && (attacks & squares[ep]) != 0) {
+            addEnPassantMove(pos, sq, ep);
+        }
+    }
+    /** Generate all king moves. Only non-attacked moves are generated. */
+    private void generateKingMoves(Position pos, int sq, int side) {
+        var enemySide = side ^ 1;
+        var enemy     = pos.getPositions(enemySide);
+        // Remove the king so that it does not block sliding attacks on the squares behind it
+        var occupied  = pos.getOccupied() ^ squares[sq];
+        var targets   = kingMoves[sq] & ~pos.getPositions(side) & wanted(pos, sq, KING);
+
+        while(targets != 0) {
+            var to = firstSquare(targets);
+            if((Enprise.attackersOf(pos, to, occupied) & enemy & ~squares[to]) == 0) {
+                addMove(pos, KING, sq, to, Move.FLAG_NONE);
+            }
+            targets &= targets - 1;
+        }
+
+        // castling
+        if(numCheckers > 0 || !quiet) return;
+
+        occupied = pos.getOccupied();
+        if(pos.canCastleKingSide(side)) {
+            if((occupied & (squares[sq + 1] | squares[sq + 2])) == 0) {
+                if(!pos.isSquareAttacked(sq + 1, enemySide) &&
+                   !pos.isSquareAttacked(sq + 2, enemySide))
+                {
+                    addMove(pos, KING, sq, sq + 2, Move.FLAG_OO);
+                }
+            }
+        }
+        if(pos.canCastleQueenSide(side)) {
+            if((occupied & (squares[sq - 1] | squares[sq - 2] | squares[sq - 3])) == 0) {
+                if(!pos.isSquareAttacked(sq - 1, enemySide) &&
+                   !pos.isSquareAttacked(sq - 2, enemySide))
+                {
+                    addMove(pos, KING, sq, sq - 2, Move.FLAG_OOO);
+                }
+            }
+        }
+    }
+    /**
+     * En passant can expose the king along the rank of both pawns which
+     * the pin rays do not cover so just try the move. It is rare enough.
+     */
+    private void addEnPassantMove(Position pos, int from, int to) {
+        var side = pos.sideToMoveCode();
+        var move = Move.makeMove(PAWN, from, to, PAWN, Move.FLAG_ENPASSANT);
+
+        pos.applyMove(move);
+        var legal = !pos.isSquareAttacked(pos.getKingSquare(side), side ^ 1);
+        pos.undoMove();
+
+        if(legal) {
+            moves[numMoves++] = move;
+        }
+    }
+    private void addPawnMove(Position pos, int from, int to, boolean promote) {
+        if(promote) {
+            addMove(pos, PAWN, from, to, Move.FLAG_PROMOTE_QUEEN);
+            addMove(pos, PAWN, from, to, Move.FLAG_PROMOTE_ROOK);
+            addMove(pos, PAWN, from, to, Move.FLAG_PROMOTE_BISHOP);
+            addMove(pos, PAWN, from, to, Move.FLAG_PROMOTE_KNIGHT);
+        } else {
+            addMove(pos, PAWN, from, to, Move.FLAG_NONE);
+        }
+    }
+    private void addMoves(Position pos, int piece, int from, long targets) {
+        while(targets != 0) {
+            addMove(pos, piece, from, firstSquare(targets), Move.FLAG_NONE);
+            targets &= targets - 1;
+        }
+    }
+    private void addMove(Position pos, int piece, int from, int to, int flags) {
+        var capture = (pos.getOccupied() & squares[to]) == 0 ? 0 : pos.pieceTypeAt(to);
+        moves[numMoves++] = Move.makeMove(piece, from, to, capture, flags);
+    }
 }
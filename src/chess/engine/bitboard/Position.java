@@ -1,25 +1,48 @@
 package chess.engine.bitboard;
 
+import chess.engine.Board;
+import chess.engine.KeyHistory;
+import chess.engine.Move;
 import chess.engine.Piece;
 import chess.engine.Side;
+import chess.engine.Zobrist;
 import juice.types.Pair;
 
-final public class Position {
-    private static final int FLAG_WHITE_OO 	     = 1; // has castled
-    private static final int FLAG_WHITE_OOO	     = 2; // has castled
-    private static final int FLAG_BLACK_OO	     = 4; // has castled
-    private static final int FLAG_BLACK_OOO	     = 8; // has castled
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static chess.engine.bitboard.BitBoard.squares;
+
+final public class Position implements Board {
+    static final int FLAG_WHITE_OO 	     = 1; // Set if can castle
+    static final int FLAG_WHITE_OOO	     = 2; // Set if can castle
+    static final int FLAG_BLACK_OO	     = 4; // Set if can castle
+    static final int FLAG_BLACK_OOO	     = 8; // Set if can castle
+
+    private static final int PAWN = Piece.PAWN.ordinal();
+    private static final int ROOK = Piece.ROOK.ordinal();
+    private static final int KING = Piece.KING.ordinal();
+
+    // Undo stack entry layout
+    private static final int UNDO_MOVE           = 0;
+    private static final int UNDO_PIECE          = 1;
+    private static final int UNDO_CAPTURE        = 2;
+    private static final int UNDO_ENPASSANT      = 3;
+    private static final int UNDO_FLAGS          = 4;
+    private static final int UNDO_HALF_MOVE      = 5;
+    private static final int UNDO_FULL_MOVE      = 6;
+    private static final int UNDO_WHITE_MATERIAL = 7;
+    private static final int UNDO_BLACK_MATERIAL = 8;
+    private static final int UNDO_WHITE_PIECES   = 9;
+    private static final int UNDO_BLACK_PIECES   = 10;
+    private static final int UNDO_SIZE           = 11;
 
     // Start of state
     public long whitePositions;
     public long blackPositions;
 
-    public long pawns;
-    public long bishops;
-    public long knights;
-    public long rooks;
-    public long queens;
-    public long kings;
+    public long[] pieces = new long[7];  // indexed by Piece ordinal
 
     public boolean whiteToMove;
     public int fullMoveNumber;
@@ -29,62 +52,298 @@ final public class Position {
     public int flags;
     // end of state
 
-    private int hash;
+    // Cached info not strictly part of the state
+    private long zobrist;   // See Zobrist. Excludes the move counters
+    private int whiteMaterial, blackMaterial;
+    private int whiteNumPieces, blackNumPieces;
+
+    private int[] undoStack = new int[UNDO_SIZE * 256];
+    private int undoPos;
+    private KeyHistory keyHistory = new KeyHistory();
+    private MoveGenerator legalityGenerator;    // created on first use by isLegal
+    final int[] seeGain = new int[32];          // scratch for Enprise.see
 
     public Position() {
         whitePositions = 0x00000000_0000ffffL;
         blackPositions = 0xffff0000_00000000L;
 
-        pawns   = 0x00ff0000_0000ff00L;
-        bishops = 0x24000000_00000024L;
-        knights = 0x42000000_00000042L;
-        rooks   = 0x81000000_00000081L;
-        queens  = 0x10000000_00000010L;
-        kings   = 0x08000000_00000008L;
+        pieces[Piece.PAWN.ordinal()]   = 0x00ff0000_0000ff00L;
+        pieces[Piece.BISHOP.ordinal()] = 0x24000000_00000024L;
+        pieces[Piece.KNIGHT.ordinal()] = 0x42000000_00000042L;
+        pieces[Piece.ROOK.ordinal()]   = 0x81000000_00000081L;
+        pieces[Piece.QUEEN.ordinal()]  = 0x10000000_00000010L;
+        pieces[Piece.KING.ordinal()]   = 0x08000000_00000008L;
 
         whiteToMove    = true;
         fullMoveNumber = 0;
         halfMoveClock  = 0;
         availableEnpassant = 0;
 
-        flags = 0;
-    }
+        flags = FLAG_WHITE_OO | FLAG_WHITE_OOO | FLAG_BLACK_OO | FLAG_BLACK_OOO;
 
+        updateCachedInfo();
+    }
+    public void copyTo(Position p) {
+        p.whitePositions     = whitePositions;
+        p.blackPositions     = blackPositions;
+        System.arraycopy(pieces, 0, p.pieces, 0, pieces.length);
+        p.whiteToMove        = whiteToMove;
+        p.fullMoveNumber     = fullMoveNumber;
+        p.halfMoveClock      = halfMoveClock;
+        p.availableEnpassant = availableEnpassant;
+        p.flags              = flags;
+        p.zobrist            = zobrist;
+        p.whiteMaterial      = whiteMaterial;
+        p.blackMaterial      = blackMaterial;
+        p.whiteNumPieces     = whiteNumPieces;
+        p.blackNumPieces     = blackNumPieces;
+        // Ensure p has no history
+        p.undoPos = 0;
+        p.keyHistory.clear();
+    }
     public void applyMove(int move) {
+        if(undoPos + UNDO_SIZE > undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        }
+
+        var from     = Move.from(move);
+        var to       = Move.to(move);
+        var flags    = Move.flagCode(move);
+        var fromBit  = squares[from];
+        var toBit    = squares[to];
+        var piece    = pieceTypeAt(from);
+        var capture  = pieceTypeAt(to);
+        var captureSq = to;
+
+        if(flags==Move.FLAG_ENPASSANT) {
+            capture   = PAWN;
+            captureSq = whiteToMove ? to - 8 : to + 8;
+        }
 
+        // Record the delta
+        var u = undoStack;
+        var i = undoPos;
+        u[i + UNDO_MOVE]           = move;
+        u[i + UNDO_PIECE]          = piece;
+        u[i + UNDO_CAPTURE]        = capture;
+        u[i + UNDO_ENPASSANT]      = availableEnpassant;
+        u[i + UNDO_FLAGS]          = this.flags;
+        u[i + UNDO_HALF_MOVE]      = halfMoveClock;
+        u[i + UNDO_FULL_MOVE]      = fullMoveNumber;
+        u[i + UNDO_WHITE_MATERIAL] = whiteMaterial;
+        u[i + UNDO_BLACK_MATERIAL] = blackMaterial;
+        u[i + UNDO_WHITE_PIECES]   = whiteNumPieces;
+        u[i + UNDO_BLACK_PIECES]   = blackNumPieces;
+        undoPos += UNDO_SIZE;
+        keyHistory.push(zobrist);
+
+        // Remove the old side, castling and en passant keys and move the piece
+        var s   = whiteToMove ? 0 : 8;
+        long key = zobrist ^ Zobrist.BLACK_TO_MOVE ^ Zobrist.CASTLING[this.flags] ^
+                   Zobrist.PIECES[piece | s][from] ^ Zobrist.PIECES[piece | s][to];
+        if(capture != 0) key ^= Zobrist.PIECES[capture | (s ^ 8)][captureSq];
+        if(availableEnpassant != 0) key ^= Zobrist.ENPASSANT[availableEnpassant & 7];
+
+        // Remove the captured piece
+        if(capture != 0) {
+            var captureBit = squares[captureSq];
+            pieces[capture] ^= captureBit;
+            if(whiteToMove) {
+                blackPositions ^= captureBit;
+                blackMaterial  -= Piece.material(capture);
+                blackNumPieces--;
+            } else {
+                whitePositions ^= captureBit;
+                whiteMaterial  -= Piece.material(capture);
+                whiteNumPieces--;
+            }
+            // Remove castling permissions if a rook was captured
+            if(capture == ROOK) {
+                if(to == 0) this.flags &= ~FLAG_WHITE_OOO;
+                if(to == 7) this.flags &= ~FLAG_WHITE_OO;
+                if(to == 56) this.flags &= ~FLAG_BLACK_OOO;
+                if(to == 63) this.flags &= ~FLAG_BLACK_OO;
+            }
+        }
+
+        // Move the piece
+        movePiece(piece, fromBit | toBit);
+
+        availableEnpassant = 0;
+
+        if(piece == PAWN) {
+            // add a possible en passant target
+            if(to - from == 16) {
+                availableEnpassant = from + 8;
+            } else if(from - to == 16) {
+                availableEnpassant = from - 8;
+            }
+            // promotion
+            if(Move.isPromotion(move)) {
+                var promotion = Move.promotionCode(move);
+                pieces[PAWN] ^= toBit;
+                pieces[promotion] ^= toBit;
+                key ^= Zobrist.PIECES[PAWN | s][to] ^ Zobrist.PIECES[promotion | s][to];
+
+                var materialChange = Piece.material(promotion) - Piece.material(PAWN);
+                if(whiteToMove) {
+                    whiteMaterial += materialChange;
+                } else {
+                    blackMaterial += materialChange;
+                }
+            }
+        } else if(piece == KING) {
+            // remove castling permissions
+            if(whiteToMove) {
+                this.flags &= ~(FLAG_WHITE_OO | FLAG_WHITE_OOO);
+            } else {
+                this.flags &= ~(FLAG_BLACK_OO | FLAG_BLACK_OOO);
+            }
+            // move the rook if castling
+            if(flags == Move.FLAG_OO) {
+                movePiece(ROOK, squares[to + 1] | squares[to - 1]);
+                key ^= Zobrist.PIECES[ROOK | s][to + 1] ^ Zobrist.PIECES[ROOK | s][to - 1];
+            } else if(flags == Move.FLAG_OOO) {
+                movePiece(ROOK, squares[to - 2] | squares[to + 1]);
+                key ^= Zobrist.PIECES[ROOK | s][to - 2] ^ Zobrist.PIECES[ROOK | s][to + 1];
+            }
+        } else if(piece == ROOK) {
+            // remove castling permissions
+            if(from == 0) this.flags &= ~FLAG_WHITE_OOO;
+            if(from == 7) this.flags &= ~FLAG_WHITE_OO;
+            if(from == 56) this.flags &= ~FLAG_BLACK_OOO;
+            if(from == 63) this.flags &= ~FLAG_BLACK_OO;
+        }
+
+        // Pawn move or any capture resets half move clock
+        if(piece == PAWN || capture != 0) {
+            halfMoveClock = 0;
+        } else {
+            halfMoveClock++;
+        }
+        key ^= Zobrist.CASTLING[this.flags];
+        if(availableEnpassant != 0) key ^= Zobrist.ENPASSANT[availableEnpassant & 7];
+        zobrist = key;
+
+        whiteToMove     = !whiteToMove;
+        fullMoveNumber += (whiteToMove ? 1 : 0);
     }
-    public void undoMove() {
+    public int undoMove() {
+        undoPos -= UNDO_SIZE;
+
+        var u       = undoStack;
+        var i       = undoPos;
+        var move    = u[i + UNDO_MOVE];
+        var piece   = u[i + UNDO_PIECE];
+        var capture = u[i + UNDO_CAPTURE];
+        var from    = Move.from(move);
+        var to      = Move.to(move);
+        var flags   = Move.flagCode(move);
+        var toBit   = squares[to];
 
+        whiteToMove = !whiteToMove;
+
+        if(Move.isPromotion(move)) {
+            pieces[Move.promotionCode(move)] ^= toBit;
+            pieces[PAWN] ^= toBit;
+        } else if(flags == Move.FLAG_OO) {
+            movePiece(ROOK, squares[to + 1] | squares[to - 1]);
+        } else if(flags == Move.FLAG_OOO) {
+            movePiece(ROOK, squares[to - 2] | squares[to + 1]);
+        }
+        movePiece(piece, squares[from] | toBit);
+
+        if(capture != 0) {
+            var captureSq  = flags == Move.FLAG_ENPASSANT ? (whiteToMove ? to - 8 : to + 8) : to;
+            var captureBit = squares[captureSq];
+            pieces[capture] ^= captureBit;
+            if(whiteToMove) {
+                blackPositions ^= captureBit;
+            } else {
+                whitePositions ^= captureBit;
+            }
+        }
+
+        availableEnpassant = u[i + UNDO_ENPASSANT];
+        this.flags         = u[i + UNDO_FLAGS];
+        halfMoveClock      = u[i + UNDO_HALF_MOVE];
+        fullMoveNumber     = u[i + UNDO_FULL_MOVE];
+        whiteMaterial      = u[i + UNDO_WHITE_MATERIAL];
+        blackMaterial      = u[i + UNDO_BLACK_MATERIAL];
+        whiteNumPieces     = u[i + UNDO_WHITE_PIECES];
+        blackNumPieces     = u[i + UNDO_BLACK_PIECES];
+        zobrist            = keyHistory.pop();
+
+        return move;
+    }
+    /** @return 64 bit key of the position excluding the move counters */
+    public long zobrist() {
+        return zobrist;
+    }
+    public KeyHistory keyHistory() {
+        return keyHistory;
+    }
+    public long getOccupied() {
+        return whitePositions | blackPositions;
+    }
+    public long getPositions(Side side) {
+        return side == Side.WHITE ? whitePositions : blackPositions;
+    }
+    public long getPositions(int side) {
+        return side == WHITE ? whitePositions : blackPositions;
+    }
+    public long getPieces(Piece piece, Side side) {
+        return pieces[piece.ordinal()] & getPositions(side);
     }
     public boolean isOccupied(int sq) {
-        // todo
-        return false;
+        return (getOccupied() & squares[sq]) != 0;
+    }
+    public boolean squareContains(int sq, Piece p, Side side) {
+        return (getPieces(p, side) & squares[sq]) != 0;
     }
     /**
      * @param file 0..7
      * @param rank 0..7
      */
     public Pair<Piece,Side> getPieceAt(int file, int rank) {
-        long m = (0x80L>>>file) << (rank*8);
-
-        Piece piece = Piece.NONE;
-        if((pawns & m)!=0) piece = Piece.PAWN;
-        if((bishops & m)!=0) piece = Piece.BISHOP;
-        if((knights & m)!=0) piece = Piece.KNIGHT;
-        if((rooks & m)!=0) piece = Piece.ROOK;
-        if((queens & m)!=0) piece = Piece.QUEEN;
-        if((kings & m)!=0) piece = Piece.KING;
-
-        Side side = (whitePositions & m) != 0 ? Side.WHITE : Side.BLACK;
-
-        return new Pair<>(piece, side);
+        var sq = file + (rank<<3);
+        return new Pair<>(pieceAt(sq), sideAt(sq));
     }
     public Pair<Piece,Side> getPieceAt(int sq) {
         return getPieceAt(sq&7, sq>>3);
     }
+    public Piece pieceAt(int file, int rank) {
+        return pieceAt(file + (rank<<3));
+    }
+    public Piece pieceAt(int sq) {
+        return Piece.get(pieceTypeAt(sq));
+    }
+    public Side sideAt(int file, int rank) {
+        return sideAt(file + (rank<<3));
+    }
+    public Side sideAt(int sq) {
+        return (whitePositions & squares[sq]) != 0 ? Side.WHITE : Side.BLACK;
+    }
+    public Side sideToMove() {
+        return whiteToMove ? Side.WHITE : Side.BLACK;
+    }
+    public int availableEnPassantSquare() {
+        return availableEnpassant;
+    }
+    public int fullMoveNumber() {
+        return fullMoveNumber;
+    }
+    public int halfMoveClock() {
+        return halfMoveClock;
+    }
     public int getKingSquare(Side side) {
-        // todo
-        return 0;
+        return BitBoard.firstSquare(pieces[KING] & getPositions(side));
+    }
+    public int getMaterialValue(Side side) {
+        return side==Side.WHITE ? whiteMaterial : blackMaterial;
+    }
+    public boolean canCastle(Side side) {
+        return canCastleKingSide(side) || canCastleQueenSide(side);
     }
     public boolean canCastleKingSide(Side side) {
         return side == Side.WHITE ? (flags&FLAG_WHITE_OO)!=0
@@ -95,27 +354,124 @@ final public class Position {
                                   : (flags&FLAG_BLACK_OOO)!=0;
     }
     public boolean isSquareAttacked(int sq, Side by) {
-        // todo
-        return false;
+        return Enprise.isSquareAttacked(this, sq, by);
+    }
+    public boolean isCheck() {
+        var side = sideToMoveCode();
+        return isSquareAttacked(getKingSquare(side), side ^ 1);
+    }
+    public int getPiecePositions(Piece piece, Side side, int[] array) {
+        return toSquares(getPieces(piece, side), array);
+    }
+    public int getPiecePositions(Side side, int[] array) {
+        return toSquares(getPositions(side), array);
+    }
+    //==============================================================================
+    // Int API for the search and evaluators. Codes are the Board constants
+
+    public int pieceCodeAt(int sq) {
+        return pieceTypeAt(sq);
+    }
+    public int sideCodeAt(int sq) {
+        return (blackPositions & squares[sq]) != 0 ? BLACK : WHITE;
+    }
+    public int sideToMoveCode() {
+        return whiteToMove ? WHITE : BLACK;
+    }
+    public boolean squareContains(int sq, int piece, int side) {
+        return (pieces[piece] & getPositions(side) & squares[sq]) != 0;
+    }
+    public int getKingSquare(int side) {
+        return BitBoard.firstSquare(pieces[KING] & getPositions(side));
+    }
+    public int getMaterialValue(int side) {
+        return side==WHITE ? whiteMaterial : blackMaterial;
+    }
+    public boolean canCastleKingSide(int side) {
+        return (flags & (side==WHITE ? FLAG_WHITE_OO : FLAG_BLACK_OO)) != 0;
+    }
+    public boolean canCastleQueenSide(int side) {
+        return (flags & (side==WHITE ? FLAG_WHITE_OOO : FLAG_BLACK_OOO)) != 0;
+    }
+    public boolean isSquareAttacked(int sq, int by) {
+        return (Enprise.attackersOf(this, sq, getOccupied()) & getPositions(by)) != 0;
     }
+    public long getAttacks(int side) {
+        var own   = getPositions(side);
+        var occ   = getOccupied();
+        var pawns = side == WHITE ? BitBoard.whitePawnAttacks : BitBoard.blackPawnAttacks;
+        long attacks = 0;
+
+        for(long bits = pieces[PAWN] & own; bits != 0; bits &= bits - 1) {
+            attacks |= pawns[BitBoard.firstSquare(bits)];
+        }
+        for(long bits = pieces[KNIGHT] & own; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.knightMoves[BitBoard.firstSquare(bits)];
+        }
+        for(long bits = (pieces[BISHOP] | pieces[QUEEN]) & own; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.bishopAttacks(BitBoard.firstSquare(bits), occ);
+        }
+        for(long bits = (pieces[ROOK] | pieces[QUEEN]) & own; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.rookAttacks(BitBoard.firstSquare(bits), occ);
+        }
+        return attacks | BitBoard.kingMoves[getKingSquare(side)];
+    }
+    /** Move must match a legal move exactly, including the piece, capture and flags */
+    public boolean isLegal(int move) {
+        var from = Move.from(move);
+        if(move == 0 || (getPositions(sideToMoveCode()) & squares[from]) == 0) return false;
+        if(pieceTypeAt(from) != Move.pieceCode(move)) return false;
+
+        if(legalityGenerator == null) legalityGenerator = new MoveGenerator();
+        return legalityGenerator.isLegal(this, move);
+    }
+    public int getPiecePositions(int piece, int side, int[] array) {
+        return toSquares(pieces[piece] & getPositions(side), array);
+    }
+    public int getPiecePositions(int side, int[] array) {
+        return toSquares(getPositions(side), array);
+    }
+    public int see(int move) {
+        return Enprise.see(this, move);
+    }
+    public void getEnpriseBoard(int[] board) {
+        Enprise.getEnpriseBoard(this, board);
+    }
+    @Override public void packBoard(long[] packed) {
+        packed[0] = packed[1] = packed[2] = packed[3] = 0;
+        for(int piece = PAWN; piece <= KING; piece++) {
+            for(int side = WHITE; side <= BLACK; side++) {
+                long nibble = piece | (side << 3);
+                for(long bits = pieces[piece] & getPositions(side); bits != 0; bits &= bits - 1) {
+                    var sq = BitBoard.firstSquare(bits);
+                    packed[sq >>> 4] |= nibble << ((sq & 15) << 2);
+                }
+            }
+        }
+    }
+    //==============================================================================
+    public boolean isEndGame() {
+        return whiteMaterial <= 14 ||
+               blackMaterial <= 14 ||
+               whiteNumPieces < 5 ||
+               blackNumPieces < 5;
+    }
+    public int getLastMove() {
+        return undoStack[undoPos - UNDO_SIZE + UNDO_MOVE];
+    }
+    public int getNumMovesPlayed() {
+        return undoPos / UNDO_SIZE;
+    }
+    public List<Integer> getMoveHistory() {
+        var list = new ArrayList<Integer>(getNumMovesPlayed());
+        for(int i = 0; i < undoPos; i += UNDO_SIZE) {
+            list.add(undoStack[i + UNDO_MOVE]);
+        }
+        return list;
+    }
+    //==============================================================================
     @Override public int hashCode() {
-        if(hash!=0) return hash;
-        long h = 0;
-        h = 31 * h + whitePositions;
-        h = 31 * h + blackPositions;
-        h = 31 * h + pawns;
-        h = 31 * h + bishops;
-        h = 31 * h + knights;
-        h = 31 * h + rooks;
-        h = 31 * h + queens;
-        h = 31 * h + kings;
-        h = 31 * h + (whiteToMove ? 1 : 0);
-        h = 31 * h + fullMoveNumber;
-        h = 31 * h + halfMoveClock;
-        h = 31 * h + flags;
-        h = 31 * h + availableEnpassant;
-        hash = (int)(h&0xffffff) ^ (int)(h>>>32);
-        return hash;
+        return (int)(zobrist ^ (zobrist >>> 32));
     }
     @Override public boolean equals(Object obj) {
         Position p = (Position)obj;
@@ -124,17 +480,65 @@ final public class Position {
         return fullMoveNumber==p.fullMoveNumber &&
             whitePositions==p.whitePositions &&
             blackPositions==p.blackPositions &&
-            bishops==p.bishops &&
-            knights==p.knights &&
-            rooks==p.rooks &&
-            queens==p.queens &&
-            kings==p.kings &&
+            Arrays.equals(pieces, p.pieces) &&
             whiteToMove==p.whiteToMove &&
             halfMoveClock==p.halfMoveClock &&
             availableEnpassant==p.availableEnpassant &&
             flags==p.flags;
     }
     @Override public String toString() {
-        return super.toString();
+        var buf = new StringBuilder();
+        for(var rank = 7; rank >= 0; rank--) {
+            for(var file = 0; file<8; file++) {
+                var p = pieceAt(file, rank);
+                if(p==Piece.NONE) {
+                    buf.append("∙ ");
+                } else if(sideAt(file, rank)==Side.WHITE) {
+                    buf.append(p.fen()).append(" ");
+                } else {
+                    buf.append(p.fen().toLowerCase()).append(" ");
+                }
+            }
+            buf.append("\n");
+        }
+        return buf.toString();
+    }
+    //==============================================================================
+    /** Recalculate the cached material and piece counts after the state has been set directly. */
+    void updateCachedInfo() {
+        zobrist        = Zobrist.hash(this);
+        whiteMaterial  = 0;
+        blackMaterial  = 0;
+        whiteNumPieces = Long.bitCount(whitePositions);
+        blackNumPieces = Long.bitCount(blackPositions);
+
+        for(var p : Piece.values()) {
+            whiteMaterial += Long.bitCount(pieces[p.ordinal()] & whitePositions) * p.material;
+            blackMaterial += Long.bitCount(pieces[p.ordinal()] & blackPositions) * p.material;
+        }
+    }
+    int pieceTypeAt(int sq) {
+        var m = squares[sq];
+        for(int p = 1; p < pieces.length; p++) {
+            if((pieces[p] & m) != 0) return p;
+        }
+        return 0;
+    }
+    private void movePiece(int piece, long fromTo) {
+        pieces[piece] ^= fromTo;
+        if(whiteToMove) {
+            whitePositions ^= fromTo;
+        } else {
+            blackPositions ^= fromTo;
+        }
+    }
+    /** @return The squares of bb in ascending order */
+    private static int toSquares(long bb, int[] array) {
+        int count = 0;
+        // Mirroring the files gives the natural layout (bit = square) so the lowest bit comes first
+        for(long bits = Long.reverse(Long.reverseBytes(bb)); bits != 0; bits &= bits - 1) {
+            array[count++] = Long.numberOfTrailingZeros(bits);
+        }
+        return count;
     }
 }
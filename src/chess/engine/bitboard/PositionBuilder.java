@@ -0,0 +1,53 @@
+package chess.engine.bitboard;
+
+import chess.engine.Side;
+
+import java.util.Arrays;
+
+final public class PositionBuilder {
+
+    public static Position standard() {
+        return new Position();
+    }
+    /**
+     * Forsyth-Edwards Notation.
+     * Parsing is shared with the byteboard engine.
+     */
+    public static Position fromFEN(String fen) {
+        return from(chess.engine.byteboard.PositionBuilder.fromFEN(fen));
+    }
+    /** Convert a byteboard position. Move history is not copied. */
+    public static Position from(chess.engine.byteboard.Position p) {
+        var pos = new Position();
+        pos.whitePositions = 0;
+        pos.blackPositions = 0;
+        Arrays.fill(pos.pieces, 0);
+
+        for(int sq = 0; sq < 64; sq++) {
+            if(!p.isOccupied(sq)) continue;
+
+            var bit = BitBoard.squares[sq];
+            pos.pieces[p.pieceAt(sq).ordinal()] |= bit;
+            if(p.sideAt(sq) == Side.WHITE) {
+                pos.whitePositions |= bit;
+            } else {
+                pos.blackPositions |= bit;
+            }
+        }
+
+        pos.whiteToMove        = p.sideToMove() == Side.WHITE;
+        pos.fullMoveNumber     = p.fullMoveNumber();
+        pos.halfMoveClock      = p.halfMoveClock();
+        pos.availableEnpassant = p.availableEnPassantSquare();
+
+        int flags = 0;
+        if(p.canCastleKingSide(Side.WHITE)) flags |= Position.FLAG_WHITE_OO;
+        if(p.canCastleQueenSide(Side.WHITE)) flags |= Position.FLAG_WHITE_OOO;
+        if(p.canCastleKingSide(Side.BLACK)) flags |= Position.FLAG_BLACK_OO;
+        if(p.canCastleQueenSide(Side.BLACK)) flags |= Position.FLAG_BLACK_OOO;
+        pos.flags = flags;
+
+        pos.updateCachedInfo();
+        return pos;
+    }
+}
@@ -1,29 +1,35 @@
 package chess.engine.byteboard;
 
+import chess.engine.Move;
 import chess.engine.Piece;
 import chess.engine.Side;
-
-import java.util.ArrayList;
-import java.util.List;
+import chess.engine.bitboard.BitBoard;
 
 /**
  * Static exchange evaluator.
  */
 final public class Enprise {
-    private static final int EMPTY       = 0;
-    private static final int NO_ATTACKER = -1;
+    // Attacker order by piece ordinal, least valuable first.
+    // Note: This ordering assumes bishops are worth more than knights
+    private static final int[] ATTACKER_RANK  = {6, 0, 2, 1, 3, 4, 5, 7};
+    private static final int[] ATTACKER_ORDER = {Position.PAWN, Position.KNIGHT, Position.BISHOP,
+                                                 Position.ROOK, Position.QUEEN, Position.KING};
 
     /**
-     * Each value is (sum of attacks << 16) | (material sum of attacks)
+     * Each value is (sum of attacks << 16) | (material sum of attacks).
+     * See Board.getEnpriseBoard for the attacker rules
      */
     public static void getEnpriseBoard(Position pos, int[] board) {
+        // Squares neither side attacks score 0 so only the attacked ones need the exchange
+        var attacked = pos.getAttacks(Position.WHITE) | pos.getAttacks(Position.BLACK);
         for(int sq=0; sq<64; sq++) {
-            board[sq] = enpriseForSquare(pos, sq);
+            board[sq] = (attacked & BitBoard.squares[sq]) == 0 ? 0 : enpriseForSquare(pos, sq);
         }
     }
     /**
      * Sums all square attackers for both sides on sq in piece order from pawn to king.
      * If a new attacker becomes eligible once a previous attacker has been moved then that too is added.
+     * Attackers pinned to their own king are ignored.
      *
      * The sum score of all attacks is returned (positive if white would be ahead).
      * Material score only really makes sense if sq holds an opponents piece.
@@ -31,392 +37,269 @@ final public class Enprise {
      * @return (sum of attacks << 16) | (material sum of attacks)
      */
     public static int enpriseForSquare(Position pos, final int sq) {
-
-        Side originalSide = pos.sideToMove();
-        Side side         = originalSide.opposite();
-
-        var file            = sq & 7;
-        var rank            = sq >>> 3;
-        int attacksScore    = 0;
-        int materialScore   = 0;
-        boolean[] finished  = new boolean[2];
-        Piece pieceAtSquare = pos.pieceAt(sq);
-
-        List<Integer> savedSquares = new ArrayList<>(16);
-        savedSquares.add((sq<<4) | pos.state.board[sq]);
-
-        // Calculate enprise score
-        while(!finished[0] || !finished[1]) {
+        var p             = pos.state.pieces;
+        var side          = pos.sideToMoveCode() ^ 1;
+        var occupied      = pos.state.occupied;     // BitBoard layout
+        var target        = BitBoard.squares[sq];
+        int attacksScore  = 0;
+        int materialScore = 0;
+        int numCaptures   = 0;
+        int finished      = 0;      // bit per side
+        var pieceAtSquare = pos.pieceCodeAt(sq);
+
+        while(finished != 3) {
 
             // Flip sides
-            side = side.opposite();
-
-            if(!finished[side.ordinal()]) {
-                // Note: This ordering assumes bishops are worth more than knights
-                int attackerSquare = getPawnAttacker(pos, sq, file, rank, side);
-                if(attackerSquare == NO_ATTACKER) {
-                    attackerSquare = getKnightAttacker(pos, sq, file, rank, side);
-                    if(attackerSquare == NO_ATTACKER) {
-                        attackerSquare = getBishopAttacker(pos, sq, file, rank, side);
-                        if(attackerSquare == NO_ATTACKER) {
-                            attackerSquare = getRookAttacker(pos, sq, file, rank, side);
-                            if(attackerSquare == NO_ATTACKER) {
-                                attackerSquare = getQueenAttacker(pos, sq, file, rank, side);
-                                if(attackerSquare == NO_ATTACKER) {
-                                    attackerSquare = getKingAttacker(pos, sq, file, rank, side);
-
-                                    // This side has no more attacking options
-                                    finished[side.ordinal()] = true;
-
-                                    if(attackerSquare == NO_ATTACKER) {
-                                        continue;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-                // Ok we have an attacker at attackerSquare
-
-                if(savedSquares.size()>1 && pieceAtSquare==Piece.KING) {
-                    // Previous side used their king which we now know would be captured
-                    // so that was an illegal move. Remove their score for that move.
-                    if(side.opposite()== Side.WHITE) {
-                        attacksScore  -= 1;
-                        materialScore -= pieceAtSquare.material;
-                    } else {
-                        attacksScore  += 1;
-                        materialScore += pieceAtSquare.material;
+            side ^= 1;
+
+            if((finished & (1 << side)) != 0) continue;
+
+            // Least valuable attacker first then the lowest square. The piece sets are in
+            // the natural layout so the lowest bit is the lowest square
+            var attackers = mirror(attackersOf(pos, sq, occupied));
+            int attacker  = 0;
+            int from      = -1;
+            for(var t : ATTACKER_ORDER) {
+                for(var bb = attackers & p[t | (side<<3)]; bb != 0; bb &= bb - 1) {
+                    var f = Long.numberOfTrailingZeros(bb);
+                    if(t == Position.KING || !exposesKing(pos, side, (occupied ^ BitBoard.squares[f]) | target, target)) {
+                        from     = f;
+                        attacker = t;
+                        break;
                     }
                 }
+                if(from != -1) break;
+            }
+            if(from == -1 || attacker == Position.KING) {
+                // This side has no more attacking options
+                finished |= 1 << side;
 
-                // Add to the enprise score
-                attacksScore  += side == Side.WHITE ? 1 : -1;
-                materialScore += side == Side.WHITE ? pieceAtSquare.material : -pieceAtSquare.material;
-
-                // Remove the attacking piece
-                savedSquares.add((attackerSquare << 4) | pos.state.board[attackerSquare]);
-                pos.state.board[sq] = pos.state.board[attackerSquare];
-                pos.state.board[attackerSquare] = EMPTY;
+                if(from == -1) continue;
+            }
 
-                pieceAtSquare = pos.pieceAt(sq);
+            var material = Piece.material(pieceAtSquare);
+            if(numCaptures > 0 && pieceAtSquare == Position.KING) {
+                // Previous side used their king which we now know would be captured
+                // so that was an illegal move. Remove their score for that move.
+                if(side == Position.BLACK) {
+                    attacksScore  -= 1;
+                    materialScore -= material;
+                } else {
+                    attacksScore  += 1;
+                    materialScore += material;
+                }
             }
-        }
 
-        // Put the pieces back
-        savedSquares.forEach(it->pos.state.board[it>>>4] = it&0b1111);
+            // Add to the enprise score
+            attacksScore  += side == Position.WHITE ? 1 : -1;
+            materialScore += side == Position.WHITE ? material : -material;
 
+            // Move the attacking piece onto the square
+            occupied ^= BitBoard.squares[from];
+            pieceAtSquare = attacker;
+            numCaptures++;
+        }
         return (attacksScore << 16) | (materialScore & 0xffff);
     }
+    /**
+     * Unlike the enprise calculation this counts attacks by pieces that are
+     * pinned to their own king since those still prevent the enemy king
+     * from moving to sq.
+     */
     public static boolean isSquareAttacked(Position pos, int sq, Side bySide) {
+        return isSquareAttacked(pos, sq, bySide.ordinal());
+    }
+    /** @param bySide Position.WHITE or Position.BLACK */
+    public static boolean isSquareAttacked(Position pos, int sq, int bySide) {
+        var b    = pos.state.board;
         var file = sq & 7;
         var rank = sq >>> 3;
+        var s    = bySide << 3;
 
-        return getPawnAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER ||
-               getBishopAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER ||
-               getKnightAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER ||
-               getRookAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER ||
-               getQueenAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER ||
-               getKingAttacker(pos, sq, file, rank, bySide) != NO_ATTACKER;
-    }
-    public static String toString(Position pos, boolean material) {
-        var buf = new StringBuilder();
-        for(var rank = 7; rank >= 0; rank--) {
-            for(var file = 0; file<8; file++) {
-                int e = enpriseForSquare(pos, file + (rank<<3));
-
-                if(material) e &= 0xffff; else e >>= 16;
-                short score = (short)e;
-
-                if(score>=0) buf.append(" "+score+" ");
-                else buf.append(""+score+" ");
-            }
-            buf.append("\n");
-        }
-        return buf.toString();
-    }
-    //===============================================================================
-    private static int getPawnAttacker(Position pos, int sq, int file, int rank, Side side) {
-        var b     = pos.state.board;
-        var pawn  = Piece.PAWN.ordinal() | (side.ordinal()<<3);
-
-        // todo - handle enpassant
-
-        if(side==Side.WHITE) {
+        // Pawns
+        var pawn = Position.PAWN | s;
+        if(bySide==Position.WHITE) {
             if(rank > 1) {
-                // white
-                if(file > 0 && b[sq - 9] == pawn) return checkKing(pos, side, sq-9);
-                if(file < 7 && b[sq - 7] == pawn) return checkKing(pos, side, sq-7);
+                if(file > 0 && b[sq - 9] == pawn) return true;
+                if(file < 7 && b[sq - 7] == pawn) return true;
             }
         } else {
             if(rank < 6) {
-                // black
-                if(file > 0 && b[sq + 7] == pawn) return checkKing(pos, side, sq+7);
-                if(file < 7 && b[sq + 9] == pawn) return checkKing(pos, side, sq+9);
+                if(file > 0 && b[sq + 7] == pawn) return true;
+                if(file < 7 && b[sq + 9] == pawn) return true;
             }
         }
-        return NO_ATTACKER;
-    }
-    private static int getBishopAttacker(Position pos, final int sq, int file, int rank, Side side) {
-        var bishop = Piece.BISHOP.ordinal() | (side.ordinal()<<3);
-        return checkKing(pos, side, getDiagonalAttacker(pos, sq, file, rank, bishop));
-    }
-    private static int getKnightAttacker(Position pos, int sq, int file, int rank, Side side) {
-        var b      = pos.state.board;
-        var knight = Piece.KNIGHT.ordinal() | (side.ordinal()<<3);
 
+        // Knights
+        var knight = Position.KNIGHT | s;
         if(rank < 6) {
-            if(file > 0 && b[sq + 15] == knight) return checkKing(pos, side, sq+15);
-            if(file < 7 && b[sq + 17] == knight) return checkKing(pos, side, sq+17);
+            if(file > 0 && b[sq + 15] == knight) return true;
+            if(file < 7 && b[sq + 17] == knight) return true;
         }
         if(rank > 1) {
-            if(file > 0 && b[sq - 17] == knight) return checkKing(pos, side, sq-17);
-            if(file < 7 && b[sq - 15] == knight) return checkKing(pos, side, sq-15);
+            if(file > 0 && b[sq - 17] == knight) return true;
+            if(file < 7 && b[sq - 15] == knight) return true;
         }
         if(file < 6) {
-            if(rank < 7 && b[sq + 10] == knight) return checkKing(pos, side, sq+10);
-            if(rank > 0 && b[sq - 6]  == knight) return checkKing(pos, side, sq-6);
+            if(rank < 7 && b[sq + 10] == knight) return true;
+            if(rank > 0 && b[sq - 6]  == knight) return true;
         }
         if(file > 1) {
-            if(rank < 7 && b[sq + 6]  == knight) return checkKing(pos, side, sq+6);
-            if(rank > 0 && b[sq - 10] == knight) return checkKing(pos, side, sq-10);
+            if(rank < 7 && b[sq + 6]  == knight) return true;
+            if(rank > 0 && b[sq - 10] == knight) return true;
         }
-        return NO_ATTACKER;
-    }
-    private static int getRookAttacker(Position pos, int sq, int file, int rank, Side side) {
-        var rook = Piece.ROOK.ordinal() | (side.ordinal()<<3);
-        return checkKing(pos, side, (getRankAndFileAttacker(pos, sq, file, rank, rook)));
-    }
-    private static int getQueenAttacker(Position pos, int sq, int file, int rank, Side side) {
-        var queen = Piece.QUEEN.ordinal() | (side.ordinal()<<3);
 
-        var r = checkKing(pos, side, (getRankAndFileAttacker(pos, sq, file, rank, queen)));
-        if(r!=NO_ATTACKER) return r;
+        // Sliders. Check the first piece hit along each ray
+        var occupied = pos.getOccupied();
+        var queen    = Position.QUEEN | s;
+        var bishop   = Position.BISHOP | s;
+        var rook     = Position.ROOK | s;
+
+        var blockers = BitBoard.bishopAttacks(sq, occupied) & occupied;
+        while(blockers != 0) {
+            var t = b[BitBoard.firstSquare(blockers)];
+            if(t == bishop || t == queen) return true;
+            blockers &= blockers - 1;
+        }
+        blockers = BitBoard.rookAttacks(sq, occupied) & occupied;
+        while(blockers != 0) {
+            var t = b[BitBoard.firstSquare(blockers)];
+            if(t == rook || t == queen) return true;
+            blockers &= blockers - 1;
+        }
 
-        return checkKing(pos, side, getDiagonalAttacker(pos, sq, file, rank, queen));
+        var king = pos.getKingSquare(bySide);
+        return king != sq && Math.abs((king & 7) - file) <= 1 && Math.abs((king >>> 3) - rank) <= 1;
     }
-    private static int getKingAttacker(Position pos, int sq, int file, int rank, Side side) {
-        var b     = pos.state.board;
-        var king  = Piece.KING.ordinal() | (side.ordinal()<<3);
-
-        if(file > 0) {
-            if(b[sq - 1] == king) return sq - 1;	// left
-
-            if(rank > 0) {
-                if(b[sq - 9] == king) return sq - 9;	// down left
-            }
-            if(rank < 7) {
-                if(b[sq + 7] == king) return sq + 7;	// up left
-            }
+    /**
+     * Static exchange evaluation of a capture (or a quiet move to a possibly attacked square).
+     * Both sides recapture on the target square with their least valuable piece and
+     * may stop capturing at any point.
+     *
+     * @return The expected material gain for the side making the move
+     */
+    public static int see(Position pos, int move) {
+        var b        = pos.state.board;
+        var from     = Move.from(move);
+        var to       = Move.to(move);
+        var occupied = pos.getOccupied() ^ BitBoard.squares[from];
+        var side     = b[from] & Position.SIDE_MASK;
+        var gain     = pos.seeGain;
+        int d        = 0;
+
+        gain[0] = Piece.material(b[to] & Position.PIECE_MASK);
+        if(Move.flagCode(move) == Move.FLAG_ENPASSANT) {
+            gain[0]   = Piece.material(Position.PAWN);
+            occupied ^= BitBoard.squares[side == 0 ? to - 8 : to + 8];
         }
-        if(file < 7) {
-            if(b[sq + 1] == king) return sq + 1;	// right
-            if(rank > 0) {
-                if(b[sq - 7] == king) return sq - 7; // down right
-            }
-            if(rank < 7) {
-                if(b[sq + 9] == king) return sq + 9; // up right
+        var attacker = b[from] & Position.PIECE_MASK;
+
+        while(true) {
+            d++;
+            side ^= Position.SIDE_MASK;
+            // Score if the piece on the target square is taken
+            gain[d] = Piece.material(attacker) - gain[d-1];
+
+            // Find the least valuable attacker. Sliders behind the previous
+            // attackers are found because they have been removed from occupied
+            var attackers = attackersOf(pos, to, occupied);
+            var attackerSquare = -1;
+            attacker = Piece.KING.ordinal() + 1;
+            while(attackers != 0) {
+                var sq = BitBoard.firstSquare(attackers);
+                var v  = b[sq];
+                if((v & Position.SIDE_MASK) == side && ATTACKER_RANK[v & Position.PIECE_MASK] < ATTACKER_RANK[attacker]) {
+                    attacker       = v & Position.PIECE_MASK;
+                    attackerSquare = sq;
+                }
+                attackers &= attackers - 1;
             }
+            if(attackerSquare == -1) break;
+
+            occupied ^= BitBoard.squares[attackerSquare];
         }
-        if(rank > 0) {
-            if(b[sq - 8] == king) return sq - 8;	// down
-        }
-        if(rank < 7) {
-            if(b[sq + 8] == king) return sq + 8;	// up
+        while(--d > 0) {
+            gain[d-1] = -Math.max(-gain[d-1], gain[d]);
         }
-        return NO_ATTACKER;
+        return gain[0];
     }
-    //=====================================================================================
-    private static int getRankAndFileAttacker(Position pos, int sq, int file, int rank, int squareValue) {
-        var b     = pos.state.board;
-        int t;
+    public static String toString(Position pos, boolean material) {
+        var buf = new StringBuilder();
+        for(var rank = 7; rank >= 0; rank--) {
+            for(var file = 0; file<8; file++) {
+                int e = enpriseForSquare(pos, file + (rank<<3));
 
-        // left
-        int p = sq;
-        for(int xx = file - 1; xx >= 0; xx--) {
-            t = b[--p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
-        }
-        // right
-        p = sq;
-        for(int xx = file + 1; xx <= 7; xx++ ) {
-            t = b[++p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
-        }
-        // up
-        p = sq;
-        for(int yy = rank + 1; yy <= 7; yy++) {
-            p += 8;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
-        }
+                if(material) e &= 0xffff; else e >>= 16;
+                short score = (short)e;
 
-        // down
-        p = sq;
-        for(int yy = rank - 1; yy >= 0; yy--) {
-            p -= 8;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
+                if(score>=0) buf.append(" "+score+" ");
+                else buf.append(""+score+" ");
             }
+            buf.append("\n");
         }
-        return NO_ATTACKER;
+        return buf.toString();
     }
-    private static int getDiagonalAttacker(Position pos, int sq, int file, int rank, int squareValue) {
-        var b = pos.state.board;
-        int t;
-
-        // up left
-        int p = sq;
-        for(int xx = file - 1, yy = rank + 1; xx >= 0 && yy <= 7; xx--, yy++) {
-            p += 7;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
-        }
-        // up right
-        p = sq;
-        for(int xx = file + 1, yy = rank + 1; xx <= 7 && yy <= 7; xx++, yy++) {
-            p += 9;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
+    //===============================================================================
+    /**
+     * @return All pieces of either side in occupied that attack sq (BitBoard layout)
+     */
+    static long attackersOf(Position pos, int sq, long occupied) {
+        var b        = pos.state.board;
+        var pawn     = Piece.PAWN.ordinal();
+        var knight   = Piece.KNIGHT.ordinal();
+        var king     = Piece.KING.ordinal();
+        long attackers = 0;
+
+        var squares = (BitBoard.blackPawnAttacks[sq] | BitBoard.whitePawnAttacks[sq] |
+                       BitBoard.knightMoves[sq] | BitBoard.kingMoves[sq]) & occupied;
+        while(squares != 0) {
+            var bit = squares & -squares;
+            var p   = BitBoard.firstSquare(bit);
+            var v   = b[p];
+            var t   = v & Position.PIECE_MASK;
+            if(t == knight) {
+                if((BitBoard.knightMoves[sq] & bit) != 0) attackers |= bit;
+            } else if(t == king) {
+                if((BitBoard.kingMoves[sq] & bit) != 0) attackers |= bit;
+            } else if(t == pawn) {
+                // A white pawn attacks sq from the squares a black pawn on sq would attack
+                var from = (v & Position.SIDE_MASK) == 0 ? BitBoard.blackPawnAttacks[sq]
+                                                         : BitBoard.whitePawnAttacks[sq];
+                if((from & bit) != 0) attackers |= bit;
             }
+            squares ^= bit;
         }
-        // down left
-        p = sq;
-        for(int xx = file - 1, yy = rank - 1; xx >= 0 && yy >= 0; xx--, yy--) {
-            p -= 9;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
+
+        var diagonal = BitBoard.bishopAttacks(sq, occupied) & occupied;
+        while(diagonal != 0) {
+            var bit = diagonal & -diagonal;
+            var t   = b[BitBoard.firstSquare(bit)] & Position.PIECE_MASK;
+            if(t == Piece.BISHOP.ordinal() || t == Piece.QUEEN.ordinal()) attackers |= bit;
+            diagonal ^= bit;
         }
-        // down right
-        p = sq;
-        for(int xx = file + 1, yy = rank - 1; xx <= 7 && yy >= 0; xx++, yy--) {
-            p -= 7;
-            t = b[p];
-            if(t != EMPTY) {
-                if(t == squareValue) return p;
-                break;
-            }
+        var straight = BitBoard.rookAttacks(sq, occupied) & occupied;
+        while(straight != 0) {
+            var bit = straight & -straight;
+            var t   = b[BitBoard.firstSquare(bit)] & Position.PIECE_MASK;
+            if(t == Piece.ROOK.ordinal() || t == Piece.QUEEN.ordinal()) attackers |= bit;
+            straight ^= bit;
         }
-        return NO_ATTACKER;
+        return attackers;
     }
-
     /**
-     * Do a quick check to see whether the king has become exposed to attack
-     * after an enprise move of a piece away from sq.
-     * We only need to check for sliding attacks.
+     * @param occupied The squares after side's piece has moved to target. BitBoard layout
+     * @return true if the king of side is attacked by an enemy slider other than one on target
      */
-    private static int checkKing(Position pos, Side side, final int sq) {
-        if(sq==-1) return sq;
-
-        var ksq   = pos.getKingSquare(side);
-        var kFile = ksq&7;
-        var kRank = ksq>>>3;
-
-        var sqFile = sq&7;
-        var sqRank = sq>>>3;
-        var diff   = sq-ksq;
-        var enemy  = side.opposite();
-
-        if(kRank == sqRank) { // If king is on the same rank
-            if(ksq<sq) {
-                // Check right of the king
-                for(int i=ksq+1; (i&7)!=0; i++) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isRookOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            } else {
-                // Check left of the king
-                for(int i=ksq-1; (i&7)!=7; i--) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isRookOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            }
-        } else if(kFile == sqFile) { // If king is on same file
-            if(ksq<sq) {
-                // Check down
-                for(int i=ksq-8; i>=0; i-=8) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isRookOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            } else {
-                // Check up
-                for(int i=ksq+8; i<64; i+=8) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isRookOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            }
-        } else if((diff%7)==0) { // If king is on \ diagonal
-            if(ksq<sq) {
-                // Check down-right
-                for(int i=ksq-7; i>=0 && (i&7)!=0; i-=7) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isBishopOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            } else {
-                // Check up-left
-                for(int i=ksq+7; i<64 && (i&7)!=7; i+=7) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isBishopOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            }
-        } else if((diff%9)==0) {  // If king is on / diagonal
-            if(ksq<sq) {
-                // Check up-right
-                for(int i=ksq+9; i<64 && (i&7)!=0; i+=9) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isBishopOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            } else {
-                // Check down-left
-                for(int i=ksq-9; i>=0 && (i&7)!=7; i-=9) {
-                    if(i==sq) continue; // this is the square that will be empty
-                    if(pos.isOccupied(i)) {
-                        if(pos.pieceAt(i).isBishopOrQueen() && pos.sideAt(i)==enemy) return NO_ATTACKER;
-                        break;
-                    }
-                }
-            }
-        }
-        return sq;
+    private static boolean exposesKing(Position pos, int side, long occupied, long target) {
+        var p       = pos.state.pieces;
+        var e       = (side ^ 1) << 3;
+        var king    = pos.getKingSquare(side);
+        var enemy   = occupied & ~target;
+        return (BitBoard.rookAttacks(king, occupied) & enemy & mirror(p[Position.ROOK | e] | p[Position.QUEEN | e])) != 0 ||
+               (BitBoard.bishopAttacks(king, occupied) & enemy & mirror(p[Position.BISHOP | e] | p[Position.QUEEN | e])) != 0;
+    }
+    /** Mirroring the files converts between the natural layout and the BitBoard layout */
+    private static long mirror(long bits) {
+        return Long.reverse(Long.reverseBytes(bits));
     }
 }
@@ -1,8 +1,10 @@
 package chess.engine.byteboard;
 
+import chess.engine.Generator;
 import chess.engine.Move;
-import chess.engine.Piece;
-import chess.engine.Side;
+import chess.engine.bitboard.BitBoard;
+
+import java.util.Arrays;
 
 /**
  *  Squares:
@@ -19,38 +21,151 @@ import chess.engine.Side;
  *       0  1  2  3  4  5  6  7
  *               file
  */
-final public class MoveGenerator {
-    private static final int EMPTY = 0;
+final public class MoveGenerator implements Generator<Position> {
+    private static final int EMPTY  = 0;
+    private static final int PAWN   = Position.PAWN;
+    private static final int BISHOP = Position.BISHOP;
+    private static final int KNIGHT = Position.KNIGHT;
+    private static final int ROOK   = Position.ROOK;
+    private static final int QUEEN  = Position.QUEEN;
+    private static final int KING   = Position.KING;
+
+    // Ray directions from the king. Orthogonals first, then diagonals
+    private static final int[] DIR_FILE = { 1, -1, 0,  0, 1, -1,  1, -1};
+    private static final int[] DIR_RANK = { 0,  0, 1, -1, 1,  1, -1, -1};
 
-    public int[] moves = new int[128];  // adjust this if necessary
+    public int[] moves = new int[256];  // more than the maximum legal moves in a position (218)
     public int numMoves;
 
-    /** Return the move if valid otherwise return -1. */
+    // Legality info for the side to move. Bit n of each mask is square n
+    private int numCheckers;
+    private long checkMask;     // squares a non-king move must land on (-1 if not in check)
+    private long pinned;        // pieces pinned to their king
+    private long[] pinRays = new long[64];
+    private long squareMask;    // allowed target squares for the piece currently being generated
+
+    // Which kinds of move to generate
+    private boolean tactical    = true;   // captures, en passant and promotions
+    private boolean quiet       = true;   // everything else
+    private boolean quietChecks = false;  // quiet moves that give check (when quiet is false)
+
+    // Quiet check info for the side to move. BitBoard layout
+    private long[] checkSquares = new long[7];  // squares each piece type would give check from
+    private long discoverers;                   // pieces blocking a check by one of our sliders
+    private long[] discoverRays = new long[64]; // squares a discoverer must leave to give check
+
+    public int[] moves() {
+        return moves;
+    }
+    public int numMoves() {
+        return numMoves;
+    }
+    /**
+     * Return the move if valid otherwise return -1.
+     * A pawn move to the last rank is returned as a queen promotion.
+     */
     public int getMove(Position pos, int from, int to) {
-        numMoves = 0;
-        generateForSquare(pos, from);
+        var piece   = pos.pieceCodeAt(from);
+        var capture = pos.pieceCodeAt(to);
+        var flags   = Move.FLAG_NONE;
 
-        for(int i=0; i<numMoves; i++) {
-            var move = moves[i];
-            if(Move.from(move)==from && Move.to(move)==to) return move;
+        if(piece == KING && Math.abs(to - from) == 2) {
+            flags = to > from ? Move.FLAG_OO : Move.FLAG_OOO;
+        } else if(piece == PAWN) {
+            if(to == pos.availableEnPassantSquare() && capture == EMPTY && (to & 7) != (from & 7)) {
+                flags   = Move.FLAG_ENPASSANT;
+                capture = PAWN;
+            } else if(to >= 56 || to < 8) {
+                flags = Move.FLAG_PROMOTE_QUEEN;
+            }
         }
-        return -1;
+        var move = Move.makeMove(piece, from, to, capture, flags);
+        return pos.isLegal(move) ? move : -1;
     }
+    /**
+     * @param quiescence If true only captures, en passant and promotions are generated.
+     *                   Note that this includes when in check so not all evasions are generated
+     */
     public void generateForPosition(Position pos, boolean quiescence) {
-        numMoves = 0;
+        generate(pos, true, !quiescence, false);
+    }
+    /** Generate captures, en passant and promotions only */
+    public void generateCaptures(Position pos) {
+        generate(pos, true, false, false);
+    }
+    /**
+     * Generate captures, en passant and promotions plus, if quietChecks is set,
+     * quiet moves that give check. Castling is never generated as a check
+     */
+    public void generateCaptures(Position pos, boolean quietChecks) {
+        generate(pos, true, false, quietChecks);
+    }
+    /** Generate all moves that are not captures, en passant or promotions */
+    public void generateQuiets(Position pos) {
+        generate(pos, false, true, false);
+    }
+    /**
+     * Count the legal moves from the check and pin masks without generating them.
+     * moves[] is left untouched.
+     * @return The same as numMoves after generateForPosition(pos, false)
+     */
+    public int countLegalMoves(Position pos) {
+        return countMobility(pos, null);
+    }
+    /**
+     * Count the legal moves of each piece type of the side to move.
+     * @param counts Written indexed by piece code if not null
+     * @return The total number of legal moves
+     */
+    public int countMobility(Position pos, int[] counts) {
+        var side    = pos.sideToMoveCode();
+        var pieces  = pos.state.pieces;
+        var own     = pieces[side<<3];
+        var enemy   = pieces[(side<<3) ^ Position.SIDE_MASK];
+        var b       = pos.state.board;
 
-        Side side = pos.sideToMove();
+        calculateLegality(pos);
+        if(counts != null) Arrays.fill(counts, 0);
 
-        for(int i=0; i<64; i++) {
-            if(pos.isOccupied(i) && pos.sideAt(i)==side) {
-                generateForSquare(pos, i);
-            }
-        }
+        // The attack tables are in BitBoard layout. A popcount doesn't care about the
+        // layout so flip the masks once rather than every attack set
+        var targets = toBitBoard(~own);
+        var check   = toBitBoard(checkMask);
 
-        // todo - reorder captures/checks to the front and use quiescence flag
+        var total = countKingMoves(pos, side, targets);
+        if(counts != null) counts[KING] = total;
+        if(numCheckers > 1) return total;
 
-        // better idea - keep 2 arrays of moves: moves and captures
+        // Unpinned pawns as a set, pinned pawns one at a time
+        var pawns = pieces[PAWN | (side<<3)];
+        var n     = countPawnMoves(pawns & ~pinned, side, enemy, ~(own | enemy), checkMask);
+        for(long bits = pawns & pinned; bits != 0; bits &= bits - 1) {
+            var sq = Long.numberOfTrailingZeros(bits);
+            n += countPawnMoves(1L << sq, side, enemy, ~(own | enemy), checkMask & pinRays[sq]);
+        }
+        n += countEnPassantMoves(pos, side, pawns);
+        if(counts != null) counts[PAWN] = n;
+        total += n;
+
+        var occupied = pos.getOccupied();
+        for(long bits = own & ~pawns & ~pieces[KING | (side<<3)]; bits != 0; bits &= bits - 1) {
+            var sq    = Long.numberOfTrailingZeros(bits);
+            var piece = b[sq] & Position.PIECE_MASK;
+            var mask  = targets & check;
+            if((pinned & (1L << sq)) != 0) mask &= toBitBoard(pinRays[sq]);
 
+            long attacks;
+            switch(piece) {
+                case KNIGHT: attacks = BitBoard.knightMoves[sq]; break;
+                case BISHOP: attacks = BitBoard.bishopAttacks(sq, occupied); break;
+                case ROOK:   attacks = BitBoard.rookAttacks(sq, occupied); break;
+                default:     attacks = BitBoard.queenAttacks(sq, occupied); break;
+            }
+            n = Long.bitCount(attacks & mask);
+            if(counts != null) counts[piece] += n;
+            total += n;
+        }
+        return total;
     }
     @Override public String toString() {
         var buf = new StringBuilder();
@@ -61,52 +176,267 @@ final public class MoveGenerator {
         return buf.toString();
     }
     //==================================================================================
+    private void generate(Position pos, boolean tactical, boolean quiet, boolean quietChecks) {
+        numMoves         = 0;
+        this.tactical    = tactical;
+        this.quiet       = quiet;
+        this.quietChecks = quietChecks && !quiet;
+
+        var side = pos.sideToMoveCode();
+
+        calculateLegality(pos);
+        if(this.quietChecks) calculateChecks(pos);
+
+        if(numCheckers > 1) {
+            // Double check. Only the king can move
+            generateForSquare(pos, pos.getKingSquare(side));
+            return;
+        }
+
+        for(long bits = pos.state.pieces[side<<3]; bits != 0; bits &= bits - 1) {
+            generateForSquare(pos, Long.numberOfTrailingZeros(bits));
+        }
+    }
     private void generateForSquare(Position pos, int sq) {
-        Piece piece = pos.pieceAt(sq);
+        int piece = pos.pieceCodeAt(sq);
+
+        if(piece==EMPTY) return;
 
-        if(piece==Piece.NONE) return;
+        int file  = sq & 7;
+        int rank  = sq>>>3;
+        int side  = pos.sideCodeAt(sq);
 
-        int file      = sq & 7;
-        int rank      = sq>>>3;
-        Side side     = pos.sideAt(sq);
-        int moveIndex = numMoves;
+        // Moves are only generated if they leave the king safe so
+        // restrict the targets to the check and pin rays
+        squareMask = checkMask;
+        if((pinned & (1L << sq)) != 0) {
+            squareMask &= pinRays[sq];
+        }
 
         switch(piece) {
-            case PAWN:  generatePawnMoves(pos, sq, file, rank, side); break;
-            case BISHOP: generateBishopMoves(pos, sq, file, rank, side); break;
+            case PAWN: generatePawnMoves(pos, sq, file, rank, side); break;
+            case BISHOP: generateBishopMoves(pos, sq, side); break;
             case KNIGHT: generateKnightMoves(pos, sq, file, rank, side); break;
-            case ROOK: generateRookMoves(pos, sq, file, rank, side); break;
+            case ROOK: generateRookMoves(pos, sq, side); break;
             case QUEEN:
-                generateRookMoves(pos, sq, file, rank, side);
-                generateBishopMoves(pos, sq, file, rank, side);
+                generateRookMoves(pos, sq, side);
+                generateBishopMoves(pos, sq, side);
                 break;
+            case KING:
+                // King moves are checked individually
+                squareMask = -1L;
+                generateKingMoves(pos, sq, file, rank, side);
+                break;
+        }
+    }
+    /** Mirroring the files converts between the natural and BitBoard layouts */
+    private static long toBitBoard(long natural) {
+        return Long.reverse(Long.reverseBytes(natural));
+    }
+    /**
+     * @param targets Squares not holding our pieces. BitBoard layout
+     */
+    private int countKingMoves(Position pos, int side, long targets) {
+        var sq    = pos.getKingSquare(side);
+        var enemy = side ^ 1;
+        var count = 0;
+
+        for(long bits = BitBoard.kingMoves[sq] & targets; bits != 0; bits &= bits - 1) {
+            var to = BitBoard.firstSquare(bits);
+            // Lifting the king can only open a line to a checking slider
+            var safe = numCheckers == 0 ? !Enprise.isSquareAttacked(pos, to, enemy) : isSafeKingSquare(pos, sq, to, enemy);
+            if(safe) count++;
+        }
+        if(numCheckers > 0) return count;
+
+        var b = pos.state.board;
+        if(pos.canCastleKingSide(side) && b[sq + 1] == EMPTY && b[sq + 2] == EMPTY &&
+           !pos.isSquareAttacked(sq + 1, enemy) && !pos.isSquareAttacked(sq + 2, enemy)) count++;
+        if(pos.canCastleQueenSide(side) && b[sq - 1] == EMPTY && b[sq - 2] == EMPTY && b[sq - 3] == EMPTY &&
+           !pos.isSquareAttacked(sq - 1, enemy) && !pos.isSquareAttacked(sq - 2, enemy)) count++;
+        return count;
+    }
+    /**
+     * Pushes and captures of a set of pawns that share the same legal target mask.
+     * Promotions count 4 times. Natural layout
+     */
+    private static int countPawnMoves(long pawns, int side, long enemy, long empty, long mask) {
+        long single, dbl, left, right, lastRank;
+        if(side == Position.WHITE) {
+            single   = (pawns << 8) & empty;
+            dbl      = ((single & 0x0000_0000_00ff_0000L) << 8) & empty;
+            left     = ((pawns & ~0x0101_0101_0101_0101L) << 7) & enemy;
+            right    = ((pawns & ~0x8080_8080_8080_8080L) << 9) & enemy;
+            lastRank = 0xff00_0000_0000_0000L;
+        } else {
+            single   = (pawns >>> 8) & empty;
+            dbl      = ((single & 0x0000_ff00_0000_0000L) >>> 8) & empty;
+            left     = ((pawns & ~0x0101_0101_0101_0101L) >>> 9) & enemy;
+            right    = ((pawns & ~0x8080_8080_8080_8080L) >>> 7) & enemy;
+            lastRank = 0x0000_0000_0000_00ffL;
+        }
+        single &= mask;
+        left   &= mask;
+        right  &= mask;
+        return Long.bitCount(dbl & mask) +
+               Long.bitCount(single & ~lastRank) + Long.bitCount(left & ~lastRank) + Long.bitCount(right & ~lastRank) +
+               4 * (Long.bitCount(single & lastRank) + Long.bitCount(left & lastRank) + Long.bitCount(right & lastRank));
+    }
+    private int countEnPassantMoves(Position pos, int side, long pawns) {
+        var ep = pos.availableEnPassantSquare();
+        if(ep == 0) return 0;
+
+        // Our pawns attack ep from the squares an enemy pawn on ep would attack
+        var from  = toBitBoard(side == Position.WHITE ? BitBoard.blackPawnAttacks[ep] : BitBoard.whitePawnAttacks[ep]) & pawns;
+        var count = 0;
+        for(; from != 0; from &= from - 1) {
+            if(isLegalEnPassant(pos, Long.numberOfTrailingZeros(from), ep)) count++;
         }
+        return count;
+    }
+    /**
+     * Find the pieces checking the king of the side to move and the pieces
+     * pinned to it. This is done once per position so that the generators
+     * can emit legal moves directly.
+     */
+    private void calculateLegality(Position pos) {
+        var b      = pos.state.board;
+        var side   = pos.sideToMoveCode();
+        var kingSq = pos.getKingSquare(side);
+        var kFile  = kingSq & 7;
+        var kRank  = kingSq >>> 3;
+        var own    = side << 3;
+        var enemy  = own ^ Position.SIDE_MASK;
+        long checks = 0;
+
+        numCheckers = 0;
+        pinned      = 0;
+
+        // Sliding checks and pins
+        for(int d = 0; d < 8; d++) {
+            var df     = DIR_FILE[d];
+            var dr     = DIR_RANK[d];
+            var slider = d < 4 ? ROOK : BISHOP;
+            var ownSq  = -1;
+            long ray   = 0;
+
+            for(int f = kFile + df, r = kRank + dr; f >= 0 && f <= 7 && r >= 0 && r <= 7; f += df, r += dr) {
+                var sq = f + (r << 3);
+                var v  = b[sq];
+                ray |= 1L << sq;
 
-        // Remove any moves where the king is attacked after the move is made
-        int dest    = moveIndex;
-        Side enemy  = side.opposite();
-        int kingPos = pos.getKingSquare(side);
+                if(v == EMPTY) continue;
 
-        for(int i = moveIndex; i< numMoves; i++) {
-            int move = moves[i];
-            pos.applyMove(move);
-            if(!pos.isSquareAttacked(kingPos, enemy)) {
-                moves[dest++] = move;
+                if((v & Position.SIDE_MASK) == own) {
+                    if(ownSq != -1) break;
+                    ownSq = sq;
+                    continue;
+                }
+                var p = v & Position.PIECE_MASK;
+                if(p == slider || p == QUEEN) {
+                    if(ownSq == -1) {
+                        numCheckers++;
+                        checks |= ray;
+                    } else {
+                        pinned |= 1L << ownSq;
+                        pinRays[ownSq] = ray;
+                    }
+                }
+                break;
             }
-            pos.undoMove();
         }
-        numMoves = dest;
 
-        // Do king moves. These are guaranteed to be safe
-        if(piece==Piece.KING) {
-            generateKingMoves(pos, sq, file, rank, side);
+        // Knight checks
+        var knight = KNIGHT | enemy;
+        if(kRank < 6) {
+            if(kFile > 0 && b[kingSq + 15] == knight) { numCheckers++; checks |= 1L << (kingSq + 15); }
+            if(kFile < 7 && b[kingSq + 17] == knight) { numCheckers++; checks |= 1L << (kingSq + 17); }
+        }
+        if(kRank > 1) {
+            if(kFile > 0 && b[kingSq - 17] == knight) { numCheckers++; checks |= 1L << (kingSq - 17); }
+            if(kFile < 7 && b[kingSq - 15] == knight) { numCheckers++; checks |= 1L << (kingSq - 15); }
         }
+        if(kFile < 6) {
+            if(kRank < 7 && b[kingSq + 10] == knight) { numCheckers++; checks |= 1L << (kingSq + 10); }
+            if(kRank > 0 && b[kingSq - 6]  == knight) { numCheckers++; checks |= 1L << (kingSq - 6); }
+        }
+        if(kFile > 1) {
+            if(kRank < 7 && b[kingSq + 6]  == knight) { numCheckers++; checks |= 1L << (kingSq + 6); }
+            if(kRank > 0 && b[kingSq - 10] == knight) { numCheckers++; checks |= 1L << (kingSq - 10); }
+        }
+
+        // Pawn checks
+        var pawn = PAWN | enemy;
+        if(side==Position.WHITE) {
+            if(kRank < 6) {
+                if(kFile > 0 && b[kingSq + 7] == pawn) { numCheckers++; checks |= 1L << (kingSq + 7); }
+                if(kFile < 7 && b[kingSq + 9] == pawn) { numCheckers++; checks |= 1L << (kingSq + 9); }
+            }
+        } else {
+            if(kRank > 1) {
+                if(kFile > 0 && b[kingSq - 9] == pawn) { numCheckers++; checks |= 1L << (kingSq - 9); }
+                if(kFile < 7 && b[kingSq - 7] == pawn) { numCheckers++; checks |= 1L << (kingSq - 7); }
+            }
+        }
+
+        // Not in check: anywhere. Single check: capture or block. Double check: king moves only
+        checkMask = numCheckers == 0 ? -1L :
+                    numCheckers == 1 ? checks : 0;
+    }
+    /**
+     * Find the squares from which each piece type would check the enemy king
+     * and our pieces that would give a discovered check by moving off the line.
+     */
+    private void calculateChecks(Position pos) {
+        var b        = pos.state.board;
+        var side     = pos.sideToMoveCode();
+        var own      = side << 3;
+        var king     = pos.getKingSquare(side ^ 1);
+        var occupied = pos.getOccupied();
+
+        // Our pawns attack the king from the squares an enemy pawn on the king square would attack
+        checkSquares[PAWN]   = side==Position.WHITE ? BitBoard.blackPawnAttacks[king] : BitBoard.whitePawnAttacks[king];
+        checkSquares[KNIGHT] = BitBoard.knightMoves[king];
+        checkSquares[BISHOP] = BitBoard.bishopAttacks(king, occupied);
+        checkSquares[ROOK]   = BitBoard.rookAttacks(king, occupied);
+        checkSquares[QUEEN]  = checkSquares[BISHOP] | checkSquares[ROOK];
+
+        // Our sliders on an empty board line to the king with a single piece of ours in between
+        discoverers = 0;
+        var lines = BitBoard.queenAttacks(king, 0) & occupied;
+        while(lines != 0) {
+            var sq    = BitBoard.firstSquare(lines);
+            var v     = b[sq];
+            var piece = v & Position.PIECE_MASK;
+            lines &= lines - 1;
+
+            if((v & Position.SIDE_MASK) != own) continue;
+            var diagonal = (BitBoard.bishopMoves[king] & BitBoard.squares[sq]) != 0;
+            if(piece != QUEEN && piece != (diagonal ? BISHOP : ROOK)) continue;
+
+            var between = BitBoard.between[king][sq];
+            var block   = between & occupied;
+            if(block != 0 && (block & (block - 1)) == 0) {
+                var blockSq = BitBoard.firstSquare(block);
+                if((b[blockSq] & Position.SIDE_MASK) == own) {
+                    discoverers |= block;
+                    discoverRays[blockSq] = between;
+                }
+            }
+        }
+    }
+    private boolean givesCheck(Position pos, int from, int to) {
+        var piece = pos.state.board[from] & Position.PIECE_MASK;
+        if((checkSquares[piece] & BitBoard.squares[to]) != 0) return true;
+
+        return (discoverers & BitBoard.squares[from]) != 0 &&
+               (discoverRays[from] & BitBoard.squares[to]) == 0;
     }
-    private void generatePawnMoves(Position pos, int sq, int file, int rank, Side side) {
-        var enemy      = side.opposite();
+    private void generatePawnMoves(Position pos, int sq, int file, int rank, int side) {
+        var enemy      = side ^ 1;
         var b          = pos.state.board;
 
-        if(side==Side.WHITE) {
+        if(side==Position.WHITE) {
             // moves
             if(b[sq+8] == EMPTY) {
                 if(rank == 1) {
@@ -115,34 +445,34 @@ final public class MoveGenerator {
                         addMove(pos, sq, sq+16);
                     }
                 } else if(rank==6) {
-                    addMove(pos, sq, sq+8, Move.Flags.PROMOTE_QUEEN);
-                    addMove(pos, sq, sq+8, Move.Flags.PROMOTE_ROOK);
-                    addMove(pos, sq, sq+8, Move.Flags.PROMOTE_BISHOP);
-                    addMove(pos, sq, sq+8, Move.Flags.PROMOTE_KNIGHT);
+                    addMove(pos, sq, sq+8, Move.FLAG_PROMOTE_QUEEN);
+                    addMove(pos, sq, sq+8, Move.FLAG_PROMOTE_ROOK);
+                    addMove(pos, sq, sq+8, Move.FLAG_PROMOTE_BISHOP);
+                    addMove(pos, sq, sq+8, Move.FLAG_PROMOTE_KNIGHT);
                 } else {
                     addMove(pos, sq, sq+8);
                 }
             }
             // attacks
             if(file > 0) {
-                if(b[sq+7] != EMPTY && pos.sideAt(sq + 7) == enemy) {
+                if(b[sq+7] != EMPTY && pos.sideCodeAt(sq + 7) == enemy) {
                     if(rank == 6) {
-                        addMove(pos, sq, sq + 7, Move.Flags.PROMOTE_QUEEN);
-                        addMove(pos, sq, sq + 7, Move.Flags.PROMOTE_ROOK);
-                        addMove(pos, sq, sq + 7, Move.Flags.PROMOTE_BISHOP);
-                        addMove(pos, sq, sq + 7, Move.Flags.PROMOTE_KNIGHT);
+                        addMove(pos, sq, sq + 7, Move.FLAG_PROMOTE_QUEEN);
+                        addMove(pos, sq, sq + 7, Move.FLAG_PROMOTE_ROOK);
+                        addMove(pos, sq, sq + 7, Move.FLAG_PROMOTE_BISHOP);
+                        addMove(pos, sq, sq + 7, Move.FLAG_PROMOTE_KNIGHT);
                     } else {
                         addMove(pos, sq, sq + 7);
                     }
                 }
             }
             if(file < 7) {
-                if(b[sq+9] != EMPTY && pos.sideAt(sq + 9) == enemy) {
+                if(b[sq+9] != EMPTY && pos.sideCodeAt(sq + 9) == enemy) {
                     if(rank==6) {
-                        addMove(pos, sq, sq + 9, Move.Flags.PROMOTE_QUEEN);
-                        addMove(pos, sq, sq + 9, Move.Flags.PROMOTE_ROOK);
-                        addMove(pos, sq, sq + 9, Move.Flags.PROMOTE_BISHOP);
-                        addMove(pos, sq, sq + 9, Move.Flags.PROMOTE_KNIGHT);
+                        addMove(pos, sq, sq + 9, Move.FLAG_PROMOTE_QUEEN);
+                        addMove(pos, sq, sq + 9, Move.FLAG_PROMOTE_ROOK);
+                        addMove(pos, sq, sq + 9, Move.FLAG_PROMOTE_BISHOP);
+                        addMove(pos, sq, sq + 9, Move.FLAG_PROMOTE_KNIGHT);
                     } else {
                         addMove(pos, sq, sq + 9);
                     }
@@ -151,9 +481,9 @@ final public class MoveGenerator {
             // en passant
             if(pos.availableEnPassantSquare() != 0 && rank == 4) {
                 if(file>0 && sq+7 == pos.availableEnPassantSquare()) {
-                    addMove(pos, sq, sq+7, Move.Flags.ENPASSANT);
+                    addEnPassantMove(pos, sq, sq+7);
                 } else if(file<7 && sq+9 == pos.availableEnPassantSquare()) {
-                    addMove(pos, sq, sq+9, Move.Flags.ENPASSANT);
+                    addEnPassantMove(pos, sq, sq+9);
                 }
             }
         } else { // down the board (BLACK)
@@ -165,34 +495,34 @@ final public class MoveGenerator {
                         addMove(pos, sq, sq-16);
                     }
                 } else if(rank==1) {
-                    addMove(pos, sq, sq - 8, Move.Flags.PROMOTE_QUEEN);
-                    addMove(pos, sq, sq - 8, Move.Flags.PROMOTE_ROOK);
-                    addMove(pos, sq, sq - 8, Move.Flags.PROMOTE_BISHOP);
-                    addMove(pos, sq, sq - 8, Move.Flags.PROMOTE_KNIGHT);
+                    addMove(pos, sq, sq - 8, Move.FLAG_PROMOTE_QUEEN);
+                    addMove(pos, sq, sq - 8, Move.FLAG_PROMOTE_ROOK);
+                    addMove(pos, sq, sq - 8, Move.FLAG_PROMOTE_BISHOP);
+                    addMove(pos, sq, sq - 8, Move.FLAG_PROMOTE_KNIGHT);
                 } else {
                     addMove(pos, sq, sq - 8);
                 }
             }
             // attacks
             if(file > 0) {
-                if(b[sq-9] != EMPTY && pos.sideAt(sq-9)==enemy) {
+                if(b[sq-9] != EMPTY && pos.sideCodeAt(sq-9)==enemy) {
                     if(rank==1) {
-                        addMove(pos, sq, sq - 9, Move.Flags.PROMOTE_QUEEN);
-                        addMove(pos, sq, sq - 9, Move.Flags.PROMOTE_ROOK);
-                        addMove(pos, sq, sq - 9, Move.Flags.PROMOTE_BISHOP);
-                        addMove(pos, sq, sq - 9, Move.Flags.PROMOTE_KNIGHT);
+                        addMove(pos, sq, sq - 9, Move.FLAG_PROMOTE_QUEEN);
+                        addMove(pos, sq, sq - 9, Move.FLAG_PROMOTE_ROOK);
+                        addMove(pos, sq, sq - 9, Move.FLAG_PROMOTE_BISHOP);
+                        addMove(pos, sq, sq - 9, Move.FLAG_PROMOTE_KNIGHT);
                     } else {
                         addMove(pos, sq, sq - 9);
                     }
                 }
             }
             if(file < 7) {
-                if(b[sq-7] != EMPTY && pos.sideAt(sq-7)==enemy) {
+                if(b[sq-7] != EMPTY && pos.sideCodeAt(sq-7)==enemy) {
                     if(rank==1) {
-                        addMove(pos, sq, sq - 7, Move.Flags.PROMOTE_QUEEN);
-                        addMove(pos, sq, sq - 7, Move.Flags.PROMOTE_ROOK);
-                        addMove(pos, sq, sq - 7, Move.Flags.PROMOTE_BISHOP);
-                        addMove(pos, sq, sq - 7, Move.Flags.PROMOTE_KNIGHT);
+                        addMove(pos, sq, sq - 7, Move.FLAG_PROMOTE_QUEEN);
+                        addMove(pos, sq, sq - 7, Move.FLAG_PROMOTE_ROOK);
+                        addMove(pos, sq, sq - 7, Move.FLAG_PROMOTE_BISHOP);
+                        addMove(pos, sq, sq - 7, Move.FLAG_PROMOTE_KNIGHT);
                     } else {
                         addMove(pos, sq, sq - 7);
                     }
@@ -200,85 +530,19 @@ final public class MoveGenerator {
             }
             // en passant
             if(pos.availableEnPassantSquare() != 0 && rank == 3) {
-                if(file>0 && sq - 7 == pos.availableEnPassantSquare()) {
-                    addMove(pos, sq, sq - 7, Move.Flags.ENPASSANT);
-                } else if(file<7 && sq - 9 == pos.availableEnPassantSquare()) {
-                    addMove(pos, sq, sq - 9, Move.Flags.ENPASSANT);
+                if(file>0 && sq - 9 == pos.availableEnPassantSquare()) {
+                    addEnPassantMove(pos, sq, sq - 9);
+                } else if(file<7 && sq - 7 == pos.availableEnPassantSquare()) {
+                    addEnPassantMove(pos, sq, sq - 7);
                 }
             }
         }
     }
-    private void generateBishopMoves(Position pos, int sq, int file, int rank, Side side) {
-        var from = sq;
-        var tx = file - 1;
-        var ty = rank + 1;
-        var enemy = side.opposite();
-        var b     = pos.state.board;
-
-        // up-left
-        while(tx >= 0 && ty <= 7) {
-            sq += 7;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                tx--;
-                ty++;
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // up-right
-        sq = from;
-        tx = file + 1;
-        ty = rank + 1;
-        while(tx <= 7 && ty <= 7) {
-            sq += 9;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                tx++;
-                ty++;
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // down-right
-        sq = from;
-        tx = file + 1;
-        ty = rank - 1;
-        while(tx <= 7 && ty >= 0) {
-            sq -= 7;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                tx++;
-                ty--;
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // down-left
-        sq = from;
-        tx = file - 1;
-        ty = rank - 1;
-        while(tx >= 0 && ty >= 0) {
-            sq -= 9;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                tx--;
-                ty--;
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-    }
-    private void generateKnightMoves(Position pos, int sq, int file, int rank, Side side) {
-        var enemy = side.opposite();
+    private void generateBishopMoves(Position pos, int sq, int side) {
+        addSlidingMoves(pos, sq, side, BitBoard.bishopAttacks(sq, pos.getOccupied()));
+    }
+    private void generateKnightMoves(Position pos, int sq, int file, int rank, int side) {
+        var enemy = side ^ 1;
         var b     = pos.state.board;
 
         if(rank < 6) {
@@ -286,7 +550,7 @@ final public class MoveGenerator {
             if(file > 0) {
                 if(b[sq + 15] == EMPTY) {
                    addMove(pos, sq, sq + 15);
-                } else if(pos.sideAt(sq+15) == enemy) {
+                } else if(pos.sideCodeAt(sq+15) == enemy) {
                     addMove(pos, sq, sq + 15);
                 }
             }
@@ -294,7 +558,7 @@ final public class MoveGenerator {
             if(file < 7) {
                 if(b[sq + 17] == EMPTY) {
                     addMove(pos, sq, sq + 17);
-                } else if(pos.sideAt(sq+17) == enemy) {
+                } else if(pos.sideCodeAt(sq+17) == enemy) {
                     addMove(pos, sq, sq + 17);
                 }
             }
@@ -304,7 +568,7 @@ final public class MoveGenerator {
             if(rank < 7) {
                 if(b[sq + 10] == EMPTY) {
                     addMove(pos, sq, sq + 10);
-                } else if(pos.sideAt(sq+10) == enemy) {
+                } else if(pos.sideCodeAt(sq+10) == enemy) {
                     addMove(pos, sq, sq + 10);
                 }
             }
@@ -312,7 +576,7 @@ final public class MoveGenerator {
             if(rank > 0) {
                 if(b[sq - 6] == EMPTY) {
                     addMove(pos, sq, sq - 6);
-                } else if(pos.sideAt(sq-6) == enemy) {
+                } else if(pos.sideCodeAt(sq-6) == enemy) {
                     addMove(pos, sq, sq - 6);
                 }
             }
@@ -322,7 +586,7 @@ final public class MoveGenerator {
             if(file < 7) {
                 if(b[sq - 15] == EMPTY) {
                     addMove(pos, sq, sq - 15);
-                } else if(pos.sideAt(sq-15) == enemy) {
+                } else if(pos.sideCodeAt(sq-15) == enemy) {
                     addMove(pos, sq, sq - 15);
                 }
             }
@@ -330,7 +594,7 @@ final public class MoveGenerator {
             if(file > 0) {
                 if(b[sq - 17] == EMPTY) {
                     addMove(pos, sq, sq - 17);
-                } else if(pos.sideAt(sq-17) == enemy) {
+                } else if(pos.sideCodeAt(sq-17) == enemy) {
                     addMove(pos, sq, sq - 17);
                 }
             }
@@ -340,7 +604,7 @@ final public class MoveGenerator {
             if(rank > 0) {
                 if(b[sq - 10] == EMPTY) {
                     addMove(pos, sq, sq - 10);
-                } else if(pos.sideAt(sq-10) == enemy) {
+                } else if(pos.sideCodeAt(sq-10) == enemy) {
                     addMove(pos, sq, sq - 10);
                 }
             }
@@ -348,165 +612,158 @@ final public class MoveGenerator {
             if(rank < 7) {
                 if(b[sq + 6] == EMPTY) {
                     addMove(pos, sq, sq + 6);
-                } else if(pos.sideAt(sq+6) == enemy) {
+                } else if(pos.sideCodeAt(sq+6) == enemy) {
                     addMove(pos, sq, sq + 6);
                 }
             }
         }
     }
-    private void generateRookMoves(Position pos, int sq, int file, int rank, Side side) {
-        var enemy = side.opposite();
-        var b     = pos.state.board;
-        var from  = sq;
-
-        // left
-        for(int i = file - 1; i >= 0; i--) {
-            sq--;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // right
-        sq = from;
-        for(int i = file + 1; i <= 7; i++) {
-            sq++;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // up
-        sq = from;
-        for(int i = rank + 1; i <= 7; i++) {
-            sq += 8;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-        // down
-        sq = from;
-        for(int i = rank - 1; i >= 0; i--) {
-            sq -= 8;
-            if(b[sq] == EMPTY) {
-                addMove(pos, from, sq);
-                continue;
-            } else if(pos.sideAt(sq) == enemy) {
-                addMove(pos, from, sq);
-            }
-            break;
-        }
-
-    }
-    /** Generate all king moves. Only non-attacked moves are generated. */
-    private void generateKingMoves(Position pos, int sq, int file, int rank, Side side) {
-        var enemy = side.opposite();
+    private void generateRookMoves(Position pos, int sq, int side) {
+        addSlidingMoves(pos, sq, side, BitBoard.rookAttacks(sq, pos.getOccupied()));
+    }
+    private void generateKingMoves(Position pos, int sq, int file, int rank, int side) {
+        var enemy = side ^ 1;
         var b     = pos.state.board;
 
         if(file > 0) {
             // left
-            if(b[sq - 1] == EMPTY || pos.sideAt(sq-1) == enemy) {
-                if(!pos.isSquareAttacked(sq - 1, enemy)) {
-                    addMove(pos, sq, sq - 1);
-                }
+            if(b[sq - 1] == EMPTY || pos.sideCodeAt(sq-1) == enemy) {
+                addKingMove(pos, sq, sq - 1, enemy);
             }
             // up left
             if(rank < 7) {
-                if(b[sq + 7] == EMPTY || pos.sideAt(sq+7) == enemy) {
-                    if(!pos.isSquareAttacked(sq + 7, enemy)) {
-                        addMove(pos, sq, sq + 7);
-                    }
+                if(b[sq + 7] == EMPTY || pos.sideCodeAt(sq+7) == enemy) {
+                    addKingMove(pos, sq, sq + 7, enemy);
                 }
             }
             // down left
             if(rank > 0) {
-                if(b[sq - 9] == EMPTY || pos.sideAt(sq-9) == enemy) {
-                    if(!pos.isSquareAttacked(sq - 9, enemy)) {
-                        addMove(pos, sq, sq - 9);
-                    }
+                if(b[sq - 9] == EMPTY || pos.sideCodeAt(sq-9) == enemy) {
+                    addKingMove(pos, sq, sq - 9, enemy);
                 }
             }
         }
         if(file < 7) {
             // right
-            if(b[sq + 1] == EMPTY || pos.sideAt(sq+1) == enemy) {
-                if(!pos.isSquareAttacked(sq + 1, enemy)) {
-                    addMove(pos, sq, sq + 1);
-                }
+            if(b[sq + 1] == EMPTY || pos.sideCodeAt(sq+1) == enemy) {
+                addKingMove(pos, sq, sq + 1, enemy);
             }
             // up right
             if(rank < 7) {
-                if(b[sq + 9] == EMPTY || pos.sideAt(sq+9) == enemy) {
-                    if(!pos.isSquareAttacked(sq + 9, enemy)) {
-                        addMove(pos, sq, sq + 9);
-                    }
+                if(b[sq + 9] == EMPTY || pos.sideCodeAt(sq+9) == enemy) {
+                    addKingMove(pos, sq, sq + 9, enemy);
                 }
             }
             // down right
             if(rank > 0) {
-                if(b[sq - 7] == EMPTY || pos.sideAt(sq-7) == enemy) {
-                    if(!pos.isSquareAttacked(sq - 7, enemy)) {
-                        addMove(pos, sq, sq - 7);
-                    }
+                if(b[sq - 7] == EMPTY || pos.sideCodeAt(sq-7) == enemy) {
+                    addKingMove(pos, sq, sq - 7, enemy);
                 }
             }
         }
         if(rank < 7) {
             // up
-            if(b[sq + 8] == EMPTY || pos.sideAt(sq+8) == enemy) {
-                if(!pos.isSquareAttacked(sq + 8, enemy)) {
-                    addMove(pos, sq, sq + 8);
-                }
+            if(b[sq + 8] == EMPTY || pos.sideCodeAt(sq+8) == enemy) {
+                addKingMove(pos, sq, sq + 8, enemy);
             }
         }
         if(rank > 0) {
             // down
-            if(b[sq - 8] == EMPTY || pos.sideAt(sq-8) == enemy) {
-                if(!pos.isSquareAttacked(sq - 8, enemy)) {
-                    addMove(pos, sq, sq - 8);
-                }
+            if(b[sq - 8] == EMPTY || pos.sideCodeAt(sq-8) == enemy) {
+                addKingMove(pos, sq, sq - 8, enemy);
             }
         }
 
         // castling
+        if(numCheckers > 0 || !quiet) return;
+
         if(pos.canCastleKingSide(side)) {
             if(b[sq + 1] == EMPTY && b[sq + 2] == EMPTY) {
-                if(!pos.isSquareAttacked(sq, enemy) &&
-                   !pos.isSquareAttacked(sq + 1, enemy) &&
+                if(!pos.isSquareAttacked(sq + 1, enemy) &&
                    !pos.isSquareAttacked(sq + 2, enemy))
                 {
-                    addMove(pos, sq, sq + 2, Move.Flags.OO);
+                    addMove(pos, sq, sq + 2, Move.FLAG_OO);
                 }
             }
         }
         if(pos.canCastleQueenSide(side)) {
             if(b[sq - 1] == EMPTY && b[sq - 2] == EMPTY && b[sq - 3] == EMPTY) {
-                if(!pos.isSquareAttacked(sq, enemy) &&
-                   !pos.isSquareAttacked(sq - 1, enemy) &&
+                if(!pos.isSquareAttacked(sq - 1, enemy) &&
                    !pos.isSquareAttacked(sq - 2, enemy))
                 {
-                    addMove(pos, sq, sq - 2, Move.Flags.OOO);
+                    addMove(pos, sq, sq - 2, Move.FLAG_OOO);
                 }
             }
         }
     }
     private void addMove(Position pos, int from, int to) {
-        addMove(pos, from, to, Move.Flags.NONE);
+        addMove(pos, from, to, Move.FLAG_NONE);
+    }
+    private void addKingMove(Position pos, int from, int to, int enemy) {
+        if(isWanted(pos, from, to, Move.FLAG_NONE) && isSafeKingSquare(pos, from, to, enemy)) {
+            addMove(pos, from, to);
+        }
+    }
+    /** Add a move to each attacked square that is empty or holds an enemy piece. */
+    private void addSlidingMoves(Position pos, int from, int side, long attacks) {
+        var b = pos.state.board;
+        if(!quiet && !quietChecks) attacks &= pos.getOccupied();
+        if(!tactical) attacks &= ~pos.getOccupied();
+        while(attacks != 0) {
+            var to = BitBoard.firstSquare(attacks);
+            if(b[to] == EMPTY || pos.sideCodeAt(to) != side) {
+                addMove(pos, from, to);
+            }
+            attacks &= attacks - 1;
+        }
+    }
+    /**
+     * Test the king's target square with the king lifted off the board
+     * so that it does not block sliding attacks on the squares behind it.
+     * The position's attack maps don't apply to the altered board.
+     */
+    private boolean isSafeKingSquare(Position pos, int kingSq, int to, int enemy) {
+        var b        = pos.state.board;
+        var king     = b[kingSq];
+        var occupied = pos.state.occupied;
+
+        b[kingSq] = EMPTY;
+        pos.state.occupied &= ~BitBoard.squares[kingSq];
+        var attacked = Enprise.isSquareAttacked(pos, to, enemy);
+        b[kingSq] = king;
+        pos.state.occupied = occupied;
+
+        return !attacked;
     }
-    private void addMove(Position pos, int from, int to, Move.Flags flags) {
-        Piece piece   = pos.pieceAt(from);
-        Piece capture = pos.pieceAt(to);
-        if(flags==Move.Flags.ENPASSANT) capture = Piece.PAWN;
+    /**
+     * En passant can expose the king along the rank of both pawns which
+     * the pin rays do not cover so just try the move. It is rare enough.
+     */
+    private void addEnPassantMove(Position pos, int from, int to) {
+        if(tactical && isLegalEnPassant(pos, from, to)) {
+            moves[numMoves++] = Move.makeMove(PAWN, from, to, PAWN, Move.FLAG_ENPASSANT);
+        }
+    }
+    private boolean isLegalEnPassant(Position pos, int from, int to) {
+        var side = pos.sideToMoveCode();
+
+        pos.applyMove(Move.makeMove(PAWN, from, to, PAWN, Move.FLAG_ENPASSANT));
+        var legal = !Enprise.isSquareAttacked(pos, pos.getKingSquare(side), side ^ 1);
+        pos.undoMove();
+        return legal;
+    }
+    private void addMove(Position pos, int from, int to, int flags) {
+        if((squareMask & (1L << to)) == 0 || !isWanted(pos, from, to, flags)) return;
+
+        var piece   = pos.pieceCodeAt(from);
+        var capture = pos.pieceCodeAt(to);
+        if(flags==Move.FLAG_ENPASSANT) capture = PAWN;
         moves[numMoves++] = Move.makeMove(piece, from, to, capture, flags);
     }
+    private boolean isWanted(Position pos, int from, int to, int flags) {
+        var isTactical = pos.state.board[to] != EMPTY ||
+                         (flags >= Move.FLAG_PROMOTE_BISHOP && flags <= Move.FLAG_PROMOTE_QUEEN);
+        if(isTactical) return tactical;
+        return quiet || quietChecks && flags == Move.FLAG_NONE && givesCheck(pos, from, to);
+    }
 }
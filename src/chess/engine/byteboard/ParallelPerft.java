@@ -0,0 +1,165 @@
+package chess.engine.byteboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Multi-threaded perft with a shared hash of subtree counts.
+ *
+ * The first plies are split into ForkJoin tasks, each with its own copy of the position.
+ * Below that each worker thread counts serially using its own move generators.
+ *
+ * Usage:
+ *      ParallelPerft depth [threads [hashMB [fen]]]
+ *
+ * threads = 0 runs a scaling benchmark from 1 thread up to the number of cores.
+ */
+final public class ParallelPerft {
+    private static final int SPLIT_PLIES   = 2;    // number of plies split into tasks
+    private static final int SERIAL_DEPTH  = 3;    // don't split subtrees shallower than this
+    private static final int MAX_DEPTH     = 32;
+
+    private final ForkJoinPool pool;
+    private final Hash hash;
+    private final ThreadLocal<MoveGenerator[]> generators = ThreadLocal.withInitial(()->{
+        var array = new MoveGenerator[MAX_DEPTH + 1];
+        for(int i = 0; i < array.length; i++) array[i] = new MoveGenerator();
+        return array;
+    });
+
+    //===============================================================================
+    /**
+     * Lock-free table of subtree counts. Each entry is two longs: (key ^ nodes, nodes).
+     * An entry torn by a concurrent write fails the key check and is treated as a miss.
+     */
+    private static final class Hash {
+        private final long[] table;
+        private final int mask;
+
+        Hash(int megabytes) {
+            long entries = Long.highestOneBit(Math.max(1, (long)megabytes * 1024 * 1024 / 16));
+            entries      = Math.min(entries, 1 << 29);
+            table        = new long[(int)entries * 2];
+            mask         = (int)entries - 1;
+        }
+        long get(long key) {
+            var i     = ((int)key & mask) << 1;
+            var nodes = table[i + 1];
+            return (table[i] ^ nodes) == key ? nodes : -1;
+        }
+        void put(long key, long nodes) {
+            var i = ((int)key & mask) << 1;
+            table[i]     = key ^ nodes;
+            table[i + 1] = nodes;
+        }
+    }
+    private final class Task extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position pos;
+        private final int depth;
+        private final int ply;
+
+        Task(Position pos, int depth, int ply) {
+            this.pos   = pos;
+            this.depth = depth;
+            this.ply   = ply;
+        }
+        @Override protected Long compute() {
+            if(ply >= SPLIT_PLIES || depth <= SERIAL_DEPTH) {
+                return count(pos, depth, generators.get());
+            }
+
+            var key   = hashKey(pos, depth);
+            var nodes = hash.get(key);
+            if(nodes >= 0) return nodes;
+
+            // Copy the position for each child. Generation is finished before any joins so
+            // the thread's generators are free for other tasks
+            var gen = generators.get()[depth];
+            gen.generateForPosition(pos, false);
+            var tasks = new ArrayList<Task>(gen.numMoves);
+            for(int i = 0; i < gen.numMoves; i++) {
+                var child = new Position();
+                pos.copyTo(child);
+                child.applyMove(gen.moves[i]);
+                tasks.add(new Task(child, depth - 1, ply + 1));
+            }
+
+            nodes = 0;
+            for(var t : invokeAll(tasks)) {
+                nodes += t.join();
+            }
+            hash.put(key, nodes);
+            return nodes;
+        }
+    }
+    //===============================================================================
+    public static void main(String[] args) {
+        var depth   = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        var threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        var hashMB  = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        var fen     = args.length > 3 ? String.join(" ", Arrays.copyOfRange(args, 3, args.length))
+                                      : "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+        if(threads > 0) {
+            run(fen, depth, threads, hashMB);
+        } else {
+            var cores = Runtime.getRuntime().availableProcessors();
+            for(int t = 1; t < cores; t <<= 1) {
+                run(fen, depth, t, hashMB);
+            }
+            run(fen, depth, cores, hashMB);
+        }
+    }
+    public ParallelPerft(int threads, int hashMB) {
+        this.pool = new ForkJoinPool(threads);
+        this.hash = new Hash(hashMB);
+    }
+    public long perft(Position pos, int depth) {
+        if(depth <= 0) return 1;
+        if(depth > MAX_DEPTH) throw new IllegalArgumentException("Depth > " + MAX_DEPTH);
+
+        var root = new Position();
+        pos.copyTo(root);
+        return pool.invoke(new Task(root, depth, 0));
+    }
+    public void shutdown() {
+        pool.shutdown();
+    }
+    //===============================================================================
+    private static void run(String fen, int depth, int threads, int hashMB) {
+        var perft = new ParallelPerft(threads, hashMB);
+        var start = System.nanoTime();
+        var nodes = perft.perft(PositionBuilder.fromFEN(fen), depth);
+        var time  = System.nanoTime() - start;
+        perft.shutdown();
+
+        System.out.println(String.format("threads %3d  D%d %14d  %8.3f s  %12d n/s",
+            threads, depth, nodes, time / 1e9, (long)(nodes * 1e9 / Math.max(1, time))));
+    }
+    /** Depth is mixed in so the same position at different depths uses different entries */
+    private static long hashKey(Position pos, int depth) {
+        return pos.zobrist() ^ (depth * 0x9e37_79b9_7f4a_7c15L);
+    }
+    private long count(Position pos, int depth, MoveGenerator[] gens) {
+        var gen = gens[depth];
+        if(depth == 1) return gen.countLegalMoves(pos);
+
+        var key   = hashKey(pos, depth);
+        var nodes = hash.get(key);
+        if(nodes >= 0) return nodes;
+
+        gen.generateForPosition(pos, false);
+        nodes = 0;
+        for(int i = 0; i < gen.numMoves; i++) {
+            pos.applyMove(gen.moves[i]);
+            nodes += count(pos, depth - 1, gens);
+            pos.undoMove();
+        }
+        hash.put(key, nodes);
+        return nodes;
+    }
+}
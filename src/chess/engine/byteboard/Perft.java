@@ -0,0 +1,188 @@
+package chess.engine.byteboard;
+
+import chess.engine.Move;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Move generation node counter.
+ * https://www.chessprogramming.org/Perft
+ *
+ * Usage:
+ *      Perft                   run the whole suite
+ *      Perft depth             run the suite up to depth
+ *      Perft depth fen|file    divide a single position
+ */
+final public class Perft {
+    /**
+     * Reference positions in perft EPD format ("fen ;D1 nodes ;D2 nodes ...").
+     * https://www.chessprogramming.org/Perft_Results
+     */
+    public static final String[] SUITE = {
+        // Start position
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 ;D1 20 ;D2 400 ;D3 8902 ;D4 197281 ;D5 4865609",
+        // Kiwipete
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1 ;D1 48 ;D2 2039 ;D3 97862 ;D4 4085603",
+        // En passant pins along the rank
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1 ;D1 14 ;D2 191 ;D3 2812 ;D4 43238 ;D5 674624",
+        // Promotions and castling rights
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1 ;D1 6 ;D2 264 ;D3 9467 ;D4 422333 ;D5 15833292",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8 ;D1 44 ;D2 1486 ;D3 62379 ;D4 2103487",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10 ;D1 46 ;D2 2079 ;D3 89890 ;D4 3894594",
+        // data/FEN/ep.fen
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1 ;D1 20 ;D2 600 ;D3 13160 ;D4 405385 ;D5 9771632",
+        // Illegal en passant captures
+        "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1 ;D6 1134888",
+        "8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1 ;D6 1015133",
+        "8/5bk1/8/2Pp4/8/1K6/8/8 w - d6 0 1 ;D6 824064",
+        // En passant capture gives check
+        "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1 ;D6 1440467",
+        // Castling gives check
+        "5k2/8/8/8/8/8/8/4K2R w K - 0 1 ;D6 661072",
+        "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1 ;D6 803711",
+        // Castling rights lost by rook capture and castling prevented
+        "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1 ;D4 1274206",
+        "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1 ;D4 1720476",
+        // Promotions out of check, giving check and underpromotions
+        "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1 ;D6 3821001",
+        "4k3/1P6/8/8/8/8/K7/8 w - - 0 1 ;D6 217342",
+        "8/P1k5/K7/8/8/8/8/8 w - - 0 1 ;D6 92683",
+        // Discovered and double check
+        "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1 ;D5 1004658",
+        "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1 ;D4 23527",
+        // Stalemate and checkmate
+        "K1k5/8/P7/8/8/8/8/8 w - - 0 1 ;D6 2217",
+        "8/k1P5/8/1K6/8/8/8/8 w - - 0 1 ;D7 567584",
+    };
+
+    private MoveGenerator[] generators = new MoveGenerator[0];
+
+    public static void main(String[] args) throws IOException {
+        var perft = new Perft();
+        var depth = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+
+        if(args.length > 1) {
+            var fen = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+            if(Files.exists(Paths.get(fen))) {
+                fen = new String(Files.readAllBytes(Paths.get(fen))).trim();
+            }
+            perft.printDivide(PositionBuilder.fromFEN(fen), depth);
+        } else {
+            System.exit(perft.runSuite(depth) ? 0 : 1);
+        }
+    }
+    /**
+     * @return The number of leaf nodes at depth.
+     *         The leaves are not visited, the moves at depth 1 are just counted
+     */
+    public long perft(Position pos, int depth) {
+        if(depth <= 0) return 1;
+        ensureDepth(depth);
+        return count(pos, depth);
+    }
+    /**
+     * @return The perft count below each root move in generation order
+     */
+    public Map<Integer, Long> divide(Position pos, int depth) {
+        var map = new LinkedHashMap<Integer, Long>();
+        if(depth <= 0) return map;
+        ensureDepth(depth);
+
+        var gen = generators[depth];
+        gen.generateForPosition(pos, false);
+        for(int i = 0; i < gen.numMoves; i++) {
+            var move = gen.moves[i];
+            pos.applyMove(move);
+            map.put(move, depth == 1 ? 1 : count(pos, depth - 1));
+            pos.undoMove();
+        }
+        return map;
+    }
+    public void printDivide(Position pos, int depth) {
+        var start = System.nanoTime();
+        var map   = divide(pos, depth);
+        var time  = System.nanoTime() - start;
+        long total = 0;
+
+        for(var e : map.entrySet()) {
+            System.out.println(Move.toCoordinateString(e.getKey()) + ": " + e.getValue());
+            total += e.getValue();
+        }
+        System.out.println();
+        System.out.println("Moves ..... " + map.size());
+        System.out.println("Nodes ..... " + total);
+        System.out.println(String.format("Time ...... %.3f s", time / 1e9));
+        System.out.println("Nodes/s ... " + nodesPerSecond(total, time));
+    }
+    /**
+     * Run every suite position at each listed depth up to maxDepth.
+     *
+     * @return true if all counts are as expected
+     */
+    public boolean runSuite(int maxDepth) {
+        var passed     = true;
+        long totalNodes = 0;
+        long totalTime  = 0;
+
+        for(var line : SUITE) {
+            var parts = line.split(";");
+            var fen   = parts[0].trim();
+
+            for(int i = 1; i < parts.length; i++) {
+                var tokens   = parts[i].trim().split(" ");
+                var depth    = Integer.parseInt(tokens[0].substring(1));
+                var expected = Long.parseLong(tokens[1]);
+                if(depth > maxDepth) continue;
+
+                var start = System.nanoTime();
+                var nodes = perft(PositionBuilder.fromFEN(fen), depth);
+                var time  = System.nanoTime() - start;
+                var ok    = nodes == expected;
+
+                System.out.println(String.format("%s D%d %12d %10.3f s %12d n/s  %s",
+                    ok ? "ok  " : "FAIL", depth, nodes, time / 1e9, nodesPerSecond(nodes, time), fen));
+                if(!ok) {
+                    System.out.println("     expected " + expected);
+                    passed = false;
+                }
+                totalNodes += nodes;
+                totalTime  += time;
+            }
+        }
+        System.out.println(String.format("%s %d nodes in %.3f s (%d n/s)",
+            passed ? "Passed" : "FAILED", totalNodes, totalTime / 1e9, nodesPerSecond(totalNodes, totalTime)));
+        return passed;
+    }
+    //===============================================================================
+    private long count(Position pos, int depth) {
+        var gen = generators[depth];
+        if(depth == 1) return gen.countLegalMoves(pos);
+
+        gen.generateForPosition(pos, false);
+
+        long nodes = 0;
+        for(int i = 0; i < gen.numMoves; i++) {
+            pos.applyMove(gen.moves[i]);
+            nodes += count(pos, depth - 1);
+            pos.undoMove();
+        }
+        return nodes;
+    }
+    private void ensureDepth(int depth) {
+        if(generators.length > depth) return;
+
+        var old = generators;
+        generators = Arrays.copyOf(old, depth + 1);
+        for(int i = old.length; i <= depth; i++) {
+            generators[i] = new MoveGenerator();
+        }
+    }
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : (long)(nodes * 1e9 / nanos);
+    }
+}
@@ -1,12 +1,16 @@
 package chess.engine.byteboard;
 
+import chess.engine.Board;
+import chess.engine.KeyHistory;
 import chess.engine.Move;
 import chess.engine.Piece;
 import chess.engine.Side;
+import chess.engine.Zobrist;
+import chess.engine.bitboard.BitBoard;
 
 import java.util.*;
 
-final public class Position {
+final public class Position implements Board {
     static final int EMPTY      = 0;
     static final int PIECE_MASK = 0b0111;
     static final int SIDE_MASK  = 0b1000;
@@ -15,9 +19,25 @@ final public class Position {
     static final int FLAG_WHITE_OOO	 = 2; // Set if can castle
     static final int FLAG_BLACK_OO	 = 4; // Set if can castle
     static final int FLAG_BLACK_OOO	 = 8; // Set if can castle
+
+    // Undo stack entry layout
+    private static final int UNDO_MOVE           = 0;
+    private static final int UNDO_PIECE          = 1;  // board value of the moved piece
+    private static final int UNDO_CAPTURE        = 2;  // board value of the captured piece
+    private static final int UNDO_ENPASSANT      = 3;
+    private static final int UNDO_FLAGS          = 4;
+    private static final int UNDO_HALF_MOVE      = 5;
+    private static final int UNDO_FULL_MOVE      = 6;
+    private static final int UNDO_WHITE_KING     = 7;
+    private static final int UNDO_BLACK_KING     = 8;
+    private static final int UNDO_WHITE_MATERIAL = 9;
+    private static final int UNDO_BLACK_MATERIAL = 10;
+    private static final int UNDO_WHITE_PIECES   = 11;
+    private static final int UNDO_BLACK_PIECES   = 12;
+    private static final int UNDO_SIZE           = 13;
     //============================================================================
     // Could move most of this to flags to speed up hashing.
-    // Could change board to longs and do some byte shifting - board would then be 8 longs.
+    // board stays an int[] for the move generator. See PackedPosition for a 40 byte copy.
     static final class State {
         boolean whiteToMove;
         int fullMoveNumber;
@@ -27,9 +47,20 @@ final public class Position {
         int[] board = new int[64];
 
         // Cached info not strictly part of the state
-        int hash, whiteKingPos, blackKingPos;
+        long zobrist;           // See Zobrist. Excludes the move counters
+        int whiteKingPos, blackKingPos;
         int whiteMaterial, blackMaterial;
         int whiteNumPieces, blackNumPieces;
+        long occupied;          // BitBoard layout. Used for sliding attacks
+
+        // Squares of each piece indexed by board value, natural layout (bit = square).
+        // Index side<<3 (piece NONE) holds all of that side's pieces
+        long[] pieces = new long[16];
+
+        // Squares attacked by each side, BitBoard layout. Calculated on first use by the
+        // evaluator. Bit n of attacksValid is set if attacks[n] is up to date
+        long[] attacks = new long[2];
+        int attacksValid;
 
         State copyTo(State to) {
             to.whiteToMove        = whiteToMove;
@@ -37,36 +68,33 @@ final public class Position {
             to.halfMoveClock      = halfMoveClock;
             to.availableEnpassant = availableEnpassant;
             to.flags              = flags;
-            to.board              = Arrays.copyOf(board, 64);
-            to.hash               = hash;
+            System.arraycopy(board, 0, to.board, 0, 64);
+            to.zobrist            = zobrist;
             to.whiteKingPos       = whiteKingPos;
             to.blackKingPos       = blackKingPos;
             to.whiteMaterial      = whiteMaterial;
             to.blackMaterial      = blackMaterial;
             to.whiteNumPieces     = whiteNumPieces;
             to.blackNumPieces     = blackNumPieces;
+            to.occupied           = occupied;
+            System.arraycopy(pieces, 0, to.pieces, 0, 16);
+            to.attacks[0]         = attacks[0];
+            to.attacks[1]         = attacks[1];
+            to.attacksValid       = attacksValid;
             return to;
         }
         @Override public int hashCode() {
-            if(hash != 0) return hash;
-            int h = 0;
-            h = 31 * h + (whiteToMove ? 1 : 0);
-            h = 31 * h + fullMoveNumber;
-            h = 31 * h + halfMoveClock;
-            h = 31 * h + flags;
-            h = 31 * h + availableEnpassant;
-            h = 31 * h + Arrays.hashCode(board);
-            hash = h;
-            return h;
+            return (int)(zobrist ^ (zobrist >>> 32));
         }
         @Override public boolean equals(Object obj) {
             State s = (State)obj;
-            return whiteToMove == s.whiteToMove &&
+            return zobrist == s.zobrist &&
+                whiteToMove == s.whiteToMove &&
                 fullMoveNumber == s.fullMoveNumber &&
                 halfMoveClock == s.halfMoveClock &&
                 flags == s.flags &&
                 availableEnpassant == s.availableEnpassant &&
-                Arrays.equals(board, s.board);
+                Arrays.equals(pieces, s.pieces);    // 16 longs instead of 64 ints
         }
 
         @Override public String toString() {
@@ -126,58 +154,101 @@ final public class Position {
     }
     //============================================================================
     public State state = new State();
-    public List<Integer> moveHistory = new ArrayList<>();
-    private List<State> stateHistory  = new ArrayList<>();
+
+    /**
+     * Each applied move pushes UNDO_SIZE ints holding only what the move changes.
+     * undoMove() restores the state in place from this.
+     * The zobrist keys go on the key history instead.
+     */
+    private int[] undoStack = new int[UNDO_SIZE * 256];
+    private int undoPos;
+    private KeyHistory keyHistory = new KeyHistory();
+    final int[] seeGain = new int[32];      // scratch for Enprise.see
 
     public void copyTo(Position p) {
         state.copyTo(p.state);
         // Ensure p has no history
-        p.moveHistory.clear();
-        p.stateHistory.clear();
+        p.undoPos = 0;
+        p.keyHistory.clear();
     }
     public void applyMove(int move) {
-        stateHistory.add(state.copyTo(new State()));
-        moveHistory.add(move);
+        if(undoPos + UNDO_SIZE > undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        }
 
         var from    = Move.from(move);
         var to      = Move.to(move);
-        var piece   = Piece.get(state.board[from] & PIECE_MASK);
-        var side    = Side.get(state.board[from] >>> 3);
-        var flags   = Move.flags(move);
+        var value   = state.board[from];
+        var piece   = value & PIECE_MASK;
+        var flags   = Move.flagCode(move);
 
-        var capture = Piece.get(state.board[to] & PIECE_MASK);
-        if(flags==Move.Flags.ENPASSANT) {
-            capture = Piece.PAWN;
+        var capture = state.board[to] & PIECE_MASK;
+        if(flags==Move.FLAG_ENPASSANT) {
+            capture = PAWN;
         }
 
+        // Record the delta
+        var u = undoStack;
+        var i = undoPos;
+        u[i + UNDO_MOVE]           = move;
+        u[i + UNDO_PIECE]          = value;
+        u[i + UNDO_CAPTURE]        = state.board[to];
+        u[i + UNDO_ENPASSANT]      = state.availableEnpassant;
+        u[i + UNDO_FLAGS]          = state.flags;
+        u[i + UNDO_HALF_MOVE]      = state.halfMoveClock;
+        u[i + UNDO_FULL_MOVE]      = state.fullMoveNumber;
+        u[i + UNDO_WHITE_KING]     = state.whiteKingPos;
+        u[i + UNDO_BLACK_KING]     = state.blackKingPos;
+        u[i + UNDO_WHITE_MATERIAL] = state.whiteMaterial;
+        u[i + UNDO_BLACK_MATERIAL] = state.blackMaterial;
+        u[i + UNDO_WHITE_PIECES]   = state.whiteNumPieces;
+        u[i + UNDO_BLACK_PIECES]   = state.blackNumPieces;
+        undoPos += UNDO_SIZE;
+        keyHistory.push(state.zobrist);
+
+        // The attack maps are recalculated when next needed
+        state.attacksValid = 0;
+
+        // Remove the moving piece, any captured piece and the old castling and
+        // en passant keys. The new ones are added once the move is complete
+        long key = state.zobrist ^ Zobrist.BLACK_TO_MOVE ^ Zobrist.CASTLING[state.flags] ^
+                   Zobrist.PIECES[value][from];
+        if(state.board[to] != EMPTY) key ^= Zobrist.PIECES[state.board[to]][to];
+        if(state.availableEnpassant != 0) key ^= Zobrist.ENPASSANT[state.availableEnpassant & 7];
+
+        togglePiece(value, from);
+        if(state.board[to] != EMPTY) togglePiece(state.board[to], to);
+
         // Pawn move or any capture resets half move clock
-        var resetHalfMove = piece==Piece.PAWN || capture!=Piece.NONE;
+        var resetHalfMove = piece==PAWN || capture!=EMPTY;
 
         // Move the piece
         state.board[from] = EMPTY;
-        state.board[to]   = piece.ordinal() | (side.ordinal()<<3);
+        state.board[to]   = value;
+        state.occupied   &= ~BitBoard.squares[from];
+        state.occupied   |= BitBoard.squares[to];
 
         // Remove any old en passant target
         state.availableEnpassant = 0;
 
         // Adjust num pieces
-        if(capture!=Piece.NONE) {
-            if(side == Side.WHITE) {
+        if(capture!=EMPTY) {
+            if(state.whiteToMove) {
                 state.blackNumPieces--;
             } else {
                 state.whiteNumPieces--;
             }
         }
 
-        if(piece==Piece.PAWN) {
+        if(piece==PAWN) {
             // handle en passant capture
-            if(flags == Move.Flags.ENPASSANT) {
+            if(flags == Move.FLAG_ENPASSANT) {
                 // remove en passant captured pawn
-                if(state.whiteToMove) {
-                    state.board[to - 8] = EMPTY;
-                } else {
-                    state.board[to + 8] = EMPTY;
-                }
+                var sq = state.whiteToMove ? to - 8 : to + 8;
+                key ^= Zobrist.PIECES[state.board[sq]][sq];
+                togglePiece(state.board[sq], sq);
+                state.board[sq]  = EMPTY;
+                state.occupied  &= ~BitBoard.squares[sq];
             }
             // add a possible en passant target
             if(to - from == 16) {
@@ -187,30 +258,18 @@ final public class Position {
             }
 
             // promotion
-            if(flags.isPromotion()) {
-                state.board[to] &= ~PIECE_MASK;
-                int materialChange = 0;
-
-                if(flags == Move.Flags.PROMOTE_QUEEN) {
-                    state.board[to] |= Piece.QUEEN.ordinal();
-                    materialChange = Piece.QUEEN.material - Piece.PAWN.material;
-                } else if(flags == Move.Flags.PROMOTE_ROOK) {
-                    state.board[to] |= Piece.ROOK.ordinal();
-                    materialChange = Piece.ROOK.material - Piece.PAWN.material;
-                } else if(flags == Move.Flags.PROMOTE_BISHOP) {
-                    state.board[to] |= Piece.BISHOP.ordinal();
-                    materialChange = Piece.BISHOP.material - Piece.PAWN.material;
-                } else if(flags == Move.Flags.PROMOTE_KNIGHT) {
-                    state.board[to] |= Piece.KNIGHT.ordinal();
-                    materialChange = Piece.KNIGHT.material - Piece.PAWN.material;
-                }
+            if(Move.isPromotion(move)) {
+                var promotion   = Move.promotionCode(move);
+                state.board[to] = (value & SIDE_MASK) | promotion;
+
+                var materialChange = Piece.material(promotion) - Piece.material(PAWN);
                 if(state.whiteToMove) {
                     state.whiteMaterial += materialChange;
                 } else {
                     state.blackMaterial += materialChange;
                 }
             }
-        } else if(piece==Piece.KING) {
+        } else if(piece==KING) {
             // remove castling permissions and updateForeground king pos
             if(state.whiteToMove) {
                 state.whiteKingPos = to;
@@ -221,7 +280,11 @@ final public class Position {
             }
 
             // move the rook if castling
-            if(flags == Move.Flags.OO) {
+            if(flags == Move.FLAG_OO) {
+                state.occupied ^= BitBoard.squares[to - 1] | BitBoard.squares[to + 1];
+                key ^= Zobrist.PIECES[state.board[to + 1]][to + 1] ^ Zobrist.PIECES[state.board[to + 1]][to - 1];
+                togglePiece(state.board[to + 1], to + 1);
+                togglePiece(state.board[to + 1], to - 1);
                 if(state.whiteToMove) {
                     state.board[5] = state.board[7];
                     state.board[7] = EMPTY;
@@ -229,7 +292,11 @@ final public class Position {
                     state.board[61] = state.board[63];
                     state.board[63] = EMPTY;
                 }
-            } else if(flags == Move.Flags.OOO) {
+            } else if(flags == Move.FLAG_OOO) {
+                state.occupied ^= BitBoard.squares[to + 1] | BitBoard.squares[to - 2];
+                key ^= Zobrist.PIECES[state.board[to - 2]][to - 2] ^ Zobrist.PIECES[state.board[to - 2]][to + 1];
+                togglePiece(state.board[to - 2], to - 2);
+                togglePiece(state.board[to - 2], to + 1);
                 if(state.whiteToMove) {
                     state.board[3] = state.board[0];
                     state.board[0] = EMPTY;
@@ -238,26 +305,26 @@ final public class Position {
                     state.board[56] = EMPTY;
                 }
             }
-        } else if(piece==Piece.ROOK) {
+        } else if(piece==ROOK) {
             // remove castling permissions
             if(state.whiteToMove) {
                 if(from == 0) {
                     state.flags &= ~FLAG_WHITE_OOO;
-                } else {
+                } else if(from == 7) {
                     state.flags &= ~FLAG_WHITE_OO;
                 }
             } else {
                 if(from == 56) {
                     state.flags &= ~FLAG_BLACK_OOO;
-                } else {
+                } else if(from == 63) {
                     state.flags &= ~FLAG_BLACK_OO;
                 }
             }
         }
 
-        if(capture!=Piece.NONE) {
+        if(capture!=EMPTY) {
             // Remove castling permissions if a rook was captured
-            if(capture == Piece.ROOK) {
+            if(capture == ROOK) {
                 if(to == 0) state.flags &= ~FLAG_WHITE_OOO;
                 if(to == 7) state.flags &= ~FLAG_WHITE_OO;
                 if(to == 56) state.flags &= ~FLAG_BLACK_OOO;
@@ -265,9 +332,9 @@ final public class Position {
             }
             // Update opponent's material
             if(state.whiteToMove) {
-                state.blackMaterial -= capture.material;
+                state.blackMaterial -= Piece.material(capture);
             } else {
-                state.whiteMaterial -= capture.material;
+                state.whiteMaterial -= Piece.material(capture);
             }
         }
 
@@ -275,26 +342,95 @@ final public class Position {
             state.halfMoveClock = 0;
         } else {
             state.halfMoveClock++;
-            // todo - if this gets to 100 then a draw can be claimed
-            // todo - if this gets to 150 then a draw is forced
         }
-        // todo - Threefold repetition rule. Player can claim a draw if same position occurs 3 times
-        // todo - Fivefold repetition rule. Draw is forced if the same position occurs 5 times
+        // Draws by the fifty move rule and repetition are left to isDraw()
+
+        // The moved (or promoted) piece and the new castling and en passant keys
+        key ^= Zobrist.PIECES[state.board[to]][to] ^ Zobrist.CASTLING[state.flags];
+        if(state.availableEnpassant != 0) key ^= Zobrist.ENPASSANT[state.availableEnpassant & 7];
+        state.zobrist = key;
+        togglePiece(state.board[to], to);
+
         state.whiteToMove     = !state.whiteToMove;
         state.fullMoveNumber += (state.whiteToMove ? 1 : 0);
     }
     public int undoMove() {
-        state = stateHistory.remove(stateHistory.size()-1);
-        int move = moveHistory.remove(moveHistory.size()-1);
+        undoPos -= UNDO_SIZE;
+
+        var u     = undoStack;
+        var i     = undoPos;
+        var move  = u[i + UNDO_MOVE];
+        var from  = Move.from(move);
+        var to    = Move.to(move);
+        var flags = Move.flagCode(move);
+        var b     = state.board;
+
+        togglePiece(b[to], to);
+        togglePiece(u[i + UNDO_PIECE], from);
+        if(u[i + UNDO_CAPTURE] != EMPTY) togglePiece(u[i + UNDO_CAPTURE], to);
 
-        // It's probably quicker to not copy the state
+        // Put the pieces back
+        b[from] = u[i + UNDO_PIECE];
+        b[to]   = u[i + UNDO_CAPTURE];
+        state.occupied |= BitBoard.squares[from];
+        if(b[to] == EMPTY) state.occupied &= ~BitBoard.squares[to];
+
+        if(flags==Move.FLAG_ENPASSANT) {
+            // The captured pawn was behind the target square
+            if((b[from] & SIDE_MASK) == 0) {
+                b[to - 8] = PAWN | SIDE_MASK;
+                state.occupied |= BitBoard.squares[to - 8];
+                togglePiece(b[to - 8], to - 8);
+            } else {
+                b[to + 8] = PAWN;
+                state.occupied |= BitBoard.squares[to + 8];
+                togglePiece(b[to + 8], to + 8);
+            }
+        } else if(flags==Move.FLAG_OO) {
+            togglePiece(b[to - 1], to - 1);
+            togglePiece(b[to - 1], to + 1);
+            b[to + 1] = b[to - 1];
+            b[to - 1] = EMPTY;
+            state.occupied ^= BitBoard.squares[to - 1] | BitBoard.squares[to + 1];
+        } else if(flags==Move.FLAG_OOO) {
+            togglePiece(b[to + 1], to + 1);
+            togglePiece(b[to + 1], to - 2);
+            b[to - 2] = b[to + 1];
+            b[to + 1] = EMPTY;
+            state.occupied ^= BitBoard.squares[to + 1] | BitBoard.squares[to - 2];
+        }
+
+        state.whiteToMove        = (b[from] & SIDE_MASK) == 0;
+        state.availableEnpassant = u[i + UNDO_ENPASSANT];
+        state.flags              = u[i + UNDO_FLAGS];
+        state.halfMoveClock      = u[i + UNDO_HALF_MOVE];
+        state.fullMoveNumber     = u[i + UNDO_FULL_MOVE];
+        state.zobrist            = keyHistory.pop();
+        state.whiteKingPos       = u[i + UNDO_WHITE_KING];
+        state.blackKingPos       = u[i + UNDO_BLACK_KING];
+        state.whiteMaterial      = u[i + UNDO_WHITE_MATERIAL];
+        state.blackMaterial      = u[i + UNDO_BLACK_MATERIAL];
+        state.whiteNumPieces     = u[i + UNDO_WHITE_PIECES];
+        state.blackNumPieces     = u[i + UNDO_BLACK_PIECES];
+        state.attacksValid       = 0;
 
         return move;
     }
 
+    /** @return 64 bit key of the position excluding the move counters */
+    public long zobrist() {
+        return state.zobrist;
+    }
+    public KeyHistory keyHistory() {
+        return keyHistory;
+    }
     public boolean isOccupied(int sq) {
         return state.board[sq] != EMPTY;
     }
+    /** @return All occupied squares in BitBoard layout */
+    public long getOccupied() {
+        return state.occupied;
+    }
     public boolean squareContains(int sq, Piece p, Side side) {
         return pieceAt(sq)==p && sideAt(sq)==side;
     }
@@ -349,29 +485,167 @@ final public class Position {
                                   : (state.flags&FLAG_BLACK_OOO)!=0;
     }
     public boolean isSquareAttacked(int sq, Side by) {
-        return Enprise.isSquareAttacked(this, sq, by);
+        return isSquareAttacked(sq, by.ordinal());
     }
     public boolean isCheck() {
-        return isSquareAttacked(getKingSquare(sideToMove()), sideToMove().opposite());
+        var side = sideToMoveCode();
+        return isSquareAttacked(getKingSquare(side), side ^ 1);
     }
-    public int getPiecePositions(Piece piece, Side side, int[] array) {
-        int count = 0;
-        for(int i=0; i<64; i++) {
-            if(pieceAt(i)==piece && sideAt(i)==side) {
-                array[count++] = i;
-            }
+    /**
+     * Check that a move from elsewhere (hash table, killer slot, UI) could be made in this
+     * position without generating any moves. Castling is fully checked but any other move
+     * may still leave the king in check.
+     */
+    public boolean isPseudoLegal(int move) {
+        if(move == 0) return false;
+
+        var b       = state.board;
+        var from    = Move.from(move);
+        var to      = Move.to(move);
+        var piece   = Move.pieceCode(move);
+        var capture = Move.captureCode(move);
+        var flags   = Move.flagCode(move);
+        var side    = sideToMoveCode();
+        var own     = side << 3;
+        var toBit   = BitBoard.squares[to];
+
+        if(b[from] != (piece | own)) return false;
+
+        if(flags == Move.FLAG_ENPASSANT) {
+            return piece == PAWN && capture == PAWN && to == state.availableEnpassant && to != 0 &&
+                   (pawnAttacks(side, from) & toBit) != 0;
         }
-        return count;
+
+        // The target must hold the recorded capture. Kings are never captured
+        var target = b[to];
+        if(target == EMPTY ? capture != EMPTY
+                           : (target & SIDE_MASK) == own || (target & PIECE_MASK) != capture || capture == KING) {
+            return false;
+        }
+
+        if(Move.isCastle(move)) {
+            return piece == KING && capture == EMPTY && canCastle(from, to, flags, side);
+        }
+        if(Move.isPromotion(move) && piece != PAWN) return false;
+
+        switch(piece) {
+            case PAWN:
+                // Moves to the last rank must be promotions
+                var lastRank = side == WHITE ? to >= 56 : to < 8;
+                if(lastRank != Move.isPromotion(move)) return false;
+                if(target != EMPTY) return (pawnAttacks(side, from) & toBit) != 0;
+
+                var dir = side == WHITE ? 8 : -8;
+                if(to == from + dir) return true;
+                return to == from + dir * 2 &&
+                       (from >>> 3) == (side == WHITE ? 1 : 6) &&
+                       b[from + dir] == EMPTY;
+            case KNIGHT: return (BitBoard.knightMoves[from] & toBit) != 0;
+            case BISHOP: return (BitBoard.bishopAttacks(from, state.occupied) & toBit) != 0;
+            case ROOK:   return (BitBoard.rookAttacks(from, state.occupied) & toBit) != 0;
+            case QUEEN:  return (BitBoard.queenAttacks(from, state.occupied) & toBit) != 0;
+            case KING:   return (BitBoard.kingMoves[from] & toBit) != 0;
+        }
+        return false;
     }
+    /**
+     * isPseudoLegal plus a make/unmake to check the king is not left in check.
+     */
+    public boolean isLegal(int move) {
+        if(!isPseudoLegal(move)) return false;
+
+        // A single test is cheaper than the attack map of a position that is left straight away
+        var side = sideToMoveCode();
+        applyMove(move);
+        var legal = !Enprise.isSquareAttacked(this, getKingSquare(side), side ^ 1);
+        undoMove();
+        return legal;
+    }
+    /** @return Squares of piece in ascending order */
+    public int getPiecePositions(Piece piece, Side side, int[] array) {
+        return getPiecePositions(piece.ordinal(), side.ordinal(), array);
+    }
+    /** @return Squares of all of side's pieces in ascending order */
     public int getPiecePositions(Side side, int[] array) {
-        int count = 0;
-        for(int i=0; i<64; i++) {
-            if(isOccupied(i) && sideAt(i)==side) {
-                array[count++] = i;
+        return getPiecePositions(side.ordinal(), array);
+    }
+    //==============================================================================
+    // Int API for the search, generator and evaluators. Codes are the Board constants
+
+    /** @return The piece code at sq or 0 if empty */
+    public int pieceCodeAt(int sq) {
+        return state.board[sq] & PIECE_MASK;
+    }
+    /** @return The side code of the piece at sq. WHITE if empty */
+    public int sideCodeAt(int sq) {
+        return state.board[sq] >>> 3;
+    }
+    public int sideToMoveCode() {
+        return state.whiteToMove ? WHITE : BLACK;
+    }
+    public boolean squareContains(int sq, int piece, int side) {
+        return state.board[sq] == (piece | (side<<3));
+    }
+    public int getKingSquare(int side) {
+        return side==WHITE ? state.whiteKingPos : state.blackKingPos;
+    }
+    public int getMaterialValue(int side) {
+        return side==WHITE ? state.whiteMaterial : state.blackMaterial;
+    }
+    public boolean canCastleKingSide(int side) {
+        return (state.flags & (side==WHITE ? FLAG_WHITE_OO : FLAG_BLACK_OO)) != 0;
+    }
+    public boolean canCastleQueenSide(int side) {
+        return (state.flags & (side==WHITE ? FLAG_WHITE_OOO : FLAG_BLACK_OOO)) != 0;
+    }
+    /**
+     * A map lookup if the evaluator has already built by's attack map for this position.
+     * Otherwise a scan out from sq, which is far cheaper than building the map just for
+     * an isCheck at a node that is never evaluated.
+     */
+    public boolean isSquareAttacked(int sq, int by) {
+        if((state.attacksValid & (1 << by)) != 0) return (state.attacks[by] & BitBoard.squares[sq]) != 0;
+        return Enprise.isSquareAttacked(this, sq, by);
+    }
+    /** @return Squares attacked by side. BitBoard layout */
+    public long getAttacks(int side) {
+        if((state.attacksValid & (1 << side)) == 0) {
+            state.attacks[side] = calculateAttacks(side);
+            state.attacksValid |= 1 << side;
+        }
+        return state.attacks[side];
+    }
+    /** @return side's pieces that attack sq. BitBoard layout */
+    public long getAttackers(int sq, int side) {
+        // Mirroring the files converts the natural layout to the BitBoard layout
+        var own = Long.reverse(Long.reverseBytes(state.pieces[side<<3]));
+        return Enprise.attackersOf(this, sq, state.occupied) & own;
+    }
+    /** @return Squares of piece in ascending order */
+    public int getPiecePositions(int piece, int side, int[] array) {
+        return getSquares(state.pieces[piece | (side<<3)], array);
+    }
+    /** @return Squares of all of side's pieces in ascending order */
+    public int getPiecePositions(int side, int[] array) {
+        return getSquares(state.pieces[side<<3], array);
+    }
+    public int see(int move) {
+        return Enprise.see(this, move);
+    }
+    public void getEnpriseBoard(int[] board) {
+        Enprise.getEnpriseBoard(this, board);
+    }
+    @Override public void packBoard(long[] packed) {
+        var b = state.board;
+        for(int i = 0; i < 4; i++) {
+            long nibbles = 0;
+            for(int sq = (i << 4) + 15; sq >= i << 4; sq--) {
+                nibbles = (nibbles << 4) | b[sq];
             }
+            packed[i] = nibbles;
         }
-        return count;
     }
+    //==============================================================================
     public boolean isEndGame() {
         return state.whiteMaterial <= 14 ||
                state.blackMaterial <= 14 ||
@@ -379,9 +653,84 @@ final public class Position {
                state.blackNumPieces < 5;
     }
     public int getLastMove() {
-        return moveHistory.get(moveHistory.size()-1);
+        return undoStack[undoPos - UNDO_SIZE + UNDO_MOVE];
+    }
+    public int getNumMovesPlayed() {
+        return undoPos / UNDO_SIZE;
+    }
+    public List<Integer> getMoveHistory() {
+        var list = new ArrayList<Integer>(getNumMovesPlayed());
+        for(int i = 0; i < undoPos; i += UNDO_SIZE) {
+            list.add(undoStack[i + UNDO_MOVE]);
+        }
+        return list;
+    }
+    /** @return The number of moves played, written to array oldest first */
+    public int getMoveHistory(int[] array) {
+        int n = 0;
+        for(int i = 0; i < undoPos; i += UNDO_SIZE) {
+            array[n++] = undoStack[i + UNDO_MOVE];
+        }
+        return n;
     }
     //==============================================================================
+    /** Add or remove a piece from the piece sets */
+    private void togglePiece(int value, int sq) {
+        var bit = 1L << sq;
+        state.pieces[value]             ^= bit;
+        state.pieces[value & SIDE_MASK] ^= bit;
+    }
+    private long calculateAttacks(int side) {
+        var p   = state.pieces;
+        var s   = side << 3;
+        var occ = state.occupied;
+        long attacks = BitBoard.kingMoves[getKingSquare(side)];
+
+        for(long bits = p[PAWN | s]; bits != 0; bits &= bits - 1) {
+            attacks |= pawnAttacks(side, Long.numberOfTrailingZeros(bits));
+        }
+        for(long bits = p[KNIGHT | s]; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.knightMoves[Long.numberOfTrailingZeros(bits)];
+        }
+        for(long bits = p[BISHOP | s] | p[QUEEN | s]; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.bishopAttacks(Long.numberOfTrailingZeros(bits), occ);
+        }
+        for(long bits = p[ROOK | s] | p[QUEEN | s]; bits != 0; bits &= bits - 1) {
+            attacks |= BitBoard.rookAttacks(Long.numberOfTrailingZeros(bits), occ);
+        }
+        return attacks;
+    }
+    /** @return Squares a pawn on sq attacks. BitBoard layout */
+    private static long pawnAttacks(int side, int sq) {
+        return side == WHITE ? BitBoard.whitePawnAttacks[sq] : BitBoard.blackPawnAttacks[sq];
+    }
+    /** The same conditions as the generator: not in check, squares empty and not attacked */
+    private boolean canCastle(int from, int to, int flags, int side) {
+        var b     = state.board;
+        var enemy = side ^ 1;
+        if(from != (side == WHITE ? 4 : 60)) return false;
+
+        if(flags == Move.FLAG_OO) {
+            if(to != from + 2 || !canCastleKingSide(side)) return false;
+            if(b[from + 1] != EMPTY || b[from + 2] != EMPTY) return false;
+            return !isSquareAttacked(from, enemy) &&
+                   !isSquareAttacked(from + 1, enemy) &&
+                   !isSquareAttacked(from + 2, enemy);
+        }
+        if(to != from - 2 || !canCastleQueenSide(side)) return false;
+        if(b[from - 1] != EMPTY || b[from - 2] != EMPTY || b[from - 3] != EMPTY) return false;
+        return !isSquareAttacked(from, enemy) &&
+               !isSquareAttacked(from - 1, enemy) &&
+               !isSquareAttacked(from - 2, enemy);
+    }
+    private static int getSquares(long bits, int[] array) {
+        int count = 0;
+        while(bits != 0) {
+            array[count++] = Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+        }
+        return count;
+    }
     @Override public int hashCode() {
         return state.hashCode();
     }
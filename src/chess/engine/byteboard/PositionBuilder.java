@@ -1,7 +1,10 @@
 package chess.engine.byteboard;
 
+import chess.engine.PackedPosition;
 import chess.engine.Piece;
 import chess.engine.Side;
+import chess.engine.Zobrist;
+import chess.engine.bitboard.BitBoard;
 
 import java.util.Arrays;
 
@@ -42,6 +45,9 @@ final public class PositionBuilder {
 
         s.whiteNumPieces = sumPieces(s, Side.WHITE);
         s.blackNumPieces = sumPieces(s, Side.BLACK);
+        s.occupied       = sumOccupied(s);
+        sumPieceSets(s);
+        s.zobrist        = Zobrist.hash(pos);
         return pos;
     }
     /******************************************************************************************************
@@ -172,6 +178,8 @@ final public class PositionBuilder {
 
         pos.state.whiteNumPieces = sumPieces(pos.state, Side.WHITE);
         pos.state.blackNumPieces = sumPieces(pos.state, Side.BLACK);
+        pos.state.occupied       = sumOccupied(pos.state);
+        sumPieceSets(pos.state);
 
         var array = new int[1];
         pos.getPiecePositions(Piece.KING, Side.WHITE, array);
@@ -179,6 +187,8 @@ final public class PositionBuilder {
         pos.getPiecePositions(Piece.KING, Side.BLACK, array);
         pos.state.blackKingPos = array[0];
 
+        pos.state.zobrist = Zobrist.hash(pos);
+
 //        System.out.println("White King pos = "+pos.getKingSquare(Side.WHITE));
 //        System.out.println("Black King pos = "+pos.getKingSquare(Side.BLACK));
 //
@@ -187,6 +197,31 @@ final public class PositionBuilder {
 
         return pos;
     }
+    /** The full move number is not packed so is left at 1 */
+    public static Position from(PackedPosition p) {
+        var pos = new Position();
+        var s   = pos.state;
+        for(int sq = 0; sq < 64; sq++) {
+            s.board[sq] = p.get(sq);
+        }
+        s.whiteToMove        = p.sideToMoveCode() == Position.WHITE;
+        s.halfMoveClock      = p.halfMoveClock();
+        s.availableEnpassant = p.availableEnPassantSquare();
+        s.flags              = p.castlingFlags();    // same bits as the FLAG_ constants
+
+        s.whiteMaterial = sumMaterial(s, Side.WHITE);
+        s.blackMaterial = sumMaterial(s, Side.BLACK);
+
+        s.whiteNumPieces = sumPieces(s, Side.WHITE);
+        s.blackNumPieces = sumPieces(s, Side.BLACK);
+        s.occupied       = sumOccupied(s);
+        sumPieceSets(s);
+
+        s.whiteKingPos = Long.numberOfTrailingZeros(s.pieces[Position.KING]);
+        s.blackKingPos = Long.numberOfTrailingZeros(s.pieces[Position.KING | Position.SIDE_MASK]);
+        s.zobrist      = Zobrist.hash(pos);
+        return pos;
+    }
     /**
      * https://en.wikipedia.org/wiki/Portable_Game_Notation
      */
@@ -213,4 +248,20 @@ final public class PositionBuilder {
                           .filter(it->Side.get(it&Position.SIDE_MASK)==side)
                           .count();
     }
+    private static long sumOccupied(Position.State state) {
+        long occupied = 0;
+        for(int sq = 0; sq < 64; sq++) {
+            if(state.board[sq] != Position.EMPTY) occupied |= BitBoard.squares[sq];
+        }
+        return occupied;
+    }
+    private static void sumPieceSets(Position.State state) {
+        Arrays.fill(state.pieces, 0);
+        for(int sq = 0; sq < 64; sq++) {
+            var value = state.board[sq];
+            if(value == Position.EMPTY) continue;
+            state.pieces[value]                      |= 1L << sq;
+            state.pieces[value & Position.SIDE_MASK] |= 1L << sq;
+        }
+    }
 }
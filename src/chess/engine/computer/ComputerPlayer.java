@@ -1,19 +1,27 @@
 package chess.engine.computer;
 
+import chess.engine.Backend;
+import chess.engine.Board;
 import chess.engine.Game;
-import chess.engine.Side;
-import chess.engine.byteboard.MoveGenerator;
-import chess.engine.byteboard.Position;
 import juice.Util;
 
 import java.util.Arrays;
 import java.util.stream.IntStream;
 
 final public class ComputerPlayer {
+    private static final int MAX_DEPTH = 32;   // plies. Well inside Search.DEFAULT_MAX_PLY
+    private static volatile TranspositionTable sharedTable;
+    private static volatile long moveTimeMs = 1000;
+
     private Game game;
-    private Side side;
+    private TranspositionTable table;
     private Search search;
-    private Position position = new Position();
+    private TimeManager timer = new TimeManager();
+    private long clockMs = -1, incrementMs;     // clock mode if clockMs >= 0
+    private int movesToGo;
+    private volatile int completedDepth;
+    private Backend backend = Backend.current();
+    private Board position;
     private long moveStart;
     private Thread thread;
     public static final class MoveInfo {
@@ -28,13 +36,43 @@ final public class ComputerPlayer {
     public MoveInfo[] getTopMoves() { synchronized(topMovesLock) { return Arrays.copyOf(topMoves, topMovesIndex); } }
     public int getMovePositionsEvaluated() { return movePositionsEvaluated; }
     public int getGamePositionsEvaluated() { return gamePositionsEvaluated; }
+    /** @return The fraction of cutoffs caused by the first move tried this move */
+    public float getFirstMoveCutoffRate() { return search.getFirstMoveCutoffRate(); }
+    /** @return Quiescence positions searched this move */
+    public long getQuiescenceNodes() { return search.getQuiescenceNodes(); }
+    /** @return Captures quiescence skipped this move because they could not raise alpha */
+    public long getDeltaPruned() { return search.getDeltaPruned(); }
+    /** @return Captures quiescence skipped this move because SEE says they lose material */
+    public long getSeeSkipped() { return search.getSeeSkipped(); }
+    /** @return Plies searched by the last completed iteration */
+    public int getCompletedDepth() { return completedDepth; }
 
     public ComputerPlayer(Game game) {
         this.game       = game;
-        this.side       = game.humanPlayersSide().opposite();
-        this.search     = new Search(side);
+        this.table      = sharedTable != null ? sharedTable : new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+        this.search     = new Search(Search.DEFAULT_MAX_PLY, table);
         this.topMoves   = IntStream.range(0, 10).mapToObj(it->new MoveInfo()).toArray(MoveInfo[]::new);
     }
+    /**
+     * Transposition table for ComputerPlayers created after this to share, which may be
+     * a persistent one. See TranspositionTable.open()
+     */
+    public static void setTable(TranspositionTable table) {
+        sharedTable = table;
+    }
+    /** Thinking time per move unless a clock is set */
+    public static void setMoveTime(long ms) {
+        moveTimeMs = ms;
+    }
+    /**
+     * Budget the next move from a clock instead of the fixed move time.
+     * @param movesToGo Moves until the next time control or 0 if unknown
+     */
+    public void setClock(long remainingMs, long incrementMs, int movesToGo) {
+        this.clockMs     = remainingMs;
+        this.incrementMs = incrementMs;
+        this.movesToGo   = movesToGo;
+    }
     public void yourMove() {
         //System.out.println("Computer player's move");
 
@@ -67,62 +105,113 @@ final public class ComputerPlayer {
         // The updateForeground thread will pick this up next time it comes round.
         game.setComputersMove(move);
     }
+    /**
+     * Iterative deepening over the root moves. Each iteration searches the moves in the order
+     * of the previous iteration's scores. An iteration cut short by the time manager is thrown
+     * away so the move played always comes from the last completed iteration. The first
+     * iteration is never cut short.
+     */
     private void search() {
 
-        game.getPosition().copyTo(position);
+        position = backend.copyOf(game.getPosition());
+
+        if(clockMs >= 0) {
+            timer.startClock(clockMs, incrementMs, movesToGo);
+        } else {
+            timer.startMove(moveTimeMs);
+        }
+        table.newSearch();
+        search.newSearch();
+        completedDepth = 0;
 
         // Get all available moves
-        var moveGen = new MoveGenerator();
+        var moveGen = backend.newGenerator();
         moveGen.generateForPosition(position, false);
+        var numMoves = moveGen.numMoves();
+        var moves    = Arrays.copyOf(moveGen.moves(), numMoves);
+        var scores   = new float[numMoves];
 
-        if(moveGen.numMoves==0) {
+        if(numMoves==0) {
             throw new RuntimeException("No moves - we shouldn't get here");
         }
-        //System.out.println("We have "+moveGen.numMoves+" initial moves");
+        //System.out.println("We have "+numMoves+" initial moves");
 
         // Only 1 possible move available
-        if(moveGen.numMoves==1) {
-            makeMove(moveGen.moves[0]);
+        if(numMoves==1) {
+            makeMove(moves[0]);
             return;
         }
 
-        // More than 1 possible move. Evaluate them all
-        float bestScore         = Float.NEGATIVE_INFINITY;
-        float alpha             = Float.NEGATIVE_INFINITY;
-        int bestMoveIndex       = 0;
-        int depth               = 3;
+        // More than 1 possible move. Deepen until out of time
+        int bestMove = moves[0];
+
+        for(int depth = 1; depth <= MAX_DEPTH; depth++) {
+            float alpha = Float.NEGATIVE_INFINITY;
+            int i;
 
-        // todo - Parallelise this
-        // todo - Each thread will need own Search instance and position
-        for(int i=0; i<moveGen.numMoves; i++) {
+            // Depth 1 always completes so even a tiny budget plays a searched move rather
+            // than the first one generated
+            search.setTimeManager(depth == 1 ? null : timer);
 
-            position.applyMove(moveGen.moves[i]);
-            float score = -search.getScore(position, depth, alpha);
-            position.undoMove();
+            // todo - Parallelise this
+            // todo - Each thread will need own Search instance and position
+            for(i=0; i<numMoves; i++) {
 
-            movePositionsEvaluated += search.getPositionsEvaluated();
+                position.applyMove(moves[i]);
+                float score = -search.getScore(position, depth - 1, alpha);
+                position.undoMove();
 
-            if(score > alpha) {
-                alpha = score;
+                movePositionsEvaluated += search.getPositionsEvaluated();
+                if(search.isAborted()) break;
 
-                if(score > bestScore) {
-                    bestScore = score;
-                    bestMoveIndex = i;
+                scores[i] = score;
+                if(score > alpha) {
+                    alpha = score;
                 }
+                //System.out.println("Move["+i+"]: "+Move.toString(moves[i])+" score="+score+" alpha="+alpha);
             }
+            if(i < numMoves) break;
 
-            updateTopMoves(moveGen.moves[i], score);
+            // Moves that failed low only have an upper bound but still keep their relative order
+            sortByScore(moves, scores, numMoves);
+            bestMove       = moves[0];
+            completedDepth = depth;
+            publishTopMoves(moves, scores, numMoves);
 
-            //System.out.println("Move["+i+"]: "+Move.toString(moveGen.moves[i])+" score="+score+" alpha="+alpha);
+            // Stop once a mate is found or there is no time for another iteration
+            if(Search.isMateScore(scores[0]) || timer.iterationDone(bestMove)) break;
         }
 
         gamePositionsEvaluated += movePositionsEvaluated;
 
-        makeMove(moveGen.moves[bestMoveIndex]);
+        makeMove(bestMove);
 
-        //System.out.println("Highest score = "+bestScore);
+        //System.out.println("Depth "+completedDepth+" in "+timer.elapsedMs()+"ms");
         //System.out.println("Positions evaluated = "+movePositionsEvaluated);
     }
+    /** Stable insertion sort, highest score first */
+    private static void sortByScore(int[] moves, float[] scores, int count) {
+        for(int i = 1; i < count; i++) {
+            var move  = moves[i];
+            var score = scores[i];
+            var j     = i - 1;
+            while(j >= 0 && scores[j] < score) {
+                moves[j + 1]  = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1]  = move;
+            scores[j + 1] = score;
+        }
+    }
+    private void publishTopMoves(int[] moves, float[] scores, int count) {
+        synchronized(topMovesLock) {
+            topMovesIndex = 0;
+            for(int i = 0; i < count; i++) {
+                updateTopMoves(moves[i], scores[i]);
+            }
+        }
+    }
     private void updateTopMoves(int move, float score) {
         synchronized(topMovesLock) {
             if(topMovesIndex < topMoves.length) {
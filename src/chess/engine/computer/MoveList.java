@@ -0,0 +1,63 @@
+package chess.engine.computer;
+
+import java.util.Arrays;
+
+/**
+ * Moves with an ordering score alongside each one.
+ * Allocated once per ply and reused so the search does not allocate.
+ */
+final public class MoveList {
+    public static final int DEFAULT_CAPACITY = 256;   // more than the maximum legal moves in a position (218)
+
+    private final int[] moves;
+    private final int[] scores;
+    private int size;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+    public MoveList(int capacity) {
+        this.moves  = new int[capacity];
+        this.scores = new int[capacity];
+    }
+    public int size() {
+        return size;
+    }
+    public void clear() {
+        size = 0;
+    }
+    public void add(int move, int score) {
+        moves[size]  = move;
+        scores[size] = score;
+        size++;
+    }
+    /** Append count moves with a score of 0 */
+    public void addAll(int[] src, int count) {
+        System.arraycopy(src, 0, moves, size, count);
+        Arrays.fill(scores, size, size + count, 0);
+        size += count;
+    }
+    public int move(int index) {
+        return moves[index];
+    }
+    public void setScore(int index, int score) {
+        scores[index] = score;
+    }
+    /**
+     * Selection sort one step. Swap the highest scoring move at or after index
+     * into index and return it. Only the moves actually tried get sorted.
+     */
+    public int pickBest(int index) {
+        var best = index;
+        for(int i = index + 1; i < size; i++) {
+            if(scores[i] > scores[best]) best = i;
+        }
+        var move      = moves[best];
+        var score     = scores[best];
+        moves[best]   = moves[index];
+        scores[best]  = scores[index];
+        moves[index]  = move;
+        scores[index] = score;
+        return move;
+    }
+}
@@ -0,0 +1,171 @@
+package chess.engine.computer;
+
+import chess.engine.Backend;
+import chess.engine.Board;
+import chess.engine.Generator;
+import chess.engine.Move;
+import chess.engine.Piece;
+
+/**
+ * Returns the moves of a position one at a time, generating them in stages
+ * so that a cutoff on an early move avoids generating the rest.
+ *
+ * Stages:
+ *  1. Hash move
+ *  2. Winning and equal captures, promotions (best MVV-LVA first)
+ *  3. Killer moves
+ *  4. Quiet moves (best history score first)
+ *  5. Losing captures (SEE < 0)
+ *
+ * initQuiescence() only runs stage 2 and drops the losing captures.
+ */
+final public class MovePicker {
+    private static final int STAGE_HASH           = 0;
+    private static final int STAGE_GEN_CAPTURES   = 1;
+    private static final int STAGE_GOOD_CAPTURES  = 2;
+    private static final int STAGE_KILLERS        = 3;
+    private static final int STAGE_GEN_QUIETS     = 4;
+    private static final int STAGE_QUIETS         = 5;
+    private static final int STAGE_BAD_CAPTURES   = 6;
+    private static final int STAGE_DONE           = 7;
+
+    private Generator<Board> gen = Backend.current().newGenerator();
+    private MoveList captures    = new MoveList();
+    private MoveList badCaptures = new MoveList();
+    private MoveList quiets      = new MoveList();
+    private int[] history;              // butterfly table, see Search.historyIndex()
+
+    private Board pos;
+    private int hashMove;
+    private int[] killers = new int[2];
+    private int stage;
+    private int index;
+    private boolean quiescence;
+    private int seeSkipped;
+
+    /** @param history Quiet move scores indexed by Search.historyIndex(). Shared with the search */
+    public MovePicker(int[] history) {
+        this.history = history;
+    }
+    /** @return Losing captures dropped since the last resetSeeSkipped() */
+    public int getSeeSkipped() { return seeSkipped; }
+    public void resetSeeSkipped() { seeSkipped = 0; }
+
+    /**
+     * @param hashMove The best move from a previous search of this position or 0
+     * @param killer1  A quiet move that caused a cutoff at this ply or 0
+     * @param killer2  Another quiet move that caused a cutoff at this ply or 0
+     */
+    public void init(Board pos, int hashMove, int killer1, int killer2) {
+        this.pos        = pos;
+        this.hashMove   = hashMove;
+        this.killers[0] = killer1;
+        this.killers[1] = killer2 != killer1 ? killer2 : 0;
+        this.stage      = STAGE_HASH;
+        this.index      = 0;
+        this.quiescence = false;
+        badCaptures.clear();
+    }
+    /**
+     * Captures, en passant and promotions only, best MVV-LVA first.
+     * Captures that lose material (SEE < 0) are skipped
+     */
+    public void initQuiescence(Board pos) {
+        init(pos, 0, 0, 0);
+        this.stage      = STAGE_GEN_CAPTURES;
+        this.quiescence = true;
+    }
+    /**
+     * @return The next legal move or 0 if there are no more
+     */
+    public int next() {
+        while(true) {
+            switch(stage) {
+                case STAGE_HASH:
+                    stage = STAGE_GEN_CAPTURES;
+                    // A hash or killer move may come from a different position
+                    if(hashMove != 0 && pos.isLegal(hashMove)) return hashMove;
+                    hashMove = 0;
+                    break;
+                case STAGE_GEN_CAPTURES:
+                    gen.generateCaptures(pos);
+                    captures.clear();
+                    captures.addAll(gen.moves(), gen.numMoves());
+                    scoreCaptures();
+                    index = 0;
+                    stage = STAGE_GOOD_CAPTURES;
+                    break;
+                case STAGE_GOOD_CAPTURES:
+                    while(index < captures.size()) {
+                        var move = captures.pickBest(index++);
+                        if(move == hashMove) continue;
+
+                        // Defer captures that lose material
+                        if(Move.captureCode(move) != 0 && !Move.isPromotion(move) &&
+                           Piece.material(Move.captureCode(move)) < Piece.material(Move.pieceCode(move)) &&
+                           pos.see(move) < 0)
+                        {
+                            if(quiescence) {
+                                seeSkipped++;
+                            } else {
+                                badCaptures.add(move, 0);
+                            }
+                            continue;
+                        }
+                        return move;
+                    }
+                    index = 0;
+                    stage = quiescence ? STAGE_DONE : STAGE_KILLERS;
+                    break;
+                case STAGE_KILLERS:
+                    while(index < killers.length) {
+                        var move = killers[index++];
+                        if(move != 0 && move != hashMove && Move.isQuiet(move) && pos.isLegal(move)) return move;
+                        killers[index - 1] = 0;
+                    }
+                    stage = STAGE_GEN_QUIETS;
+                    break;
+                case STAGE_GEN_QUIETS:
+                    gen.generateQuiets(pos);
+                    quiets.clear();
+                    quiets.addAll(gen.moves(), gen.numMoves());
+                    scoreQuiets();
+                    index = 0;
+                    stage = STAGE_QUIETS;
+                    break;
+                case STAGE_QUIETS:
+                    while(index < quiets.size()) {
+                        var move = quiets.pickBest(index++);
+                        if(move != hashMove && move != killers[0] && move != killers[1]) return move;
+                    }
+                    index = 0;
+                    stage = STAGE_BAD_CAPTURES;
+                    break;
+                case STAGE_BAD_CAPTURES:
+                    if(index < badCaptures.size()) return badCaptures.move(index++);
+                    stage = STAGE_DONE;
+                    break;
+                default:
+                    return 0;
+            }
+        }
+    }
+    //===============================================================================
+    /** Most valuable victim, least valuable attacker. Promotions by promoted piece */
+    private void scoreCaptures() {
+        for(int i = 0; i < captures.size(); i++) {
+            var move  = captures.move(i);
+            var score = Piece.material(Move.captureCode(move)) * 16 - Math.min(Piece.material(Move.pieceCode(move)), 15);
+            if(Move.isPromotion(move)) {
+                score += Piece.material(Move.promotionCode(move)) * 16;
+            }
+            captures.setScore(i, score);
+        }
+    }
+    private void scoreQuiets() {
+        var side = pos.sideToMoveCode();
+        for(int i = 0; i < quiets.size(); i++) {
+            quiets.setScore(i, history[Search.historyIndex(side, quiets.move(i))]);
+        }
+    }
+}
@@ -1,102 +1,285 @@
 package chess.engine.computer;
 
-import chess.engine.Side;
-import chess.engine.byteboard.MoveGenerator;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
+import chess.engine.Move;
+import chess.engine.Piece;
 import chess.engine.computer.eval.Evaluator;
 
 /**
- * Negamax with alpha-beta pruning.
+ * Negamax with alpha-beta pruning, then a quiescence search of captures and promotions
+ * so that positions are not evaluated in the middle of an exchange.
  */
 final public class Search {
-    private static final int SEARCH_DEPTH            = 3;
-    private static final int QUIESCENCE_SEARCH_DEPTH = -1; // -4;
+    private static final int QUIESCENCE_SEARCH_DEPTH = -8;  // positions this deep into quiescence are evaluated
+    private static final float DELTA_MARGIN          = 2;   // positional gain a capture might bring beyond its material
+    public static final int DEFAULT_MAX_PLY          = 64;
+    private static final float DRAW_SCORE            = 0;
+    private static final float MATE_SCORE            = 10000;   // less the ply of the mate so nearer mates score higher
+    private static final float MATE_THRESHOLD        = MATE_SCORE - 1000;
 
-    private Side computerSide;
+    private TranspositionTable table;
     private int positionsEvaluated;
+    private int tableHits;
     private int mateIn;
+    private TimeManager timer;          // null for no time limit
+    private boolean aborted;
+    private long nodes;
+    private long quiescenceNodes;
+    private long deltaPruned;
+    private long pathDraws;             // repetition and fifty move draws scored. Those scores depend on the path
+
+    // Move ordering
+    private int[][] killers;                        // 2 quiet moves per ply that caused a cutoff
+    private int[] history = new int[2 * 64 * 64];   // side, from, to. Raised by depth² on a quiet cutoff
+    private long cutoffs, firstMoveCutoffs;
     private Evaluator evaluator = new Evaluator();
-    private MoveGenerator[] moveGenerators = new MoveGenerator[11];
+    private MovePicker[] movePickers;   // one per ply
 
     public int getPositionsEvaluated() { return positionsEvaluated; }
+    public int getTableHits() { return tableHits; }
+    public long getQuiescenceNodes() { return quiescenceNodes; }
+    public long getDeltaPruned() { return deltaPruned; }
+    /** @return The fraction of beta cutoffs caused by the first move searched. A measure of move ordering */
+    public float getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (float)firstMoveCutoffs / cutoffs;
+    }
+    /** @return Losing captures not searched by quiescence */
+    public long getSeeSkipped() {
+        long n = 0;
+        for(var p : movePickers) n += p.getSeeSkipped();
+        return n;
+    }
+    /** @return true if the last getScore() ran out of time. Its score is meaningless */
+    public boolean isAborted() { return aborted; }
+    public void setTimeManager(TimeManager timer) { this.timer = timer; }
+    /** @return true if score is a forced mate for either side */
+    public static boolean isMateScore(float score) { return Math.abs(score) > MATE_THRESHOLD; }
 
-    public Search(Side computerSide) {
-        this.computerSide = computerSide;
+    public Search() {
+        this(DEFAULT_MAX_PLY, new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB));
+    }
+    /**
+     * @param maxPly Deepest ply the search can reach. Positions at this ply are evaluated
+     * @param table  May be shared with other searches
+     */
+    public Search(int maxPly, TranspositionTable table) {
+        this.table        = table;
+        this.movePickers  = new MovePicker[maxPly];
+        this.killers      = new int[maxPly][2];
 
-        for(int i=0; i<moveGenerators.length; i++) {
-            moveGenerators[i] = new MoveGenerator();
+        for(int i=0; i<movePickers.length; i++) {
+            movePickers[i] = new MovePicker(history);
         }
     }
+    /**
+     * Call before searching a new game move. Killers are forgotten and history
+     * scores halved so the last move's results still count but less. The statistics restart
+     */
+    public void newSearch() {
+        for(var k : killers) {
+            k[0] = k[1] = 0;
+        }
+        for(int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+        for(var p : movePickers) {
+            p.resetSeeSkipped();
+        }
+        cutoffs          = 0;
+        firstMoveCutoffs = 0;
+        quiescenceNodes  = 0;
+        deltaPruned      = 0;
+    }
+    static int historyIndex(int side, int move) {
+        return (side << 12) | (Move.from(move) << 6) | Move.to(move);
+    }
     /**
      * @param pos
      * @param alpha
      * @param depth
      * @return
      */
-    public float getScore(Position pos, int depth, float alpha) {
+    public float getScore(Board pos, int depth, float alpha) {
         positionsEvaluated = 0;
+        tableHits          = 0;
         mateIn             = Integer.MAX_VALUE;
-        return search(pos, depth, Float.NEGATIVE_INFINITY, -alpha);
+        aborted            = false;
+        return search(pos, depth, 0, Float.NEGATIVE_INFINITY, -alpha);
     }
 
     /**
      * @param alpha represents current player best score
      * @param beta  represents previous player best score
      */
-    private float search(Position pos, int depth, float alpha, float beta) {
-        if(depth<=0) {
-            return evaluate(pos);
+    private float search(Board pos, int depth, int ply, float alpha, float beta) {
+        // Checking the clock is not free so only look every 1024 nodes
+        if((++nodes & 1023) == 0 && timer != null && timer.isHardLimitReached()) {
+            aborted = true;
         }
+        if(aborted) return 0;
 
-        var gen = moveGenerators[depth+5]; // allow room for quiescence search
-        gen.generateForPosition(pos, false);
-        //System.out.println("\t["+depth+"] numMoves="+gen.numMoves);
+        // A position seen before can be repeated again so call it a draw straight away
+        if(pos.halfMoveClock() >= 100 || pos.isRepetition(2)) {
+            pathDraws++;
+            return DRAW_SCORE;
+        }
+        if(ply>=movePickers.length) {
+            return evaluate(pos);
+        }
+        if(depth<=0) {
+            return quiesce(pos, 0, ply, alpha, beta);
+        }
 
-        if(gen.numMoves==0) {
-            if(pos.isCheck()) {
-                // Checkmate
-                return -(9999 + depth);
-            } else {
-                // Stalemate
-
-                // Crude estimate of who is in front
-                boolean computerIsWinning = pos.getMaterialValue(computerSide) >
-                                            pos.getMaterialValue(computerSide.opposite());
-                if(computerIsWinning) {
-                    // computer is winning - avoid stalemate
-                    return 50;
-                }
-                // player is winning - encourage stalemate
-                return -50;
+        // A deep enough earlier result may settle this position. Otherwise try its best move first
+        var key   = pos.zobrist();
+        var entry = table.probe(key);
+        if(entry != 0 && TranspositionTable.depth(entry) >= depth) {
+            var score = fromTable(TranspositionTable.score(entry), ply);
+            var bound = TranspositionTable.bound(entry);
+            if(bound == TranspositionTable.EXACT ||
+               bound == TranspositionTable.LOWER && score >= beta ||
+               bound == TranspositionTable.UPPER && score <= alpha)
+            {
+                tableHits++;
+                return score;
             }
         }
 
-        for(int i = 0; i < gen.numMoves; i++) {
-            var move = gen.moves[i];
+        // Moves are generated lazily so a cutoff skips generating the rest
+        var picker = movePickers[ply];
+        picker.init(pos, TranspositionTable.move(entry), killers[ply][0], killers[ply][1]);
+
+        int move;
+        int numMoves   = 0;
+        int bestMove   = 0;
+        var startAlpha = alpha;
+        var startDraws = pathDraws;
+        while((move = picker.next()) != 0) {
+            numMoves++;
             pos.applyMove(move);
-            var score = -search(pos, depth-1, -beta, -alpha);
+            var score = -search(pos, depth-1, ply+1, -beta, -alpha);
             pos.undoMove();
-            //System.out.println("\tMove["+i+"]: "+Move.toString(move)+" score:"+score+" alpha:"+alpha+" beta:"+beta);
+            if(aborted) return 0;
+            //System.out.println("\tMove: "+Move.toString(move)+" score:"+score+" alpha:"+alpha+" beta:"+beta);
 
             if(score >= beta) {
                 // beta cutoff
-                //System.out.println("\tBeta butoff");
-//                if(USE_KILLERMOVE) {
-//                    killerMoves.addMove(m, depth);
-//                }
+                cutoffs++;
+                if(numMoves == 1) firstMoveCutoffs++;
+                if(Move.isQuiet(move)) addKiller(pos, move, depth, ply);
+                if(pathDraws == startDraws) {
+                    table.store(key, move, toTable(score, ply), depth, TranspositionTable.LOWER);
+                }
                 return score;
             }
             if(score > alpha) {
-                alpha = score;
+                alpha    = score;
+                bestMove = move;
                 //if(p.whiteToMove && p.moveHistory[0] == 49972 /*&& p.moveHistory[1]==287499*/) {
                 //	trace("[alpha "+alpha+" - "+(p.whiteToMove?"black":"white")+" maximising] best move = " + p);
                 //}
             }
         }
 
+        if(numMoves==0) {
+            if(pos.isCheck()) {
+                // Checkmate
+                return -(MATE_SCORE - ply);
+            } else {
+                // Stalemate. Scored the same whichever side the computer plays since the
+                // table, which may be persistent, is shared between them
+                return DRAW_SCORE;
+            }
+        }
+
+        // A draw by repetition below this position need not happen when it is reached by another path
+        if(pathDraws == startDraws) {
+            table.store(key, bestMove, toTable(alpha, ply), depth,
+                        alpha > startAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER);
+        }
         return alpha;
     }
-    private float evaluate(Position pos) {
+    /** Mate scores are stored as distance from the position rather than from the root */
+    private static float toTable(float score, int ply) {
+        if(score >  MATE_THRESHOLD) return score + ply;
+        if(score < -MATE_THRESHOLD) return score - ply;
+        return score;
+    }
+    private static float fromTable(float score, int ply) {
+        if(score >  MATE_THRESHOLD) return score - ply;
+        if(score < -MATE_THRESHOLD) return score + ply;
+        return score;
+    }
+    /**
+     * Captures, en passant and promotions only, best MVV-LVA first, until the position is quiet.
+     * The side to move can stand pat on the static evaluation instead of capturing.
+     * Captures that can't raise alpha even by winning the piece (delta pruning) or that lose
+     * material by SEE are skipped. When in check all evasions are searched instead.
+     */
+    private float quiesce(Board pos, int depth, int ply, float alpha, float beta) {
+        quiescenceNodes++;
+        if((++nodes & 1023) == 0 && timer != null && timer.isHardLimitReached()) {
+            aborted = true;
+        }
+        if(aborted) return 0;
+
+        if(depth<=QUIESCENCE_SEARCH_DEPTH || ply>=movePickers.length) {
+            return evaluate(pos);
+        }
+
+        var inCheck  = pos.isCheck();
+        var standPat = Float.NEGATIVE_INFINITY;
+        var picker   = movePickers[ply];
+        if(inCheck) {
+            picker.init(pos, 0, 0, 0);
+        } else {
+            standPat = evaluate(pos);
+            if(standPat >= beta) return standPat;
+            if(standPat > alpha) alpha = standPat;
+            picker.initQuiescence(pos);
+        }
+
+        int move;
+        int numMoves = 0;
+        while((move = picker.next()) != 0) {
+            numMoves++;
+            if(!inCheck && !Move.isPromotion(move) &&
+               standPat + Piece.material(Move.captureCode(move)) + DELTA_MARGIN <= alpha)
+            {
+                deltaPruned++;
+                continue;
+            }
+            pos.applyMove(move);
+            var score = -quiesce(pos, depth-1, ply+1, -beta, -alpha);
+            pos.undoMove();
+            if(aborted) return 0;
+
+            if(score >= beta) return score;
+            if(score > alpha) alpha = score;
+        }
+
+        // Checkmate
+        if(inCheck && numMoves==0) return -(MATE_SCORE - ply);
+
+        return alpha;
+    }
+    /** Remember a quiet move that caused a cutoff for ordering sibling and later positions */
+    private void addKiller(Board pos, int move, int depth, int ply) {
+        var k = killers[ply];
+        if(k[0] != move) {
+            k[1] = k[0];
+            k[0] = move;
+        }
+        var i = historyIndex(pos.sideToMoveCode(), move);
+        history[i] += depth * depth;
+        if(history[i] > 1 << 24) {
+            // Keep the scores in range while preserving their order
+            for(int j = 0; j < history.length; j++) {
+                history[j] >>= 1;
+            }
+        }
+    }
+    private float evaluate(Board pos) {
 
         positionsEvaluated++;
         float eval =  evaluator.evaluate(pos);
@@ -0,0 +1,64 @@
+package chess.engine.computer;
+
+/**
+ * Decides how long the computer thinks about a move.
+ *
+ * The soft limit is checked between iterations of the iterative deepening loop: no new
+ * iteration is started once it has passed. It shrinks while the best move stays the same
+ * and grows when it keeps changing. The hard limit is checked inside the search which
+ * abandons the current iteration once it has passed.
+ */
+final public class TimeManager {
+    private static final long SAFETY_MARGIN_MS = 20;    // for returning the move once stopped
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+
+    private long start;
+    private long soft;          // ns after start
+    private long hard;          // ns after start
+    private int lastBestMove;
+    private int stableIterations;
+
+    /** Think for about budgetMs and never more */
+    public void startMove(long budgetMs) {
+        var budget = Math.max(1, budgetMs - SAFETY_MARGIN_MS);
+        start(budget / 2, budget);
+    }
+    /**
+     * Share the remaining clock time between the remaining moves.
+     * @param movesToGo Moves until the next time control or 0 if unknown
+     */
+    public void startClock(long remainingMs, long incrementMs, int movesToGo) {
+        var remaining = Math.max(1, remainingMs - SAFETY_MARGIN_MS);
+        var moves     = movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO;
+        var target    = remaining / moves + incrementMs * 3 / 4;
+        var hard      = Math.max(1, Math.min(target * 4, remaining / 3));
+        start(Math.min(target, hard / 2), hard);
+    }
+    public long elapsedMs() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+    /** Called from the search to abandon the current iteration */
+    public boolean isHardLimitReached() {
+        return System.nanoTime() - start >= hard;
+    }
+    /**
+     * Called after each completed iteration.
+     * @return true if there is not enough time left to start another
+     */
+    public boolean iterationDone(int bestMove) {
+        stableIterations = bestMove == lastBestMove ? stableIterations + 1 : 0;
+        lastBestMove     = bestMove;
+
+        var scale = stableIterations >= 3 ? 0.5 :
+                    stableIterations >= 1 ? 0.8 : 1.2;
+        return System.nanoTime() - start >= (long)(soft * scale);
+    }
+    //===============================================================================
+    private void start(long softMs, long hardMs) {
+        this.start            = System.nanoTime();
+        this.soft             = softMs * 1_000_000;
+        this.hard             = hardMs * 1_000_000;
+        this.lastBestMove     = 0;
+        this.stableIterations = 0;
+    }
+}
@@ -0,0 +1,237 @@
+package chess.engine.computer;
+
+import chess.engine.Zobrist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Fixed size hash of search results keyed by zobrist key.
+ *
+ * Each entry is two longs: the data and the key XOR the data. A reader only accepts an entry
+ * if the XOR gives back its key so a torn write from another thread just looks like a miss.
+ * This lets several searches share one table without locks.
+ *
+ * Entries are in buckets of 2. The first slot keeps the deepest result (unless it is from an
+ * older search), the second is always replaced.
+ *
+ * The table is either on the heap or, with open(), a memory mapped file so results survive
+ * restarts and can be shared between engine processes on the same machine. The file starts
+ * with a HEADER_BYTES header:
+ *      magic, version, Zobrist.SEED, Zobrist.BLACK_TO_MOVE, number of buckets, age
+ * Files that do not match this build are rejected.
+ *
+ *  Data bits
+ *  -----------------------
+ *   0 - 31  score          (float bits)
+ *  32 - 52  best move      (21 bits, see Move. 0 if none)
+ *  53 - 58  depth          (6 bits)
+ *  59 - 60  bound          (2 bits)
+ *  61 - 63  age            (3 bits)
+ */
+final public class TranspositionTable {
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    // Bounds
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;   // score >= value (beta cutoff)
+    public static final int UPPER = 3;   // score <= value (failed low)
+
+    private static final int MOVE_SHIFT   = 32;
+    private static final int DEPTH_SHIFT  = 53;
+    private static final int BOUND_SHIFT  = 59;
+    private static final int AGE_SHIFT    = 61;
+    private static final long MOVE_MASK   = ((1L << 21) - 1) << MOVE_SHIFT;
+    private static final int MAX_DEPTH    = 63;
+
+    private static final int SLOT_LONGS   = 2;
+    private static final int BUCKET_LONGS = 2 * SLOT_LONGS;
+    private static final int BUCKET_BYTES = BUCKET_LONGS * Long.BYTES;
+    private static final int MAX_BUCKETS  = 1 << 25;   // 1 GB, so a file maps in one go
+
+    // File header
+    private static final long MAGIC        = 0x4348_4553_5354_5400L;   // "CHESSTT"
+    private static final long VERSION      = 1;
+    private static final int HEADER_BYTES  = 4096;     // keeps the table page aligned
+    private static final int H_MAGIC       = 0;
+    private static final int H_VERSION     = 8;
+    private static final int H_SEED        = 16;
+    private static final int H_KEY_CHECK   = 24;
+    private static final int H_BUCKETS     = 32;
+    private static final int H_AGE         = 40;
+
+    private final LongBuffer table;
+    private final int mask;                 // number of buckets - 1
+    private final MappedByteBuffer mapped;  // null if on the heap
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private int age;
+
+    /** @param sizeMB Rounded down to a power of 2 number of buckets */
+    public TranspositionTable(int sizeMB) {
+        this(LongBuffer.wrap(new long[buckets(sizeMB) * BUCKET_LONGS]), null, null, false);
+    }
+    private TranspositionTable(LongBuffer table, MappedByteBuffer mapped, FileChannel channel, boolean readOnly) {
+        this.table    = table;
+        this.mask     = table.capacity() / BUCKET_LONGS - 1;
+        this.mapped   = mapped;
+        this.channel  = channel;
+        this.readOnly = readOnly;
+        this.age      = mapped == null ? 0 : (int)mapped.getLong(H_AGE) & 7;
+    }
+    /**
+     * Open or create a table backed by a memory mapped file.
+     * An existing file keeps its own size.
+     *
+     * @param sizeMB   Size of a new file
+     * @param readOnly Probe only. Nothing is stored
+     * @throws IOException if the file can't be mapped or was written by an incompatible build
+     */
+    public static TranspositionTable open(Path file, int sizeMB, boolean readOnly) throws IOException {
+        var channel = readOnly ? FileChannel.open(file, READ) : FileChannel.open(file, READ, WRITE, CREATE);
+        try {
+            long buckets;
+            var create = channel.size() == 0;
+            if(create) {
+                if(readOnly) throw new IOException(file + " is empty");
+                buckets = buckets(sizeMB);
+            } else {
+                buckets = readHeader(channel, file);
+            }
+
+            var mode   = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            var mapped = channel.map(mode, 0, HEADER_BYTES + buckets * BUCKET_BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if(create) {
+                mapped.putLong(H_MAGIC, MAGIC)
+                      .putLong(H_VERSION, VERSION)
+                      .putLong(H_SEED, Zobrist.SEED)
+                      .putLong(H_KEY_CHECK, Zobrist.BLACK_TO_MOVE)
+                      .putLong(H_BUCKETS, buckets)
+                      .putLong(H_AGE, 0);
+            }
+            var table = mapped.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            return new TranspositionTable(table, mapped, channel, readOnly);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    /** Flush a mapped table to its file and close it. The table must not be used after this */
+    public void close() throws IOException {
+        if(channel == null) return;
+        if(!readOnly) mapped.force();
+        channel.close();
+    }
+    public boolean isMapped() {
+        return mapped != null;
+    }
+    public int sizeMB() {
+        return (int)((long)table.capacity() * Long.BYTES / (1024 * 1024));
+    }
+    /** Call before each new search so older entries are replaced first */
+    public void newSearch() {
+        age = (age + 1) & 7;
+        if(mapped != null && !readOnly) mapped.putLong(H_AGE, age);
+    }
+    public void clear() {
+        if(readOnly) return;
+        for(int i = 0; i < table.capacity(); i++) {
+            table.put(i, 0);
+        }
+    }
+    //===============================================================================
+    /**
+     * @return The entry data for key or 0 if not found. See score(), move(), depth() and bound()
+     */
+    public long probe(long key) {
+        var i = index(key);
+        var d = table.get(i + 1);
+        if((table.get(i) ^ d) == key) return d;
+
+        d = table.get(i + 3);
+        if((table.get(i + 2) ^ d) == key) return d;
+        return 0;
+    }
+    /**
+     * @param move  The best move found or 0. An existing move for this position is kept if 0
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int move, float score, int depth, int bound) {
+        if(readOnly) return;
+
+        var i  = index(key);
+        var d0 = table.get(i + 1);
+        var k0 = table.get(i) ^ d0;
+
+        // Depth preferred slot unless it holds a deeper result from this search
+        if(k0 != key && depth < depth(d0) && age(d0) == age) {
+            i += SLOT_LONGS;
+            d0 = table.get(i + 1);
+            k0 = table.get(i) ^ d0;
+        }
+        if(move == 0 && k0 == key) move = move(d0);
+
+        var data = (Float.floatToRawIntBits(score) & 0xffff_ffffL) |
+                   ((long)move << MOVE_SHIFT) |
+                   ((long)Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT) |
+                   ((long)bound << BOUND_SHIFT) |
+                   ((long)age << AGE_SHIFT);
+        table.put(i + 1, data);
+        table.put(i, key ^ data);
+    }
+    //===============================================================================
+    public static float score(long data) {
+        return Float.intBitsToFloat((int)data);
+    }
+    public static int move(long data) {
+        return (int)((data & MOVE_MASK) >>> MOVE_SHIFT);
+    }
+    public static int depth(long data) {
+        return (int)(data >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+    public static int bound(long data) {
+        return (int)(data >>> BOUND_SHIFT) & 3;
+    }
+    private static int age(long data) {
+        return (int)(data >>> AGE_SHIFT);
+    }
+    //===============================================================================
+    private int index(long key) {
+        return ((int)key & mask) * BUCKET_LONGS;
+    }
+    private static int buckets(int sizeMB) {
+        var buckets = Long.highestOneBit(Math.max(1, (long)sizeMB * 1024 * 1024 / BUCKET_BYTES));
+        return (int)Math.min(buckets, MAX_BUCKETS);
+    }
+    /** @return The number of buckets */
+    private static long readHeader(FileChannel channel, Path file) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining() && channel.read(header, header.position()) > 0) {}
+        if(header.hasRemaining() || header.getLong(H_MAGIC) != MAGIC) {
+            throw new IOException(file + " is not a transposition table");
+        }
+        if(header.getLong(H_VERSION) != VERSION) {
+            throw new IOException(file + " is version " + header.getLong(H_VERSION) + ", expected " + VERSION);
+        }
+        if(header.getLong(H_SEED) != Zobrist.SEED || header.getLong(H_KEY_CHECK) != Zobrist.BLACK_TO_MOVE) {
+            throw new IOException(file + " was written with different zobrist keys");
+        }
+        var buckets = header.getLong(H_BUCKETS);
+        if(buckets <= 0 || buckets > MAX_BUCKETS || Long.bitCount(buckets) != 1 ||
+           channel.size() != HEADER_BYTES + buckets * BUCKET_BYTES)
+        {
+            throw new IOException(file + " has the wrong size for " + buckets + " buckets");
+        }
+        return buckets;
+    }
+}
@@ -1,36 +1,51 @@
 package chess.engine.computer.eval;
 
-import chess.engine.Piece;
-import chess.engine.Side;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
+import chess.engine.bitboard.BitBoard;
 
 final public class BishopEvaluator {
+    private static final float MOBILITY_SCORE = 0.01f;
+    private int[] squares = new int[10];
 
-    public String toString(Position pos) {
+    public String toString(Board pos) {
         var buf = new StringBuilder("Bishops {");
 
         var total = evaluate(pos);
 
         buf.append(String.format("\n\tBack row ........ % 6.4f", evaluateBackRow(pos)));
+        buf.append(String.format("\n\tMobility ........ % 6.4f", evaluateMobility(pos)));
         buf.append(String.format("\n\tTotal ........... % 6.4f", total));
 
         return buf.append("\n}").toString();
     }
     /** From white's perspective */
-    public float evaluate(Position pos) {
-        return evaluateBackRow(pos);
+    public float evaluate(Board pos) {
+        return evaluateBackRow(pos) + evaluateMobility(pos);
     }
-    private float evaluateBackRow(Position pos) {
+    private float evaluateBackRow(Board pos) {
         float score = 0;
 
         // Penalise bishops still on back row
-        if(pos.pieceAt(2) == Piece.BISHOP && pos.sideAt(2)==Side.WHITE) score -= 0.1;
-        if(pos.pieceAt(5) == Piece.BISHOP && pos.sideAt(5)==Side.WHITE) score -= 0.1;
+        if(pos.squareContains(2, Board.BISHOP, Board.WHITE)) score -= 0.1;
+        if(pos.squareContains(5, Board.BISHOP, Board.WHITE)) score -= 0.1;
 
         var r = 7<<3;
-        if(pos.pieceAt(r+2) == Piece.BISHOP && pos.sideAt(r+2)==Side.BLACK) score += 0.1;
-        if(pos.pieceAt(r+5) == Piece.BISHOP && pos.sideAt(r+5)==Side.BLACK) score += 0.1;
+        if(pos.squareContains(r+2, Board.BISHOP, Board.BLACK)) score += 0.1;
+        if(pos.squareContains(r+5, Board.BISHOP, Board.BLACK)) score += 0.1;
 
         return score;
     }
+    private float evaluateMobility(Board pos) {
+        var occupied = pos.getOccupied();
+        float score  = 0;
+
+        // Number of squares attacked
+        var n = pos.getPiecePositions(Board.BISHOP, Board.WHITE, squares);
+        for(int i = 0; i < n; i++) score += Long.bitCount(BitBoard.bishopAttacks(squares[i], occupied));
+
+        n = pos.getPiecePositions(Board.BISHOP, Board.BLACK, squares);
+        for(int i = 0; i < n; i++) score -= Long.bitCount(BitBoard.bishopAttacks(squares[i], occupied));
+
+        return score * MOBILITY_SCORE;
+    }
 }
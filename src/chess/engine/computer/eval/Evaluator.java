@@ -1,8 +1,6 @@
 package chess.engine.computer.eval;
 
-import chess.engine.Side;
-import chess.engine.byteboard.Enprise;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
 
 final public class Evaluator {
     private static final float[] SQUARE_CONTROL_SCORES = new float[64];
@@ -34,7 +32,7 @@ final public class Evaluator {
         }
     }
 
-    public String toString(Position pos) {
+    public String toString(Board pos) {
         var buf = new StringBuilder("General {");
 
         preCalculate(pos);
@@ -46,7 +44,7 @@ final public class Evaluator {
         return buf.append("\n}").toString();
     }
 
-    public float evaluate(Position pos) {
+    public float evaluate(Board pos) {
         float score = 0;
 
         preCalculate(pos);
@@ -64,36 +62,39 @@ final public class Evaluator {
         score += kingEvaluator.evaluate(pos);
 
         // Negate the score if we are playing as black
-        if(pos.sideToMove()==Side.BLACK) {
+        if(pos.sideToMoveCode()==Board.BLACK) {
             score = -score;
         }
 
         return score;
     }
     //===========================================================================
-    private void preCalculate(Position pos) {
-        Enprise.getEnpriseBoard(pos, enpriseCache);
+    private void preCalculate(Board pos) {
+        pos.getEnpriseBoard(enpriseCache);
     }
-    private float getMaterialScore(Position pos) {
-        return pos.getMaterialValue(Side.WHITE) - pos.getMaterialValue(Side.BLACK);
+    private float getMaterialScore(Board pos) {
+        return pos.getMaterialValue(Board.WHITE) - pos.getMaterialValue(Board.BLACK);
     }
-    private float getSquareControlScore(Position pos) {
+    private float getSquareControlScore(Board pos) {
+        var white = pos.getAttacks(Board.WHITE);
+        var black = pos.getAttacks(Board.BLACK);
         float score = 0;
 
         for(int i = 0; i < 64; i++) {
-            var attackScore = (short)(enpriseCache[i] >> 16);
+            var bit = 1L << (i ^ 7);    // BitBoard layout
 
             // Add pressure on square
-            score += SQUARE_CONTROL_SCORES[i] * attackScore;
+            if((white & bit) != 0) score += SQUARE_CONTROL_SCORES[i];
+            if((black & bit) != 0) score -= SQUARE_CONTROL_SCORES[i];
 
             if(pos.isOccupied(i)) {
                 // Control the square by being on it
-                score += SQUARE_CONTROL_SCORES[i] * (pos.sideAt(i)==Side.WHITE ? 1 : -1);
+                score += SQUARE_CONTROL_SCORES[i] * (pos.sideCodeAt(i)==Board.WHITE ? 1 : -1);
             }
         }
         return score;
     }
-    private float getEnpriseScore(Position pos) {
+    private float getEnpriseScore(Board pos) {
         float score = 0;
         //var enemy = pos.sideToMove().opposite();
         for(int i = 0; i < 64; i++) {
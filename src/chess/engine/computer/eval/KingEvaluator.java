@@ -1,8 +1,6 @@
 package chess.engine.computer.eval;
 
-import chess.engine.Piece;
-import chess.engine.Side;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
 
 // Single threaded
 final public class KingEvaluator {
@@ -16,7 +14,7 @@ final public class KingEvaluator {
     private int whiteKingRank;
     private int blackKingRank;
 
-    public String toString(Position pos) {
+    public String toString(Board pos) {
         var s = pos.isEndGame() ? "(End game)" : "(Start/middle game)";
 
         var buf = new StringBuilder("Kings ").append(s).append(" {");
@@ -37,7 +35,7 @@ final public class KingEvaluator {
     }
 
     /** From white's perspective */
-    public float evaluate(Position pos) {
+    public float evaluate(Board pos) {
         float score = 0;
 
         preCalculate(pos);
@@ -60,15 +58,15 @@ final public class KingEvaluator {
         }
         return score;
     }
-    private void preCalculate(Position pos) {
-        whiteKingSq   = pos.getKingSquare(Side.WHITE);
-        blackKingSq   = pos.getKingSquare(Side.BLACK);
+    private void preCalculate(Board pos) {
+        whiteKingSq   = pos.getKingSquare(Board.WHITE);
+        blackKingSq   = pos.getKingSquare(Board.BLACK);
         whiteKingFile = whiteKingSq & 7;
         blackKingFile = blackKingSq & 7;
         whiteKingRank = whiteKingSq >>> 3;
         blackKingRank = blackKingSq >>> 3;
     }
-    private float evaluateKingPositionEndGame(Position pos) {
+    private float evaluateKingPositionEndGame(Board pos) {
         float score = 0;
 
         // Penalise being on back row to encourage the king into play
@@ -81,7 +79,7 @@ final public class KingEvaluator {
 
         return score;
     }
-    private float evaluateKingPosition(Position pos) {
+    private float evaluateKingPosition(Board pos) {
         float score = 0;
 
         // Encourage white king to be either on his own spot or castled
@@ -107,11 +105,11 @@ final public class KingEvaluator {
     /**
      * Encourage castling.
      */
-    private float evaluateCastling(Position pos) {
+    private float evaluateCastling(Board pos) {
         float score = 0;
 
-        if(pos.canCastle(Side.WHITE)) score -= 0.1;
-        if(pos.canCastle(Side.BLACK)) score += 0.1;
+        if(pos.canCastle(Board.WHITE)) score -= 0.1;
+        if(pos.canCastle(Board.BLACK)) score += 0.1;
 
         return score;
     }
@@ -121,28 +119,28 @@ final public class KingEvaluator {
      *  PPP
      *   K
      */
-    private float getPawnShieldScore(Position pos) {
+    private float getPawnShieldScore(Board pos) {
         float score = 0;
 
         // White
         if(whiteKingRank == 0) {
-            if(!pos.squareContains(whiteKingSq + 7, Piece.PAWN, Side.WHITE)) score -= 0.1;
-            if(!pos.squareContains(whiteKingSq + 8, Piece.PAWN, Side.WHITE)) score -= 0.1;
-            if(!pos.squareContains(whiteKingSq + 9, Piece.PAWN, Side.WHITE)) score -= 0.1;
+            if(!pos.squareContains(whiteKingSq + 7, Board.PAWN, Board.WHITE)) score -= 0.1;
+            if(!pos.squareContains(whiteKingSq + 8, Board.PAWN, Board.WHITE)) score -= 0.1;
+            if(!pos.squareContains(whiteKingSq + 9, Board.PAWN, Board.WHITE)) score -= 0.1;
         }
         // Black
         if(blackKingRank == 7) {
-            if(!pos.squareContains(blackKingSq - 7, Piece.PAWN, Side.BLACK)) score += 0.1;
-            if(!pos.squareContains(blackKingSq - 8, Piece.PAWN, Side.BLACK)) score += 0.1;
-            if(!pos.squareContains(blackKingSq - 9, Piece.PAWN, Side.BLACK)) score += 0.1;
+            if(!pos.squareContains(blackKingSq - 7, Board.PAWN, Board.BLACK)) score += 0.1;
+            if(!pos.squareContains(blackKingSq - 8, Board.PAWN, Board.BLACK)) score += 0.1;
+            if(!pos.squareContains(blackKingSq - 9, Board.PAWN, Board.BLACK)) score += 0.1;
         }
         return score;
     }
-    private float getTropismScore(Position pos) {
+    private float getTropismScore(Board pos) {
         float score = 0;
 
-        score += getTropismScore(pos, Side.WHITE);
-        score -= getTropismScore(pos, Side.BLACK);
+        score += getTropismScore(pos, Board.WHITE);
+        score -= getTropismScore(pos, Board.BLACK);
 
         return score;
     }
@@ -150,12 +148,12 @@ final public class KingEvaluator {
      * Sums distances between the king and opposing pieces.
      * The nearer the enemy pieces are the higher the score
      */
-    private float getTropismScore(Position pos, Side side) {
+    private float getTropismScore(Board pos, int side) {
         float score = 0;
 
         int kingFile = pos.getKingSquare(side) & 7;
         int kingRank = pos.getKingSquare(side) >>> 3;
-        int count    = pos.getPiecePositions(side.opposite(), positions);
+        int count    = pos.getPiecePositions(side ^ 1, positions);
 
         for(var i = 0; i < count; i++) {
             var sq   = positions[i];
@@ -164,7 +162,7 @@ final public class KingEvaluator {
             var distance = Math.min( Math.abs(kingFile - file), Math.abs(kingRank - rank) );
 
             score += TROPISM[distance];
-            if(pos.pieceAt(sq) == Piece.QUEEN) {
+            if(pos.pieceCodeAt(sq) == Board.QUEEN) {
                 // extra danger - double the score
                 score += TROPISM[distance];
             }
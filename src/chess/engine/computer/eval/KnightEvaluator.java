@@ -1,12 +1,10 @@
 package chess.engine.computer.eval;
 
-import chess.engine.Piece;
-import chess.engine.Side;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
 
 final public class KnightEvaluator {
 
-    public String toString(Position pos) {
+    public String toString(Board pos) {
         var buf = new StringBuilder("Knights {");
 
         var total = evaluate(pos);
@@ -18,19 +16,19 @@ final public class KnightEvaluator {
     }
 
     /** From white's perspective */
-    public float evaluate(Position pos) {
+    public float evaluate(Board pos) {
         return evaluateBackRow(pos);
     }
-    private float evaluateBackRow(Position pos) {
+    private float evaluateBackRow(Board pos) {
         float score = 0;
 
         // penalise knights still on back row
-        if(pos.pieceAt(1) == Piece.KNIGHT && pos.sideAt(1)== Side.WHITE) score -= 0.1;
-        if(pos.pieceAt(6) == Piece.KNIGHT && pos.sideAt(6)== Side.WHITE) score -= 0.1;
+        if(pos.squareContains(1, Board.KNIGHT, Board.WHITE)) score -= 0.1;
+        if(pos.squareContains(6, Board.KNIGHT, Board.WHITE)) score -= 0.1;
 
         var r = 7<<3;
-        if(pos.pieceAt(r+1) == Piece.KNIGHT && pos.sideAt(r+1)== Side.BLACK) score += 0.1;
-        if(pos.pieceAt(r+6) == Piece.KNIGHT && pos.sideAt(r+6)== Side.BLACK) score += 0.1;
+        if(pos.squareContains(r+1, Board.KNIGHT, Board.BLACK)) score += 0.1;
+        if(pos.squareContains(r+6, Board.KNIGHT, Board.BLACK)) score += 0.1;
 
         return score;
     }
@@ -1,8 +1,6 @@
 package chess.engine.computer.eval;
 
-import chess.engine.Piece;
-import chess.engine.Side;
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
 
 import java.util.Arrays;
 
@@ -22,7 +20,7 @@ final public class PawnEvaluator {
     private float passedPawnsScore;
     private float centralPawnsScore;
 
-    public String toString(Position pos) {
+    public String toString(Board pos) {
         var buf = new StringBuilder("Pawns {");
 
         var total = evaluate(pos);
@@ -58,7 +56,7 @@ final public class PawnEvaluator {
     }
 
     /** From white's perspective */
-    public float evaluate(Position pos) {
+    public float evaluate(Board pos) {
 
         preCalculate(pos);
 
@@ -81,13 +79,13 @@ final public class PawnEvaluator {
                passedPawnsScore +
                centralPawnsScore;
     }
-    private void preCalculate(Position pos) {
+    private void preCalculate(Board pos) {
         // Recalculate structure
         Arrays.fill(whitePawnsOnFile, 0);
         Arrays.fill(blackPawnsOnFile, 0);
 
-        numWhitePawns = pos.getPiecePositions(Piece.PAWN, Side.WHITE, whitePawnPositions);
-        numBlackPawns = pos.getPiecePositions(Piece.PAWN, Side.BLACK, blackPawnPositions);
+        numWhitePawns = pos.getPiecePositions(Board.PAWN, Board.WHITE, whitePawnPositions);
+        numBlackPawns = pos.getPiecePositions(Board.PAWN, Board.BLACK, blackPawnPositions);
 
         for(int i = 0; i < numWhitePawns; i++) {
             whitePawnsOnFile[whitePawnPositions[i] & 7]++;
@@ -96,14 +94,14 @@ final public class PawnEvaluator {
             blackPawnsOnFile[blackPawnPositions[i] & 7]++;
         }
     }
-    private float evaluateCentralPawns(Position pos) {
+    private float evaluateCentralPawns(Board pos) {
         float score = 0;
         // Lose points if central pawns have not moved
-        if(pos.squareContains(11, Piece.PAWN, Side.WHITE)) score -= 0.01;
-        if(pos.squareContains(12, Piece.PAWN, Side.WHITE)) score -= 0.01;
+        if(pos.squareContains(11, Board.PAWN, Board.WHITE)) score -= 0.01;
+        if(pos.squareContains(12, Board.PAWN, Board.WHITE)) score -= 0.01;
 
-        if(pos.squareContains(51, Piece.PAWN, Side.BLACK)) score += 0.01;
-        if(pos.squareContains(52, Piece.PAWN, Side.BLACK)) score += 0.01;
+        if(pos.squareContains(51, Board.PAWN, Board.BLACK)) score += 0.01;
+        if(pos.squareContains(52, Board.PAWN, Board.BLACK)) score += 0.01;
         return score;
     }
     private float evaluateDoubledPawns(int[] pawnsOnFile) {
@@ -1,15 +1,43 @@
 package chess.engine.computer.eval;
 
-import chess.engine.byteboard.Position;
+import chess.engine.Board;
+import chess.engine.bitboard.BitBoard;
 
 final public class QueenEvaluator {
+    private static final float MOBILITY_SCORE = 0.005f;
+    private int[] squares = new int[10];
 
     // todo
 
+    public String toString(Board pos) {
+        var buf = new StringBuilder("Queens {");
+
+        var total = evaluate(pos);
+
+        buf.append(String.format("\n\tMobility ........ % 6.4f", evaluateMobility(pos)));
+        buf.append(String.format("\n\tTotal ........... % 6.4f", total));
+
+        return buf.append("\n}").toString();
+    }
     /** From white's perspective */
-    public float evaluate(Position pos) {
+    public float evaluate(Board pos) {
         float score = 0;
 
+        score += evaluateMobility(pos);
+
         return score;
     }
+    private float evaluateMobility(Board pos) {
+        var occupied = pos.getOccupied();
+        float score  = 0;
+
+        // Number of squares attacked
+        var n = pos.getPiecePositions(Board.QUEEN, Board.WHITE, squares);
+        for(int i = 0; i < n; i++) score += Long.bitCount(BitBoard.queenAttacks(squares[i], occupied));
+
+        n = pos.getPiecePositions(Board.QUEEN, Board.BLACK, squares);
+        for(int i = 0; i < n; i++) score -= Long.bitCount(BitBoard.queenAttacks(squares[i], occupied));
+
+        return score * MOBILITY_SCORE;
+    }
 }
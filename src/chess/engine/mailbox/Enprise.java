@@ -0,0 +1,230 @@
+package chess.engine.mailbox;
+
+import chess.engine.Move;
+import chess.engine.Piece;
+
+import static chess.engine.mailbox.Position.*;
+
+/**
+ * Static exchange evaluation on the 10x12 board.
+ *
+ * Capturing pieces are lifted off the board as the exchange goes on so the next
+ * ray walk finds any slider behind them. The board is restored before returning.
+ */
+final public class Enprise {
+    static final int MAX_ATTACKERS = 20;    // 2 pawns, 8 knights, 8 rays and the king
+
+    /**
+     * Static exchange evaluation of a capture (or a quiet move to a possibly attacked square).
+     * Both sides recapture on the target square with their least valuable piece and
+     * may stop capturing at any point.
+     *
+     * @return The expected material gain for the side making the move
+     */
+    public static int see(Position pos, int move) {
+        var b        = pos.board;
+        var from     = TO_120[Move.from(move)];
+        var to       = TO_120[Move.to(move)];
+        var side     = b[from] >>> 3;
+        var attacker = b[from] & PIECE_MASK;
+        var gain     = pos.seeGain;
+        var saved    = pos.seeSaved;
+        int numSaved = 0;
+        int d        = 0;
+
+        gain[0] = Piece.material(b[to] & PIECE_MASK);
+        if(Move.flagCode(move) == Move.FLAG_ENPASSANT) {
+            var sq = side == WHITE ? to - UP : to + UP;
+            gain[0] = Piece.material(PAWN);
+            saved[numSaved++] = (sq << 5) | b[sq];
+            b[sq] = EMPTY;
+        }
+        saved[numSaved++] = (from << 5) | b[from];
+        b[from] = EMPTY;
+
+        var attackers = pos.seeAttackers;
+        while(true) {
+            d++;
+            side ^= 1;
+            // Score if the piece on the target square is taken
+            gain[d] = Piece.material(attacker) - gain[d-1];
+
+            if(getAttackers(b, to, side, attackers) == 0) break;
+
+            var sq   = attackers[0];
+            attacker = b[sq] & PIECE_MASK;
+            saved[numSaved++] = (sq << 5) | b[sq];
+            b[sq] = EMPTY;
+        }
+        restore(b, saved, numSaved);
+
+        while(--d > 0) {
+            gain[d-1] = -Math.max(-gain[d-1], gain[d]);
+        }
+        return gain[0];
+    }
+    /**
+     * Each value is (sum of attacks << 16) | (material sum of attacks).
+     * See Board.getEnpriseBoard for the attacker rules
+     */
+    public static void getEnpriseBoard(Position pos, int[] board) {
+        // Squares neither side attacks score 0 so only the attacked ones need the exchange
+        var attacked = pos.getAttacks(WHITE) | pos.getAttacks(BLACK);
+        for(int sq=0; sq<64; sq++) {
+            board[sq] = (attacked & (1L << (sq ^ 7))) == 0 ? 0 : enpriseForSquare(pos, sq);
+        }
+    }
+    /**
+     * Sums all square attackers for both sides on sq in piece order from pawn to king.
+     * If a new attacker becomes eligible once a previous attacker has been moved then that too is added.
+     * Attackers pinned to their own king are ignored.
+     *
+     * The sum score of all attacks is returned (positive if white would be ahead).
+     * Material score only really makes sense if sq holds an opponents piece.
+     *
+     * @return (sum of attacks << 16) | (material sum of attacks)
+     */
+    public static int enpriseForSquare(Position pos, int square) {
+        var b             = pos.board;
+        var sq            = TO_120[square];
+        var side          = pos.whiteToMove ? BLACK : WHITE;
+        int attacksScore  = 0;
+        int materialScore = 0;
+        int numCaptures   = 0;
+        int finished      = 0;      // bit per side
+        var pieceAtSquare = b[sq] & PIECE_MASK;
+        var attackers     = pos.seeAttackers;
+        var saved         = pos.seeSaved;
+        int numSaved      = 0;
+
+        saved[numSaved++] = (sq << 5) | b[sq];
+
+        while(finished != 3) {
+
+            // Flip sides
+            side ^= 1;
+
+            if((finished & (1 << side)) != 0) continue;
+
+            // Least valuable attacker first then the lowest square. The attackers
+            // are listed by value but in ray order within each piece type
+            var n    = getAttackers(b, sq, side, attackers);
+            var from = 0;
+            for(int i = 0; i < n; i++) {
+                var t = attackers[i];
+                if(from != 0 && ((b[t] & PIECE_MASK) != (b[from] & PIECE_MASK) || TO_64[t] > TO_64[from])) continue;
+                if((b[t] & PIECE_MASK) == KING || !exposesKing(pos, side, t, sq)) {
+                    from = t;
+                }
+            }
+            if(from == 0 || (b[from] & PIECE_MASK) == KING) {
+                // This side has no more attacking options
+                finished |= 1 << side;
+
+                if(from == 0) continue;
+            }
+
+            var material = Piece.material(pieceAtSquare);
+            if(numCaptures > 0 && pieceAtSquare == KING) {
+                // Previous side used their king which we now know would be captured
+                // so that was an illegal move. Remove their score for that move.
+                if(side == BLACK) {
+                    attacksScore  -= 1;
+                    materialScore -= material;
+                } else {
+                    attacksScore  += 1;
+                    materialScore += material;
+                }
+            }
+
+            // Add to the enprise score
+            attacksScore  += side == WHITE ? 1 : -1;
+            materialScore += side == WHITE ? material : -material;
+
+            // Move the attacking piece onto the square
+            saved[numSaved++] = (from << 5) | b[from];
+            b[sq]         = b[from];
+            b[from]       = EMPTY;
+            pieceAtSquare = b[sq] & PIECE_MASK;
+            numCaptures++;
+        }
+        restore(b, saved, numSaved);
+
+        return (attacksScore << 16) | (materialScore & 0xffff);
+    }
+    //===============================================================================
+    /**
+     * @param sq 120 square
+     * @return The number of side's pieces attacking sq written to attackers as 120 squares,
+     *         least valuable first
+     */
+    private static int getAttackers(int[] b, int sq, int side, int[] attackers) {
+        var s     = side << 3;
+        var count = 0;
+
+        // Pawns attack up the board for white
+        var pawn = PAWN | s;
+        var down = side == WHITE ? -UP : UP;
+        if(b[sq + down - 1] == pawn) attackers[count++] = sq + down - 1;
+        if(b[sq + down + 1] == pawn) attackers[count++] = sq + down + 1;
+
+        var knight = KNIGHT | s;
+        for(var d : KNIGHT_OFFSETS) {
+            if(b[sq + d] == knight) attackers[count++] = sq + d;
+        }
+        // Note: This ordering assumes bishops are worth more than knights
+        count = getSliders(b, sq, BISHOP | s, BISHOP_OFFSETS, attackers, count);
+        count = getSliders(b, sq, ROOK | s, ROOK_OFFSETS, attackers, count);
+        count = getSliders(b, sq, QUEEN | s, BISHOP_OFFSETS, attackers, count);
+        count = getSliders(b, sq, QUEEN | s, ROOK_OFFSETS, attackers, count);
+
+        var king = KING | s;
+        for(var d : KING_OFFSETS) {
+            if(b[sq + d] == king) attackers[count++] = sq + d;
+        }
+        return count;
+    }
+    /** Add the first piece along each ray from sq if it is value */
+    private static int getSliders(int[] b, int sq, int value, int[] offsets, int[] attackers, int count) {
+        for(var d : offsets) {
+            var t = sq + d;
+            while(b[t] == EMPTY) t += d;
+            if(b[t] == value) attackers[count++] = t;
+        }
+        return count;
+    }
+    /**
+     * @return true if moving side's piece from to would expose its king to an enemy slider
+     */
+    private static boolean exposesKing(Position pos, int side, int from, int to) {
+        var b       = pos.board;
+        var saved   = b[to];
+        b[to]       = b[from];
+        b[from]     = EMPTY;
+
+        var king    = pos.kingSquare[side];
+        var e       = (side ^ 1) << 3;
+        var exposed = false;
+        for(var d : BISHOP_OFFSETS) {
+            var t = king + d;
+            while(b[t] == EMPTY) t += d;
+            if(b[t] == (BISHOP | e) || b[t] == (QUEEN | e)) exposed = true;
+        }
+        for(var d : ROOK_OFFSETS) {
+            var t = king + d;
+            while(b[t] == EMPTY) t += d;
+            if(b[t] == (ROOK | e) || b[t] == (QUEEN | e)) exposed = true;
+        }
+
+        b[from] = b[to];
+        b[to]   = saved;
+        return exposed;
+    }
+    /** Put back the squares saved as (sq << 5) | value, last first */
+    private static void restore(int[] b, int[] saved, int numSaved) {
+        while(numSaved > 0) {
+            var v = saved[--numSaved];
+            b[v >>> 5] = v & 0b1_1111;
+        }
+    }
+}
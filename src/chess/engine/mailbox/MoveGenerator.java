@@ -0,0 +1,354 @@
+package chess.engine.mailbox;
+
+import chess.engine.Generator;
+import chess.engine.Move;
+
+import static chess.engine.mailbox.Position.*;
+
+/**
+ * Move generator for the 10x12 board.
+ *
+ * Moves are generated from the piece lists by walking the direction offsets until a
+ * sentinel or piece is reached. They are legal as generated: the rays and knight jumps
+ * out from the king first find the checking and pinned pieces. Pinned pieces only move
+ * along their pin, a single check must be captured or blocked and the king is never
+ * moved onto an attacked square. En passant, which can uncover a check along the rank,
+ * is the only move tested by trying it on the board.
+ */
+final public class MoveGenerator implements Generator<Position> {
+    public int[] moves = new int[256];
+    public int numMoves;
+
+    // Which kinds of move to generate
+    private boolean tactical    = true;   // captures, en passant and promotions
+    private boolean quiet       = true;   // everything else
+    private boolean quietChecks = false;  // quiet moves that give check (when quiet is false)
+
+    // Set by findChecksAndPins. Square sets are natural layout bits of the 0..63 squares
+    private int king;                                   // 120 square
+    private int numCheckers;
+    private long targets;                               // squares that capture or block a single check. All if not in check
+    private long pinned;
+    private final int[] pinDirection = new int[120];    // offset from the king to each pinned piece
+
+    public int[] moves() {
+        return moves;
+    }
+    public int numMoves() {
+        return numMoves;
+    }
+    /** Return the move if valid otherwise return -1. */
+    public int getMove(Position pos, int from, int to) {
+        generateForPosition(pos, false);
+        for(int i = 0; i < numMoves; i++) {
+            var move = moves[i];
+            if(Move.from(move) == from && Move.to(move) == to) return move;
+        }
+        return -1;
+    }
+    /** @return true if move is one of the legal moves of the piece on its from square */
+    boolean isLegal(Position pos, int move) {
+        tactical    = true;
+        quiet       = true;
+        quietChecks = false;
+        numMoves    = 0;
+
+        var side = pos.whiteToMove ? 0 : 1;
+        findChecksAndPins(pos, side);
+        generateForSquare(pos, TO_120[Move.from(move)], side);
+
+        for(int i = 0; i < numMoves; i++) {
+            if(moves[i] == move) return true;
+        }
+        return false;
+    }
+    /**
+     * @param quiescence If true only captures, en passant and promotions are generated.
+     *                   Note that this includes when in check so not all evasions are generated
+     */
+    public void generateForPosition(Position pos, boolean quiescence) {
+        generate(pos, true, !quiescence, false);
+    }
+    /** Generate captures, en passant and promotions only */
+    public void generateCaptures(Position pos) {
+        generate(pos, true, false, false);
+    }
+    /**
+     * Generate captures, en passant and promotions plus, if quietChecks is set,
+     * quiet moves that give check. Castling is never generated as a check
+     */
+    public void generateCaptures(Position pos, boolean quietChecks) {
+        generate(pos, true, false, quietChecks);
+    }
+    /** Generate all moves that are not captures, en passant or promotions */
+    public void generateQuiets(Position pos) {
+        generate(pos, false, true, false);
+    }
+    @Override public String toString() {
+        var buf = new StringBuilder();
+        for(int i=0; i<numMoves; i++) {
+            buf.append(String.format("[%d] %s", i, Move.toString(moves[i])));
+            buf.append("\n");
+        }
+        return buf.toString();
+    }
+    //==================================================================================
+    private void generate(Position pos, boolean tactical, boolean quiet, boolean quietChecks) {
+        this.tactical    = tactical;
+        this.quiet       = quiet;
+        this.quietChecks = quietChecks && !quiet;
+        numMoves         = 0;
+
+        var side = pos.whiteToMove ? 0 : 1;
+        findChecksAndPins(pos, side);
+
+        var list = pos.pieceList[side];
+        for(int i = 0; i < pos.numPieces[side]; i++) {
+            generateForSquare(pos, list[i], side);
+        }
+    }
+    /**
+     * Walk out from the king along the 8 rays and the knight and pawn jumps.
+     * An enemy piece found first is a checker. An own piece with an enemy slider
+     * behind it on the same ray is pinned.
+     */
+    private void findChecksAndPins(Position pos, int side) {
+        var b     = pos.board;
+        var enemy = (side ^ 1) << 3;
+        long checks = 0;
+
+        king        = pos.kingSquare[side];
+        numCheckers = 0;
+        pinned      = 0;
+
+        var pawn  = PAWN | enemy;
+        var ahead = side == 0 ? king + UP : king - UP;
+        if(b[ahead - 1] == pawn) { numCheckers++; checks |= bit(ahead - 1); }
+        if(b[ahead + 1] == pawn) { numCheckers++; checks |= bit(ahead + 1); }
+
+        var knight = KNIGHT | enemy;
+        for(var d : KNIGHT_OFFSETS) {
+            if(b[king + d] == knight) { numCheckers++; checks |= bit(king + d); }
+        }
+
+        for(var d : KING_OFFSETS) {
+            var diagonal = d == -11 || d == -9 || d == 9 || d == 11;
+            long ray = 0;
+            var t = king + d;
+            while(b[t] == EMPTY) {
+                ray |= bit(t);
+                t += d;
+            }
+            var v = b[t];
+            if(v == OFFBOARD) continue;
+            if((v & SIDE_MASK) == enemy) {
+                if(isSlider(v, diagonal)) {
+                    numCheckers++;
+                    checks |= ray | bit(t);
+                }
+                continue;
+            }
+
+            // Own piece. Pinned if the next piece along is an enemy slider
+            var own = t;
+            t += d;
+            while(b[t] == EMPTY) t += d;
+            v = b[t];
+            if(v != OFFBOARD && (v & SIDE_MASK) == enemy && isSlider(v, diagonal)) {
+                pinned |= bit(own);
+                pinDirection[own] = d;
+            }
+        }
+        targets = numCheckers == 0 ? -1L : checks;
+    }
+    /** @return true if board value v is a bishop (diagonal) or rook (straight) or a queen */
+    private static boolean isSlider(int v, boolean diagonal) {
+        var piece = v & PIECE_MASK;
+        return piece == QUEEN || piece == (diagonal ? BISHOP : ROOK);
+    }
+    private void generateForSquare(Position pos, int from, int side) {
+        var v   = pos.board[from];
+        var own = side << 3;
+        if(v == EMPTY || (v & SIDE_MASK) != own) return;
+
+        // Only the king can get out of a double check
+        if(numCheckers > 1 && from != king) return;
+
+        switch(v & PIECE_MASK) {
+            case PAWN:   generatePawnMoves(pos, from, side); break;
+            case KNIGHT: if((pinned & bit(from)) == 0) generateKnightMoves(pos, from, own); break;
+            case BISHOP: generateSlidingMoves(pos, from, own, BISHOP_OFFSETS); break;
+            case ROOK:   generateSlidingMoves(pos, from, own, ROOK_OFFSETS); break;
+            case QUEEN:
+                generateSlidingMoves(pos, from, own, BISHOP_OFFSETS);
+                generateSlidingMoves(pos, from, own, ROOK_OFFSETS);
+                break;
+            case KING:
+                generateKingMoves(pos, from, side);
+                if(quiet && numCheckers == 0) generateCastling(pos, from, side);
+                break;
+        }
+    }
+    /** @return true if the piece on from may move in direction d without exposing its king */
+    private boolean canMove(int from, int d) {
+        if((pinned & bit(from)) == 0) return true;
+        var pin = pinDirection[from];
+        return d == pin || d == -pin;
+    }
+    private boolean isTarget(int to) {
+        return (targets & bit(to)) != 0;
+    }
+    private void generatePawnMoves(Position pos, int from, int side) {
+        var b       = pos.board;
+        var up      = side == 0 ? UP : -UP;
+        var to      = from + up;
+        var promote = b[to + up] == OFFBOARD && b[to] != OFFBOARD;
+
+        // Pushes
+        if(b[to] == EMPTY && canMove(from, up)) {
+            if(promote) {
+                if(isTarget(to)) addPromotions(pos, from, to);
+            } else {
+                if(isTarget(to)) addQuiet(pos, from, to);
+
+                // Double push from the start rank
+                var start = b[from - 2 * up] == OFFBOARD;
+                if(start && b[to + up] == EMPTY && isTarget(to + up)) addQuiet(pos, from, to + up);
+            }
+        }
+
+        // Captures
+        if(!tactical) return;
+        var ep = pos.availableEnpassant != 0 ? TO_120[pos.availableEnpassant] : -1;
+        for(var d = up - 1; d <= up + 1; d += 2) {
+            var t = from + d;
+            var v = b[t];
+            if(v == EMPTY) {
+                if(t == ep) addEnPassant(pos, from, t, side);
+            } else if(v != OFFBOARD && (v >>> 3) != side && isTarget(t) && canMove(from, d)) {
+                if(promote) {
+                    addPromotions(pos, from, t);
+                } else {
+                    addMove(pos, from, t, Move.FLAG_NONE);
+                }
+            }
+        }
+    }
+    private void generateKnightMoves(Position pos, int from, int own) {
+        var b = pos.board;
+        for(var d : KNIGHT_OFFSETS) {
+            var to = from + d;
+            var v  = b[to];
+            if(v == OFFBOARD || !isTarget(to)) continue;
+            if(v == EMPTY) {
+                addQuiet(pos, from, to);
+            } else if((v & SIDE_MASK) != own && tactical) {
+                addMove(pos, from, to, Move.FLAG_NONE);
+            }
+        }
+    }
+    private void generateSlidingMoves(Position pos, int from, int own, int[] offsets) {
+        var b = pos.board;
+        for(var d : offsets) {
+            if(!canMove(from, d)) continue;
+            var to = from + d;
+            while(b[to] == EMPTY) {
+                if(isTarget(to)) addQuiet(pos, from, to);
+                to += d;
+            }
+            var v = b[to];
+            if(v != OFFBOARD && (v & SIDE_MASK) != own && tactical && isTarget(to)) addMove(pos, from, to, Move.FLAG_NONE);
+        }
+    }
+    /** The king is lifted while testing each square so it does not hide the squares behind it from a checking slider */
+    private void generateKingMoves(Position pos, int from, int side) {
+        var b     = pos.board;
+        var own   = side << 3;
+        var value = b[from];
+        for(var d : KING_OFFSETS) {
+            var to = from + d;
+            var v  = b[to];
+            if(v == OFFBOARD || (v != EMPTY && ((v & SIDE_MASK) == own || !tactical))) continue;
+            if(v == EMPTY && !quiet && !quietChecks) continue;
+
+            b[from] = EMPTY;
+            var safe = !pos.isAttacked(to, side ^ 1);
+            b[from] = value;
+            if(!safe) continue;
+
+            if(v == EMPTY) {
+                addQuiet(pos, from, to);
+            } else {
+                addMove(pos, from, to, Move.FLAG_NONE);
+            }
+        }
+    }
+    /** Only called when not in check. The king may not pass through or land on an attacked square */
+    private void generateCastling(Position pos, int from, int side) {
+        var b     = pos.board;
+        var enemy = side ^ 1;
+        var oo    = side == 0 ? FLAG_WHITE_OO : FLAG_BLACK_OO;
+        var ooo   = side == 0 ? FLAG_WHITE_OOO : FLAG_BLACK_OOO;
+
+        if((pos.flags & oo) != 0 && b[from + 1] == EMPTY && b[from + 2] == EMPTY &&
+           !pos.isAttacked(from + 1, enemy) && !pos.isAttacked(from + 2, enemy))
+        {
+            addMove(pos, from, from + 2, Move.FLAG_OO);
+        }
+        if((pos.flags & ooo) != 0 && b[from - 1] == EMPTY && b[from - 2] == EMPTY && b[from - 3] == EMPTY &&
+           !pos.isAttacked(from - 1, enemy) && !pos.isAttacked(from - 2, enemy))
+        {
+            addMove(pos, from, from - 2, Move.FLAG_OOO);
+        }
+    }
+    /** Try the capture on the board. Lifting both pawns can expose the king along the rank */
+    private void addEnPassant(Position pos, int from, int to, int side) {
+        var b        = pos.board;
+        var captured = side == 0 ? to - UP : to + UP;
+        var pawn     = b[from];
+        var enemy    = b[captured];
+
+        b[from]     = EMPTY;
+        b[captured] = EMPTY;
+        b[to]       = pawn;
+        var legal = !pos.isAttacked(king, side ^ 1);
+        b[to]       = EMPTY;
+        b[captured] = enemy;
+        b[from]     = pawn;
+
+        if(legal) addMove(pos, from, to, Move.FLAG_ENPASSANT);
+    }
+    private void addPromotions(Position pos, int from, int to) {
+        if(!tactical) return;
+        addMove(pos, from, to, Move.FLAG_PROMOTE_QUEEN);
+        addMove(pos, from, to, Move.FLAG_PROMOTE_ROOK);
+        addMove(pos, from, to, Move.FLAG_PROMOTE_BISHOP);
+        addMove(pos, from, to, Move.FLAG_PROMOTE_KNIGHT);
+    }
+    /** A move to an empty square. With quietChecks only kept if it gives check */
+    private void addQuiet(Position pos, int from, int to) {
+        if(quiet || (quietChecks && givesCheck(pos, from, to))) addMove(pos, from, to, Move.FLAG_NONE);
+    }
+    /** Directly or by uncovering a slider. Tried on the board */
+    private boolean givesCheck(Position pos, int from, int to) {
+        var b     = pos.board;
+        var value = b[from];
+        var side  = value >>> 3;
+
+        b[from] = EMPTY;
+        b[to]   = value;
+        var check = pos.isAttacked(pos.kingSquare[side ^ 1], side);
+        b[to]   = EMPTY;
+        b[from] = value;
+        return check;
+    }
+    private void addMove(Position pos, int from, int to, int flags) {
+        var b       = pos.board;
+        var capture = flags == Move.FLAG_ENPASSANT ? PAWN : b[to] & PIECE_MASK;
+        moves[numMoves++] = Move.makeMove(b[from] & PIECE_MASK, TO_64[from], TO_64[to], capture, flags);
+    }
+    /** @return The natural layout bit of a 120 square */
+    private static long bit(int sq) {
+        return 1L << TO_64[sq];
+    }
+}
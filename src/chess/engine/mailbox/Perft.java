@@ -0,0 +1,149 @@
+package chess.engine.mailbox;
+
+import chess.engine.Move;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Move generation node counter.
+ * https://www.chessprogramming.org/Perft
+ *
+ * Usage:
+ *      Perft                   run the whole suite
+ *      Perft depth             run the suite up to depth
+ *      Perft depth fen|file    divide a single position
+ */
+final public class Perft {
+    /** The reference positions are shared with the byteboard engine */
+    public static final String[] SUITE = chess.engine.byteboard.Perft.SUITE;
+
+    private MoveGenerator[] generators = new MoveGenerator[0];
+
+    public static void main(String[] args) throws IOException {
+        var perft = new Perft();
+        var depth = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+
+        if(args.length > 1) {
+            var fen = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+            if(Files.exists(Paths.get(fen))) {
+                fen = new String(Files.readAllBytes(Paths.get(fen))).trim();
+            }
+            perft.printDivide(PositionBuilder.fromFEN(fen), depth);
+        } else {
+            System.exit(perft.runSuite(depth) ? 0 : 1);
+        }
+    }
+    /**
+     * @return The number of leaf nodes at depth.
+     *         The leaves are not visited, the moves at depth 1 are just counted
+     */
+    public long perft(Position pos, int depth) {
+        if(depth <= 0) return 1;
+        ensureDepth(depth);
+        return count(pos, depth);
+    }
+    /**
+     * @return The perft count below each root move in generation order
+     */
+    public Map<Integer, Long> divide(Position pos, int depth) {
+        var map = new LinkedHashMap<Integer, Long>();
+        if(depth <= 0) return map;
+        ensureDepth(depth);
+
+        var gen = generators[depth];
+        gen.generateForPosition(pos, false);
+        for(int i = 0; i < gen.numMoves; i++) {
+            var move = gen.moves[i];
+            pos.applyMove(move);
+            map.put(move, depth == 1 ? 1 : count(pos, depth - 1));
+            pos.undoMove();
+        }
+        return map;
+    }
+    public void printDivide(Position pos, int depth) {
+        var start = System.nanoTime();
+        var map   = divide(pos, depth);
+        var time  = System.nanoTime() - start;
+        long total = 0;
+
+        for(var e : map.entrySet()) {
+            System.out.println(Move.toCoordinateString(e.getKey()) + ": " + e.getValue());
+            total += e.getValue();
+        }
+        System.out.println();
+        System.out.println("Moves ..... " + map.size());
+        System.out.println("Nodes ..... " + total);
+        System.out.println(String.format("Time ...... %.3f s", time / 1e9));
+        System.out.println("Nodes/s ... " + nodesPerSecond(total, time));
+    }
+    /**
+     * Run every suite position at each listed depth up to maxDepth.
+     *
+     * @return true if all counts are as expected
+     */
+    public boolean runSuite(int maxDepth) {
+        var passed     = true;
+        long totalNodes = 0;
+        long totalTime  = 0;
+
+        for(var line : SUITE) {
+            var parts = line.split(";");
+            var fen   = parts[0].trim();
+
+            for(int i = 1; i < parts.length; i++) {
+                var tokens   = parts[i].trim().split(" ");
+                var depth    = Integer.parseInt(tokens[0].substring(1));
+                var expected = Long.parseLong(tokens[1]);
+                if(depth > maxDepth) continue;
+
+                var start = System.nanoTime();
+                var nodes = perft(PositionBuilder.fromFEN(fen), depth);
+                var time  = System.nanoTime() - start;
+                var ok    = nodes == expected;
+
+                System.out.println(String.format("%s D%d %12d %10.3f s %12d n/s  %s",
+                    ok ? "ok  " : "FAIL", depth, nodes, time / 1e9, nodesPerSecond(nodes, time), fen));
+                if(!ok) {
+                    System.out.println("     expected " + expected);
+                    passed = false;
+                }
+                totalNodes += nodes;
+                totalTime  += time;
+            }
+        }
+        System.out.println(String.format("%s %d nodes in %.3f s (%d n/s)",
+            passed ? "Passed" : "FAILED", totalNodes, totalTime / 1e9, nodesPerSecond(totalNodes, totalTime)));
+        return passed;
+    }
+    //===============================================================================
+    private long count(Position pos, int depth) {
+        var gen = generators[depth];
+        gen.generateForPosition(pos, false);
+        if(depth == 1) return gen.numMoves;
+
+        long nodes = 0;
+        for(int i = 0; i < gen.numMoves; i++) {
+            pos.applyMove(gen.moves[i]);
+            nodes += count(pos, depth - 1);
+            pos.undoMove();
+        }
+        return nodes;
+    }
+    private void ensureDepth(int depth) {
+        if(generators.length > depth) return;
+
+        var old = generators;
+        generators = Arrays.copyOf(old, depth + 1);
+        for(int i = old.length; i <= depth; i++) {
+            generators[i] = new MoveGenerator();
+        }
+    }
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : (long)(nodes * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,600 @@
+package chess.engine.mailbox;
+
+import chess.engine.Board;
+import chess.engine.KeyHistory;
+import chess.engine.Move;
+import chess.engine.Piece;
+import chess.engine.Side;
+import chess.engine.Zobrist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 10x12 mailbox board.
+ * https://www.chessprogramming.org/10x12_Board
+ *
+ * The 8x8 board sits in the middle of 120 squares surrounded by OFFBOARD sentinels,
+ * two deep at the top and bottom so that knight jumps land on a sentinel too.
+ * Walks along a ray add a direction offset until they hit a piece or a sentinel
+ * so there are no file and rank bounds tests.
+ *
+ *   a1 = 21, h1 = 28, a8 = 91, h8 = 98. Up a rank is +10
+ *
+ * Moves use the shared 0..63 square encoding so they are interchangeable
+ * with the other backends.
+ *
+ * Each side keeps a list of the squares its pieces are on so the generator never
+ * scans empty squares. A captured piece's slot is filled by the side's last piece.
+ */
+final public class Position implements Board {
+    static final int EMPTY      = 0;
+    static final int OFFBOARD   = 0b1_0000; // not a piece of either side
+    static final int PIECE_MASK = 0b0111;
+    static final int SIDE_MASK  = 0b1000;
+
+    static final int FLAG_WHITE_OO 	 = 1; // Set if can castle
+    static final int FLAG_WHITE_OOO	 = 2; // Set if can castle
+    static final int FLAG_BLACK_OO	 = 4; // Set if can castle
+    static final int FLAG_BLACK_OOO	 = 8; // Set if can castle
+
+    // Direction offsets
+    static final int UP = 10;
+    static final int[] KNIGHT_OFFSETS = {-21, -19, -12, -8, 8, 12, 19, 21};
+    static final int[] KING_OFFSETS   = {-11, -10, -9, -1, 1, 9, 10, 11};
+    static final int[] BISHOP_OFFSETS = {-11, -9, 9, 11};
+    static final int[] ROOK_OFFSETS   = {-10, -1, 1, 10};
+
+    // Square conversion
+    static final int[] TO_120 = new int[64];
+    static final int[] TO_64  = new int[120];   // -1 for OFFBOARD squares
+
+    // Castling flags kept when a piece moves from or to each square
+    private static final int[] CASTLING_MASK = new int[120];
+
+    static {
+        Arrays.fill(TO_64, -1);
+        for(int sq = 0; sq < 64; sq++) {
+            TO_120[sq] = 21 + (sq & 7) + (sq >>> 3) * 10;
+            TO_64[TO_120[sq]] = sq;
+        }
+        Arrays.fill(CASTLING_MASK, 0b1111);
+        CASTLING_MASK[TO_120[0]]  &= ~FLAG_WHITE_OOO;
+        CASTLING_MASK[TO_120[7]]  &= ~FLAG_WHITE_OO;
+        CASTLING_MASK[TO_120[56]] &= ~FLAG_BLACK_OOO;
+        CASTLING_MASK[TO_120[63]] &= ~FLAG_BLACK_OO;
+    }
+
+    // Undo stack entry layout
+    private static final int UNDO_MOVE           = 0;
+    private static final int UNDO_PIECE          = 1;  // board value of the moved piece
+    private static final int UNDO_CAPTURE        = 2;  // board value of the captured piece
+    private static final int UNDO_ENPASSANT      = 3;
+    private static final int UNDO_FLAGS          = 4;
+    private static final int UNDO_HALF_MOVE      = 5;
+    private static final int UNDO_FULL_MOVE      = 6;
+    private static final int UNDO_WHITE_MATERIAL = 7;
+    private static final int UNDO_BLACK_MATERIAL = 8;
+    private static final int UNDO_SIZE           = 9;
+
+    // Start of state
+    final int[] board = new int[120];   // piece | side<<3 as in the byteboard engine
+    boolean whiteToMove;
+    int fullMoveNumber;
+    int halfMoveClock;
+    int availableEnpassant;             // 0..63 square. 0 if none
+    int flags;
+    // end of state
+
+    // Cached info not strictly part of the state
+    final int[] kingSquare  = new int[2];   // 120 square
+    final int[] material    = new int[2];
+    final int[] numPieces   = new int[2];
+    long zobrist;                           // See Zobrist. Excludes the move counters
+
+    // pieceList[side] holds the 120 squares of side's numPieces[side] pieces.
+    // listIndex[sq] is the slot of the piece on sq
+    final int[][] pieceList = new int[2][16];
+    final int[] listIndex   = new int[120];
+
+    private int[] undoStack = new int[UNDO_SIZE * 256];
+    private int undoPos;
+    private KeyHistory keyHistory = new KeyHistory();
+    private MoveGenerator legalityGenerator;    // created on first use by isLegal
+
+    // Scratch for Enprise.see and Enprise.enpriseForSquare
+    final int[] seeGain      = new int[32];
+    final int[] seeSaved     = new int[33];
+    final int[] seeAttackers = new int[Enprise.MAX_ATTACKERS];
+
+    public Position() {
+        Arrays.fill(board, OFFBOARD);
+        for(int sq = 0; sq < 64; sq++) {
+            board[TO_120[sq]] = EMPTY;
+        }
+    }
+    public void copyTo(Position p) {
+        System.arraycopy(board, 0, p.board, 0, 120);
+        p.whiteToMove        = whiteToMove;
+        p.fullMoveNumber     = fullMoveNumber;
+        p.halfMoveClock      = halfMoveClock;
+        p.availableEnpassant = availableEnpassant;
+        p.flags              = flags;
+        p.kingSquare[0]      = kingSquare[0];
+        p.kingSquare[1]      = kingSquare[1];
+        p.material[0]        = material[0];
+        p.material[1]        = material[1];
+        p.numPieces[0]       = numPieces[0];
+        p.numPieces[1]       = numPieces[1];
+        p.zobrist            = zobrist;
+        System.arraycopy(pieceList[0], 0, p.pieceList[0], 0, 16);
+        System.arraycopy(pieceList[1], 0, p.pieceList[1], 0, 16);
+        System.arraycopy(listIndex, 0, p.listIndex, 0, 120);
+        // Ensure p has no history
+        p.undoPos = 0;
+        p.keyHistory.clear();
+    }
+    public void applyMove(int move) {
+        if(undoPos + UNDO_SIZE > undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        }
+
+        var b      = board;
+        var from   = TO_120[Move.from(move)];
+        var to     = TO_120[Move.to(move)];
+        var flags  = Move.flagCode(move);
+        var value  = b[from];
+        var piece  = value & PIECE_MASK;
+        var side   = whiteToMove ? 0 : 1;
+        var enemy  = side ^ 1;
+
+        // Record the delta
+        var u = undoStack;
+        var i = undoPos;
+        u[i + UNDO_MOVE]           = move;
+        u[i + UNDO_PIECE]          = value;
+        u[i + UNDO_CAPTURE]        = b[to];
+        u[i + UNDO_ENPASSANT]      = availableEnpassant;
+        u[i + UNDO_FLAGS]          = this.flags;
+        u[i + UNDO_HALF_MOVE]      = halfMoveClock;
+        u[i + UNDO_FULL_MOVE]      = fullMoveNumber;
+        u[i + UNDO_WHITE_MATERIAL] = material[0];
+        u[i + UNDO_BLACK_MATERIAL] = material[1];
+        undoPos += UNDO_SIZE;
+        keyHistory.push(zobrist);
+
+        // Remove the old side, castling and en passant keys and move the piece
+        long key = zobrist ^ Zobrist.BLACK_TO_MOVE ^ Zobrist.CASTLING[this.flags] ^
+                   Zobrist.PIECES[value][TO_64[from]] ^ Zobrist.PIECES[value][TO_64[to]];
+        if(availableEnpassant != 0) key ^= Zobrist.ENPASSANT[availableEnpassant & 7];
+
+        // Remove the captured piece
+        var capture = b[to] & PIECE_MASK;
+        if(flags == Move.FLAG_ENPASSANT) {
+            capture = PAWN;
+            var sq = whiteToMove ? to - UP : to + UP;
+            key  ^= Zobrist.PIECES[b[sq]][TO_64[sq]];
+            b[sq] = EMPTY;
+            removeFromList(enemy, sq);
+        } else if(capture != EMPTY) {
+            key ^= Zobrist.PIECES[b[to]][TO_64[to]];
+            removeFromList(enemy, to);
+        }
+        if(capture != EMPTY) {
+            material[enemy] -= Piece.material(capture);
+        }
+
+        // Move the piece
+        b[from] = EMPTY;
+        b[to]   = value;
+        moveInList(side, from, to);
+
+        availableEnpassant = 0;
+
+        if(piece == PAWN) {
+            // add a possible en passant target
+            if(to - from == 2 * UP) {
+                availableEnpassant = TO_64[from + UP];
+            } else if(from - to == 2 * UP) {
+                availableEnpassant = TO_64[from - UP];
+            }
+            // promotion
+            if(Move.isPromotion(move)) {
+                var promotion = Move.promotionCode(move);
+                b[to] = (value & SIDE_MASK) | promotion;
+                material[side] += Piece.material(promotion) - Piece.material(PAWN);
+                key ^= Zobrist.PIECES[value][TO_64[to]] ^ Zobrist.PIECES[b[to]][TO_64[to]];
+            }
+        } else if(piece == KING) {
+            kingSquare[side] = to;
+            this.flags &= whiteToMove ? ~(FLAG_WHITE_OO | FLAG_WHITE_OOO) : ~(FLAG_BLACK_OO | FLAG_BLACK_OOO);
+
+            // move the rook if castling
+            if(flags == Move.FLAG_OO) {
+                b[to - 1] = b[to + 1];
+                b[to + 1] = EMPTY;
+                moveInList(side, to + 1, to - 1);
+                key ^= Zobrist.PIECES[b[to - 1]][TO_64[to + 1]] ^ Zobrist.PIECES[b[to - 1]][TO_64[to - 1]];
+            } else if(flags == Move.FLAG_OOO) {
+                b[to + 1] = b[to - 2];
+                b[to - 2] = EMPTY;
+                moveInList(side, to - 2, to + 1);
+                key ^= Zobrist.PIECES[b[to + 1]][TO_64[to - 2]] ^ Zobrist.PIECES[b[to + 1]][TO_64[to + 1]];
+            }
+        }
+
+        // Remove castling permissions if a rook moves or is captured
+        this.flags &= CASTLING_MASK[from] & CASTLING_MASK[to];
+
+        // Pawn move or any capture resets half move clock
+        if(piece == PAWN || capture != EMPTY) {
+            halfMoveClock = 0;
+        } else {
+            halfMoveClock++;
+        }
+        key ^= Zobrist.CASTLING[this.flags];
+        if(availableEnpassant != 0) key ^= Zobrist.ENPASSANT[availableEnpassant & 7];
+        zobrist = key;
+
+        whiteToMove     = !whiteToMove;
+        fullMoveNumber += (whiteToMove ? 1 : 0);
+    }
+    public int undoMove() {
+        undoPos -= UNDO_SIZE;
+
+        var u     = undoStack;
+        var i     = undoPos;
+        var b     = board;
+        var move  = u[i + UNDO_MOVE];
+        var from  = TO_120[Move.from(move)];
+        var to    = TO_120[Move.to(move)];
+        var flags = Move.flagCode(move);
+
+        whiteToMove = !whiteToMove;
+        var side    = whiteToMove ? 0 : 1;
+
+        // Put the pieces back
+        b[from] = u[i + UNDO_PIECE];
+        b[to]   = u[i + UNDO_CAPTURE];
+        moveInList(side, to, from);
+        if(b[to] != EMPTY) addToList(side ^ 1, to);
+
+        if(flags == Move.FLAG_ENPASSANT) {
+            // The captured pawn was behind the target square
+            var sq = whiteToMove ? to - UP : to + UP;
+            b[sq] = PAWN | (whiteToMove ? SIDE_MASK : 0);
+            addToList(side ^ 1, sq);
+        } else if(flags == Move.FLAG_OO) {
+            b[to + 1] = b[to - 1];
+            b[to - 1] = EMPTY;
+            moveInList(side, to - 1, to + 1);
+        } else if(flags == Move.FLAG_OOO) {
+            b[to - 2] = b[to + 1];
+            b[to + 1] = EMPTY;
+            moveInList(side, to + 1, to - 2);
+        }
+        if((b[from] & PIECE_MASK) == KING) {
+            kingSquare[side] = from;
+        }
+
+        availableEnpassant = u[i + UNDO_ENPASSANT];
+        this.flags         = u[i + UNDO_FLAGS];
+        halfMoveClock      = u[i + UNDO_HALF_MOVE];
+        fullMoveNumber     = u[i + UNDO_FULL_MOVE];
+        material[0]        = u[i + UNDO_WHITE_MATERIAL];
+        material[1]        = u[i + UNDO_BLACK_MATERIAL];
+        zobrist            = keyHistory.pop();
+
+        return move;
+    }
+    /** @return 64 bit key of the position excluding the move counters */
+    public long zobrist() {
+        return zobrist;
+    }
+    public KeyHistory keyHistory() {
+        return keyHistory;
+    }
+    public boolean isOccupied(int sq) {
+        return board[TO_120[sq]] != EMPTY;
+    }
+    public boolean squareContains(int sq, Piece p, Side side) {
+        return board[TO_120[sq]] == (p.ordinal() | (side.ordinal() << 3));
+    }
+    public Piece pieceAt(int file, int rank) {
+        return pieceAt(file + (rank<<3));
+    }
+    public Piece pieceAt(int sq) {
+        return Piece.get(board[TO_120[sq]] & PIECE_MASK);
+    }
+    public Side sideAt(int file, int rank) {
+        return sideAt(file + (rank<<3));
+    }
+    public Side sideAt(int sq) {
+        return Side.get(board[TO_120[sq]] & SIDE_MASK);
+    }
+    public Side sideToMove() {
+        return whiteToMove ? Side.WHITE : Side.BLACK;
+    }
+    public int availableEnPassantSquare() {
+        return availableEnpassant;
+    }
+    public int fullMoveNumber() {
+        return fullMoveNumber;
+    }
+    public int halfMoveClock() {
+        return halfMoveClock;
+    }
+    public int getKingSquare(Side side) {
+        return TO_64[kingSquare[side.ordinal()]];
+    }
+    public int getMaterialValue(Side side) {
+        return material[side.ordinal()];
+    }
+    public boolean canCastle(Side side) {
+        return canCastleKingSide(side) || canCastleQueenSide(side);
+    }
+    public boolean canCastleKingSide(Side side) {
+        return side == Side.WHITE ? (flags&FLAG_WHITE_OO)!=0
+                                  : (flags&FLAG_BLACK_OO)!=0;
+    }
+    public boolean canCastleQueenSide(Side side) {
+        return side == Side.WHITE ? (flags&FLAG_WHITE_OOO)!=0
+                                  : (flags&FLAG_BLACK_OOO)!=0;
+    }
+    public boolean isSquareAttacked(int sq, Side by) {
+        return isAttacked(TO_120[sq], by.ordinal());
+    }
+    public boolean isCheck() {
+        var side = whiteToMove ? 0 : 1;
+        return isAttacked(kingSquare[side], side ^ 1);
+    }
+    public int getPiecePositions(Piece piece, Side side, int[] array) {
+        return getPiecePositions(piece.ordinal(), side.ordinal(), array);
+    }
+    public int getPiecePositions(Side side, int[] array) {
+        return getPiecePositions(side.ordinal(), array);
+    }
+    //==============================================================================
+    // Int API for the search and evaluators. Codes are the Board constants
+
+    public int pieceCodeAt(int sq) {
+        return board[TO_120[sq]] & PIECE_MASK;
+    }
+    public int sideCodeAt(int sq) {
+        return board[TO_120[sq]] >>> 3;
+    }
+    public int sideToMoveCode() {
+        return whiteToMove ? WHITE : BLACK;
+    }
+    /** @return All occupied squares in BitBoard layout */
+    public long getOccupied() {
+        long occupied = 0;
+        for(int side = 0; side < 2; side++) {
+            for(int i = 0; i < numPieces[side]; i++) {
+                occupied |= toBit(pieceList[side][i]);
+            }
+        }
+        return occupied;
+    }
+    public boolean squareContains(int sq, int piece, int side) {
+        return board[TO_120[sq]] == (piece | (side << 3));
+    }
+    public int getKingSquare(int side) {
+        return TO_64[kingSquare[side]];
+    }
+    public int getMaterialValue(int side) {
+        return material[side];
+    }
+    public boolean canCastleKingSide(int side) {
+        return (flags & (side==WHITE ? FLAG_WHITE_OO : FLAG_BLACK_OO)) != 0;
+    }
+    public boolean canCastleQueenSide(int side) {
+        return (flags & (side==WHITE ? FLAG_WHITE_OOO : FLAG_BLACK_OOO)) != 0;
+    }
+    public boolean isSquareAttacked(int sq, int by) {
+        return isAttacked(TO_120[sq], by);
+    }
+    public long getAttacks(int side) {
+        var b    = board;
+        var list = pieceList[side];
+        long attacks = 0;
+        for(int i = 0; i < numPieces[side]; i++) {
+            var sq = list[i];
+            switch(b[sq] & PIECE_MASK) {
+                case PAWN:
+                    var ahead = side == WHITE ? sq + UP : sq - UP;
+                    attacks |= toBit(ahead - 1) | toBit(ahead + 1);
+                    break;
+                case KNIGHT: attacks |= leaperAttacks(sq, KNIGHT_OFFSETS); break;
+                case KING:   attacks |= leaperAttacks(sq, KING_OFFSETS); break;
+                case BISHOP: attacks |= sliderAttacks(sq, BISHOP_OFFSETS); break;
+                case ROOK:   attacks |= sliderAttacks(sq, ROOK_OFFSETS); break;
+                case QUEEN:  attacks |= sliderAttacks(sq, BISHOP_OFFSETS) | sliderAttacks(sq, ROOK_OFFSETS); break;
+            }
+        }
+        return attacks;
+    }
+    /** Move must match a legal move exactly, including the piece, capture and flags */
+    public boolean isLegal(int move) {
+        var v = board[TO_120[Move.from(move)]];
+        if(move == 0 || v == EMPTY || (v >>> 3) != sideToMoveCode() || (v & PIECE_MASK) != Move.pieceCode(move)) return false;
+
+        if(legalityGenerator == null) legalityGenerator = new MoveGenerator();
+        return legalityGenerator.isLegal(this, move);
+    }
+    public int getPiecePositions(int piece, int side, int[] array) {
+        var value = piece | (side << 3);
+        int count = 0;
+        for(int sq = 0; sq < 64; sq++) {
+            if(board[TO_120[sq]] == value) array[count++] = sq;
+        }
+        return count;
+    }
+    public int getPiecePositions(int side, int[] array) {
+        var s = side << 3;
+        int count = 0;
+        for(int sq = 0; sq < 64; sq++) {
+            var v = board[TO_120[sq]];
+            if(v != EMPTY && (v & SIDE_MASK) == s) array[count++] = sq;
+        }
+        return count;
+    }
+    public int see(int move) {
+        return Enprise.see(this, move);
+    }
+    public void getEnpriseBoard(int[] board) {
+        Enprise.getEnpriseBoard(this, board);
+    }
+    //==============================================================================
+    public boolean isEndGame() {
+        return material[0] <= 14 ||
+               material[1] <= 14 ||
+               numPieces[0] < 5 ||
+               numPieces[1] < 5;
+    }
+    public int getLastMove() {
+        return undoStack[undoPos - UNDO_SIZE + UNDO_MOVE];
+    }
+    public int getNumMovesPlayed() {
+        return undoPos / UNDO_SIZE;
+    }
+    public List<Integer> getMoveHistory() {
+        var list = new ArrayList<Integer>(getNumMovesPlayed());
+        for(int i = 0; i < undoPos; i += UNDO_SIZE) {
+            list.add(undoStack[i + UNDO_MOVE]);
+        }
+        return list;
+    }
+    //==============================================================================
+    @Override public int hashCode() {
+        return (int)(zobrist ^ (zobrist >>> 32));
+    }
+    @Override public boolean equals(Object obj) {
+        Position p = (Position)obj;
+        if(p==this) return true;
+
+        return fullMoveNumber==p.fullMoveNumber &&
+            whiteToMove==p.whiteToMove &&
+            halfMoveClock==p.halfMoveClock &&
+            availableEnpassant==p.availableEnpassant &&
+            flags==p.flags &&
+            Arrays.equals(board, p.board);
+    }
+    @Override public String toString() {
+        var buf = new StringBuilder();
+        for(var rank = 7; rank >= 0; rank--) {
+            for(var file = 0; file<8; file++) {
+                var p = pieceAt(file, rank);
+                if(p==Piece.NONE) {
+                    buf.append("∙ ");
+                } else if(sideAt(file, rank)==Side.WHITE) {
+                    buf.append(p.fen()).append(" ");
+                } else {
+                    buf.append(p.fen().toLowerCase()).append(" ");
+                }
+            }
+            buf.append("\n");
+        }
+        return buf.toString();
+    }
+    //==============================================================================
+    /** Recalculate the cached king squares, material and piece counts after the board has been set directly. */
+    void updateCachedInfo() {
+        Arrays.fill(material, 0);
+        Arrays.fill(numPieces, 0);
+        for(int sq = 0; sq < 64; sq++) {
+            var v = board[TO_120[sq]];
+            if(v == EMPTY) continue;
+
+            var side = v >>> 3;
+            material[side] += Piece.material(v & PIECE_MASK);
+            addToList(side, TO_120[sq]);
+            if((v & PIECE_MASK) == KING) kingSquare[side] = TO_120[sq];
+        }
+        zobrist = Zobrist.hash(this);
+    }
+    private void addToList(int side, int sq) {
+        var n = numPieces[side]++;
+        pieceList[side][n] = sq;
+        listIndex[sq]      = n;
+    }
+    /** The side's last piece takes over the slot */
+    private void removeFromList(int side, int sq) {
+        var list = pieceList[side];
+        var last = list[--numPieces[side]];
+        var i    = listIndex[sq];
+        list[i]         = last;
+        listIndex[last] = i;
+    }
+    private void moveInList(int side, int from, int to) {
+        var i = listIndex[from];
+        pieceList[side][i] = to;
+        listIndex[to]      = i;
+    }
+    /** @return The BitBoard layout bit of a 120 square. 0 if OFFBOARD */
+    private static long toBit(int sq) {
+        var s = TO_64[sq];
+        return s < 0 ? 0 : 1L << (s ^ 7);
+    }
+    private static long leaperAttacks(int sq, int[] offsets) {
+        long attacks = 0;
+        for(var d : offsets) {
+            attacks |= toBit(sq + d);
+        }
+        return attacks;
+    }
+    private long sliderAttacks(int sq, int[] offsets) {
+        long attacks = 0;
+        for(var d : offsets) {
+            var t = sq + d;
+            while(board[t] == EMPTY) {
+                attacks |= toBit(t);
+                t += d;
+            }
+            attacks |= toBit(t);
+        }
+        return attacks;
+    }
+    /**
+     * @param sq 120 square
+     * @param by 0 = white, 1 = black
+     */
+    boolean isAttacked(int sq, int by) {
+        var b = board;
+        var s = by << 3;
+
+        // Pawns attack up the board for white
+        var pawn = PAWN | s;
+        if(by == 0) {
+            if(b[sq - 9] == pawn || b[sq - 11] == pawn) return true;
+        } else {
+            if(b[sq + 9] == pawn || b[sq + 11] == pawn) return true;
+        }
+
+        var knight = KNIGHT | s;
+        for(var d : KNIGHT_OFFSETS) {
+            if(b[sq + d] == knight) return true;
+        }
+        var king = KING | s;
+        for(var d : KING_OFFSETS) {
+            if(b[sq + d] == king) return true;
+        }
+
+        // Sliders. Walk each ray to the first piece or sentinel
+        var queen  = QUEEN | s;
+        var bishop = BISHOP | s;
+        var rook   = ROOK | s;
+        for(var d : BISHOP_OFFSETS) {
+            var t = sq + d;
+            while(b[t] == EMPTY) t += d;
+            if(b[t] == bishop || b[t] == queen) return true;
+        }
+        for(var d : ROOK_OFFSETS) {
+            var t = sq + d;
+            while(b[t] == EMPTY) t += d;
+            if(b[t] == rook || b[t] == queen) return true;
+        }
+        return false;
+    }
+}
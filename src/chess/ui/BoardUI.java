@@ -148,7 +148,7 @@ final public class BoardUI extends UIComponent implements Game.Listener {
         highlights.forEach(it->it.setSize(Int2.ZERO));
 
         // Add highlight if position has a previous move
-        if(pos.moveHistory.size()>0) {
+        if(pos.getNumMovesPlayed()>0) {
             addHighlight(pos, pos.getLastMove());
         }
     }
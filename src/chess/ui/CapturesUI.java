@@ -29,17 +29,18 @@ final public class CapturesUI extends UIComponent implements Game.Listener {
         getChildren().forEach(UIComponent::detach);
 
         // Check pos for captured pieces and add them
-        if(pos.moveHistory.size()>0) {
+        if(pos.getNumMovesPlayed()>0) {
             // Flag this so that we don't attempt to animate the pieces in the onChildAdded method
             settingUpNewGame = true;
 
             var whitePieces = new ArrayList<Piece>();
             var blackPieces = new ArrayList<Piece>();
 
-            var side = pos.sideToMove();
+            var side    = pos.sideToMove();
+            var history = pos.getMoveHistory();
 
-            for(int i=pos.moveHistory.size()-1; i>=0; i--) {
-                var m = pos.moveHistory.get(i);
+            for(int i=history.size()-1; i>=0; i--) {
+                var m = history.get(i);
 
                 var capture = Move.capture(m);
                 if(capture != Piece.NONE) {
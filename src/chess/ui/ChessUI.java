@@ -1,11 +1,14 @@
 package chess.ui;
 
 import chess.Options;
+import chess.engine.Backend;
 import chess.engine.Game;
 import chess.engine.Side;
 import chess.engine.byteboard.Position;
 import chess.engine.byteboard.PositionBuilder;
 import chess.engine.byteboard.PositionWriter;
+import chess.engine.computer.ComputerPlayer;
+import chess.engine.computer.TranspositionTable;
 import chess.ui.popup.GameOverPopup;
 import chess.ui.popup.PromotionPopup;
 import chess.ui.window.EvaluationWindow;
@@ -21,6 +24,9 @@ import juice.components.UIComponent;
 import juice.types.Int2;
 import juice.types.RGBA;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
 
 final public class ChessUI extends UIComponent implements Game.Listener {
@@ -43,6 +49,7 @@ final public class ChessUI extends UIComponent implements Game.Listener {
     // Domain components
     private Game game = new Game();
     private Options options = new Options();
+    private TranspositionTable table;
 
     //============================================================================
     public Window getWindow() { return window; }
@@ -65,8 +72,16 @@ final public class ChessUI extends UIComponent implements Game.Listener {
         window.setClearColour(RGBA.WHITE.gamma(0.2f));
         window.setWindowCloseCallback(this::exit);
 
+        // The board implementation the computer player searches with. See Backend
+        Backend.select(Backend.get(options.getString("engine-backend")));
+        table = openTable();
+        ComputerPlayer.setTable(table);
+        ComputerPlayer.setMoveTime(options.getInt("engine-move-time-ms", 1000));
+
         pieces = new ChessSet(this);
 
+        // A clock of -1 keeps the fixed move time
+        game.setComputerClock(options.getInt("engine-clock-ms", -1), options.getInt("engine-increment-ms", 0));
         game.addListener(this);
 
         // Add the UI components
@@ -198,32 +213,53 @@ final public class ChessUI extends UIComponent implements Game.Listener {
     }
     //================================================================================
     private void exit() {
-        options.set("position-movehistory", game.getPosition().moveHistory);
+        options.set("position-movehistory", game.getPosition().getMoveHistory());
 
         options.set("EvaluationWindow-visible", !getWindowMenu().getItem("eval").isEnabled());
         options.set("MovesWindow-visible", !getWindowMenu().getItem("move").isEnabled());
         options.set("ThinkingWindow-visible", !getWindowMenu().getItem("think").isEnabled());
 
         options.save();
+        try {
+            table.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
         window.close();
     }
     private void open() {
         // todo
     }
+    /**
+     * engine-hash-file names a memory mapped table kept between runs (engine-hash-readonly to
+     * only read it). Otherwise, or if the file can't be used, the table is on the heap
+     */
+    private TranspositionTable openTable() {
+        var sizeMB = options.getInt("engine-hash-mb", TranspositionTable.DEFAULT_SIZE_MB);
+        var file   = options.getString("engine-hash-file");
+        if(file != null) {
+            try {
+                return TranspositionTable.open(Paths.get(file), sizeMB, options.getBool("engine-hash-readonly", false));
+            } catch(IOException e) {
+                System.out.println("Not using transposition table file: " + e.getMessage());
+            }
+        }
+        return new TranspositionTable(sizeMB);
+    }
     private void save() {
         // todo
     }
     private void continueGame() {
         var fen     = options.getString("position-start");
-        var history = options.getIntList("position-movehistory");
+        var history = options.getIntArray("position-movehistory");
 
         if(fen!=null && history!=null) {
 
             // Replay moves from start position
             var pos = PositionBuilder.fromFEN(fen);
 
-            for(var m : history) {
-                pos.applyMove(m);
+            for(int i = 0; i < history.length; i++) {
+                pos.applyMove(history[i]);
             }
 
             // Start the game
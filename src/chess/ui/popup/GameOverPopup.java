@@ -1,6 +1,7 @@
 package chess.ui.popup;
 
 import chess.engine.Game;
+import chess.engine.byteboard.MoveGenerator;
 import chess.engine.byteboard.Position;
 import chess.ui.ChessUI;
 import juice.Frame;
@@ -69,6 +70,9 @@ final public class GameOverPopup extends UIComponent implements Game.Listener, D
         if(resignation) {
             title = "Resignation";
             info = "The computer wins";
+        } else if(new MoveGenerator().countLegalMoves(pos) > 0) {
+            title = "Draw";
+            info  = pos.halfMoveClock() >= 100 ? "Fifty move rule" : "Threefold repetition";
         } else if(pos.isCheck()) {
             title = "Checkmate";
 
@@ -2,8 +2,8 @@ package chess.ui.window;
 
 import chess.engine.Game;
 import chess.engine.Move;
+import chess.engine.ReplayBuffer;
 import chess.engine.byteboard.Position;
-import chess.engine.byteboard.PositionBuilder;
 import chess.ui.ChessUI;
 import juice.Frame;
 import juice.graphics.Font;
@@ -49,13 +49,17 @@ final public class MovesWindow extends AbsMovableWindow implements Game.Listener
         timesText.clearText();
 
         // Replay moves if this new game is a continuation
-        if(pos.moveHistory.size() > 0) {
+        if(pos.getNumMovesPlayed() > 0) {
 
-            var temp = PositionBuilder.fromFEN(chess.getOptions().getString("position-start"));
-            for(var m : pos.moveHistory) {
-                temp.applyMove(m);
-                onGameMove(temp, m);
+            var history = new int[pos.getNumMovesPlayed()];
+            pos.getMoveHistory(history);
+
+            var replay = new ReplayBuffer(history.length + 1);
+            var start  = replay.replay(chess.getOptions().getString("position-start"), history, history.length);
+            for(int i = 1; i <= history.length; i++) {
+                moves.add(new MoveInfo(replay.moves[start + i], replay.check[start + i]));
             }
+            updateForeground();
         }
     }
     // Game.Listener
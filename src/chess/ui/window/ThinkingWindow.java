@@ -77,13 +77,27 @@ final public class ThinkingWindow extends AbsMovableWindow implements Game.Liste
             y += 20;
         }
 
-        var gamePosEval = chess.getGame().getComputerPlayer().getGamePositionsEvaluated();
-        var movePosEval = chess.getGame().getComputerPlayer().getMovePositionsEvaluated();
+        var player      = chess.getGame().getComputerPlayer();
+        var gamePosEval = player.getGamePositionsEvaluated();
+        var movePosEval = player.getMovePositionsEvaluated();
 
         var pep = new Int2(p.getX()+8, p.getY() + y + 40);
 
         text.appendText("Positions", pep)
             .appendText("evaluated:", pep.add(0,20))
             .appendText("" + movePosEval + " (" + gamePosEval+")", pep.add(0,40));
+
+        // Move ordering quality. The higher the better
+        text.appendText("Cutoffs on", pep.add(0,80))
+            .appendText("first move:", pep.add(0,100))
+            .appendText(String.format("%.1f%%", player.getFirstMoveCutoffRate() * 100), pep.add(0,120));
+
+        // Quiescence search of captures and the captures it skipped
+        text.appendText("Quiescence:", pep.add(0,160))
+            .appendText("" + player.getQuiescenceNodes(), pep.add(0,180))
+            .appendText("Delta pruned:", pep.add(0,200))
+            .appendText("" + player.getDeltaPruned(), pep.add(0,220))
+            .appendText("SEE skipped:", pep.add(0,240))
+            .appendText("" + player.getSeeSkipped(), pep.add(0,260));
     }
 }